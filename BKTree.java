@@ -0,0 +1,314 @@
+import java.util.*;
+
+/**
+* Class representing a BK-tree over the terms of a knowledge base, used to find the stored terms
+* closest to a misspelled term. Each node holds one term, and its children are labelled with their
+* edit (Levenshtein) distance from it. By the triangle inequality, a term within distance k of the
+* query can only lie below a child whose label is within k of the distance between the query and
+* the node, so a search computes the distance to a small part of the terms instead of to all of them.
+* The distances themselves are computed a column at a time with the bit-parallel algorithm of
+* Myers, which handles up to 64 letters of the term being searched for in a few operations on a long.
+* Instances of this class are used in the {@link GenericsKbArrayApp}, {@link GenericsKbBSTApp}
+* and {@link GenericsKbSkipListApp} classes.
+*
+* Terms are compared ignoring case. The tree is not safe for use by several threads.
+*
+* @param <E> The type of entry stored in the knowledge base.
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class BKTree<E>{
+   private Node<E> root;
+   private int size;
+
+   /**
+   * A term of the tree, with its children and the distances that label them.
+   */
+   private static final class Node<E>{
+      private final String key;
+      private final E entry;
+      private int[] distances;
+      private Node<E>[] children;
+      private int childCount;
+      //the largest distance labelling a child, which bounds the distances a search must know exactly
+      private int longestLabel;
+
+      private Node(String key, E entry){
+         this.key = key;
+         this.entry = entry;
+      }
+
+      /**
+      * Finds the child at a distance from this node.
+      *
+      * @param distance The label of the child.
+      * @return The child, or null if there is none at that distance.
+      */
+      private Node<E> child(int distance){
+         for (int i = 0; i < childCount; i++){
+            if (distances[i] == distance){
+               return children[i];
+            }
+         }
+         return null;
+      }
+
+      @SuppressWarnings("unchecked")
+      private void addChild(int distance, Node<E> child){
+         if (children == null){
+            distances = new int[2];
+            children = (Node<E>[])new Node<?>[2];
+         }
+         else if (childCount == children.length){
+            distances = Arrays.copyOf(distances, childCount * 2);
+            children = Arrays.copyOf(children, childCount * 2);
+         }
+         distances[childCount] = distance;
+         children[childCount++] = child;
+         longestLabel = Math.max(longestLabel, distance);
+      }
+   }
+
+   /**
+   * A term whose edit distance to many other terms is calculated, with the positions of each of its letters as bit masks.
+   * It is also used on its own by {@link GenericsKbColumnarApp}, which compares a term with each of its terms in turn.
+   */
+   public static final class Pattern{
+      private final String key;
+      private final long[] ascii = new long[128];
+      private final char[] others;
+      private final long[] otherMasks;
+      private int otherCount;
+
+      /**
+      * Constructs the pattern of a term.
+      *
+      * @param key The term, already lower-cased if it is compared ignoring case.
+      */
+      public Pattern(String key){
+         this.key = key;
+         others = new char[Math.min(key.length(), 64)];
+         otherMasks = new long[others.length];
+         for (int i = 0; i < Math.min(key.length(), 64); i++){
+            char letter = key.charAt(i);
+            if (letter < 128){
+               ascii[letter] |= 1L << i;
+            }
+            else{
+               int slot = 0;
+               while (slot < otherCount && others[slot] != letter){
+                  slot++;
+               }
+               if (slot == otherCount){
+                  others[otherCount++] = letter;
+               }
+               otherMasks[slot] |= 1L << i;
+            }
+         }
+      }
+
+      /**
+      * Finds the positions of a letter in the term.
+      *
+      * @param letter The letter.
+      * @return A mask with bit i set if letter i of the term is the given letter.
+      */
+      private long positions(char letter){
+         if (letter < 128){
+            return ascii[letter];
+         }
+         for (int i = 0; i < otherCount; i++){
+            if (others[i] == letter){
+               return otherMasks[i];
+            }
+         }
+         return 0;
+      }
+
+      /**
+      * Calculates the edit distance between this term and another, stopping early once it must exceed a bound.
+      *
+      * @param text The other term.
+      * @param bound The largest distance that needs to be known exactly.
+      * @return The edit distance, or a value above the bound if the distance is above the bound.
+      */
+      public int distance(String text, int bound){
+         int m = key.length(), n = text.length();
+         if (Math.abs(m - n) > bound){
+            return bound + 1;
+         }
+         if (m == 0 || m > 64){
+            return BKTree.distance(key, text, bound);
+         }
+         //bit i of the vertical deltas says whether row i + 1 of the current column is one more (pv) or less (mv) than row i
+         long pv = -1L, mv = 0, last = 1L << (m - 1);
+         int score = m;
+         for (int j = 0; j < n; j++){
+            long eq = positions(text.charAt(j));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0){
+               score++;
+            }
+            else if ((mh & last) != 0){
+               score--;
+            }
+            //every column starts one further from the empty term
+            ph = (ph << 1) | 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            if (score - (n - j - 1) > bound){
+               //each remaining letter lowers the distance by at most one
+               return bound + 1;
+            }
+         }
+         return score;
+      }
+   }
+
+   /**
+   * A term found by a search, with its distance from the query.
+   */
+   private static final class Match<E>{
+      private final int distance;
+      private final String key;
+      private final E entry;
+
+      private Match(int distance, String key, E entry){
+         this.distance = distance;
+         this.key = key;
+         this.entry = entry;
+      }
+   }
+
+   /**
+   * Constructs an empty BK-tree.
+   */
+   public BKTree(){}
+
+   /**
+   * Adds an entry under its term. An entry should be added once, when its term is first stored.
+   *
+   * @param term The term of the entry.
+   * @param entry The entry to add.
+   */
+   public void add(String term, E entry){
+      String key = fold(term);
+      if (root == null){
+         root = new Node<>(key, entry);
+         size++;
+         return;
+      }
+      Pattern pattern = new Pattern(key);
+      Node<E> node = root;
+      while (true){
+         int distance = pattern.distance(node.key, Integer.MAX_VALUE - 1);
+         if (distance == 0){
+            return; //the term is already in the tree
+         }
+         Node<E> child = node.child(distance);
+         if (child == null){
+            node.addChild(distance, new Node<>(key, entry));
+            size++;
+            return;
+         }
+         node = child;
+      }
+   }
+
+   /**
+   * Finds the entries whose term is within an edit distance of the given term, ignoring case.
+   *
+   * @param term The term to search for.
+   * @param maxDistance The largest number of inserted, deleted or replaced letters allowed.
+   * @return The matching entries, closest first and then in the order of their terms, or an empty list if there are none.
+   */
+   public List<E> search(String term, int maxDistance){
+      List<Match<E>> matches = new ArrayList<>();
+      if (root != null && maxDistance >= 0){
+         Pattern pattern = new Pattern(fold(term));
+         //the nodes still to visit, kept on a stack rather than by recursion so deep trees cannot overflow it
+         Deque<Node<E>> pending = new ArrayDeque<>();
+         pending.push(root);
+         while (!pending.isEmpty()){
+            Node<E> node = pending.pop();
+            //a distance further than maxDistance beyond every child label prunes all the children, so it need not be exact
+            int distance = pattern.distance(node.key, maxDistance + node.longestLabel);
+            if (distance <= maxDistance){
+               matches.add(new Match<>(distance, node.key, node.entry));
+            }
+            for (int i = 0; i < node.childCount; i++){
+               if (Math.abs(node.distances[i] - distance) <= maxDistance){
+                  pending.push(node.children[i]);
+               }
+            }
+         }
+      }
+      matches.sort((a, b) -> (a.distance != b.distance) ? Integer.compare(a.distance, b.distance) : a.key.compareTo(b.key));
+      List<E> results = new ArrayList<>(matches.size());
+      for (Match<E> match: matches){
+         results.add(match.entry);
+      }
+      return results;
+   }
+
+   /**
+   * Retrieves the number of terms in the tree.
+   *
+   * @return The number of terms.
+   */
+   public int size(){
+      return size;
+   }
+
+   /**
+   * Calculates the edit distance between two terms a row at a time, for terms too long for {@link Pattern}.
+   * It stops early once the distance must exceed a bound.
+   *
+   * @param a The first term.
+   * @param b The second term.
+   * @param bound The largest distance that needs to be known exactly.
+   * @return The edit distance, or a value above the bound if the distance is above the bound.
+   */
+   private static int distance(String a, String b, int bound){
+      if (Math.abs(a.length() - b.length()) > bound){
+         return bound + 1;
+      }
+      int[] previous = new int[b.length() + 1], current = new int[b.length() + 1];
+      for (int j = 0; j <= b.length(); j++){
+         previous[j] = j;
+      }
+      for (int i = 1; i <= a.length(); i++){
+         current[0] = i;
+         int smallest = i;
+         char letter = a.charAt(i - 1);
+         for (int j = 1; j <= b.length(); j++){
+            int cost = (letter == b.charAt(j - 1)) ? 0 : 1;
+            current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            smallest = Math.min(smallest, current[j]);
+         }
+         if (smallest > bound){
+            //every later row is at least as large
+            return bound + 1;
+         }
+         int[] swap = previous;
+         previous = current;
+         current = swap;
+      }
+      return previous[b.length()];
+   }
+
+   /**
+   * Converts a term to the case-folded form used as a key in the tree.
+   *
+   * @param term The term to convert.
+   * @return The lower-cased term.
+   */
+   private static String fold(String term){
+      return term.toLowerCase(Locale.ROOT);
+   }
+}
@@ -0,0 +1,361 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* A class that answers a file of queries without the interactive menu.
+*
+* Each line of the query file holds one query, with its fields separated by tabs:
+* lookup TERM, statements TERM [LIMIT], partial TERM, sentence TERM SENTENCE, search PHRASE,
+* prefix PREFIX LIMIT [CURSOR], range FROM TO LIMIT [CURSOR], top K, score THRESHOLD,
+* fuzzy TERM [DISTANCE], or update TERM SENTENCE SCORE. A statements query returns every
+* statement of TERM, or the LIMIT with the highest confidence scores. Blank lines and lines starting with # are skipped. Prefix and range queries return a {@link TermPage} of up to LIMIT statements, where an
+* empty FROM or TO leaves that end of the range open, and the cursor printed after a page is passed
+* as CURSOR to read the next page. A fuzzy query returns the terms within DISTANCE edits of TERM,
+* {@link #FUZZY_DISTANCE} by default.
+*
+* The queries are read in blocks. The read-only queries of a block are shared out between a pool
+* of worker threads, and their results are written in the order of the file through a single
+* buffered writer. An update is a barrier: the queries before it are answered and written first,
+* and it is applied on its own, so no query runs while the knowledge base is being changed and
+* every query sees the updates above it in the file. At the end the number of queries and the
+* throughput are printed.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class BatchQueryRunner{
+   //the largest number of read-only queries answered together
+   private static final int BLOCK_SIZE = 4096;
+   /**
+   * The edit distance of a fuzzy query that does not give one, and of the suggestions made by the menu.
+   */
+   public static final int FUZZY_DISTANCE = 2;
+
+   private final KnowledgeBase knowledgeBase;
+   private final int threads;
+
+   /**
+   * Constructs a batch runner.
+   *
+   * @param knowledgeBase The knowledge base the queries are run on.
+   * @param threads The number of worker threads answering the read-only queries.
+   */
+   public BatchQueryRunner(KnowledgeBase knowledgeBase, int threads){
+      this.knowledgeBase = knowledgeBase;
+      this.threads = Math.max(1, threads);
+   }
+
+   /**
+   * Answers every query of a file and writes the results in the order of the queries.
+   *
+   * @param queryFile The name of the query file.
+   * @param output The writer the results are written to, which is flushed but not closed.
+   * @throws FileNotFoundException if the query file is not found
+   * @throws IOException if the query file cannot be read or the results cannot be written
+   */
+   public void run(String queryFile, Writer output) throws IOException{
+      BufferedWriter results = new BufferedWriter(output, 1 << 16);
+      ExecutorService workers = Executors.newFixedThreadPool(threads);
+      BufferedReader queries = null;
+      long startTime = System.nanoTime();
+      long reads = 0, updates = 0;
+      try{
+         queries = new BufferedReader(new InputStreamReader(new FileInputStream(queryFile), StandardCharsets.UTF_8));
+         List<String[]> block = new ArrayList<>(BLOCK_SIZE);
+         List<Long> lineNumbers = new ArrayList<>(BLOCK_SIZE);
+         long lineNumber = 0;
+         String line;
+         while ((line = queries.readLine()) != null){
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")){
+               continue;
+            }
+            String[] query = split(line);
+            if (query[0].equals("update")){
+               //the queries above the update are answered before it is applied
+               reads += answer(block, lineNumbers, workers, results);
+               results.write(execute(query, lineNumber));
+               updates++;
+            }
+            else{
+               block.add(query);
+               lineNumbers.add(lineNumber);
+               if (block.size() == BLOCK_SIZE){
+                  reads += answer(block, lineNumbers, workers, results);
+               }
+            }
+         }
+         reads += answer(block, lineNumbers, workers, results);
+         results.flush();
+      }
+      finally{
+         workers.shutdown();
+         if (queries != null){
+            queries.close();
+         }
+      }
+      double seconds = (System.nanoTime() - startTime) / 1e9;
+      System.out.printf("Answered %d queries (%d reads, %d updates) with %d threads in %.3f seconds (%.0f queries/second).%n",
+         reads + updates, reads, updates, threads, seconds, (reads + updates) / seconds);
+   }
+
+   /**
+   * Answers a block of read-only queries on the worker threads, writes their results in order and empties the block.
+   *
+   * @param block The queries, split into their fields.
+   * @param lineNumbers The line number of each query.
+   * @param workers The worker threads.
+   * @param results The writer the results are written to.
+   * @return The number of queries answered.
+   * @throws IOException if the results cannot be written
+   */
+   private int answer(List<String[]> block, List<Long> lineNumbers, ExecutorService workers, Writer results) throws IOException{
+      int count = block.size();
+      if (count == 0){
+         return 0;
+      }
+      String[] answers = new String[count];
+      if (threads == 1 || count == 1){
+         for (int i = 0; i < count; i++){
+            answers[i] = execute(block.get(i), lineNumbers.get(i));
+         }
+      }
+      else{
+         //each worker answers a contiguous range of the block
+         int tasks = Math.min(threads, count);
+         List<Callable<Void>> ranges = new ArrayList<>(tasks);
+         for (int t = 0; t < tasks; t++){
+            int from = (int)((long)count * t / tasks), to = (int)((long)count * (t + 1) / tasks);
+            ranges.add(() -> {
+               for (int i = from; i < to; i++){
+                  answers[i] = execute(block.get(i), lineNumbers.get(i));
+               }
+               return null;
+            });
+         }
+         try{
+            for (Future<Void> range: workers.invokeAll(ranges)){
+               range.get();
+            }
+         }
+         catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while answering queries.");
+         }
+         catch(ExecutionException e){
+            throw new IllegalStateException("A query failed.", e.getCause());
+         }
+      }
+      for (String answer: answers){
+         results.write(answer);
+      }
+      block.clear();
+      lineNumbers.clear();
+      return count;
+   }
+
+   /**
+   * Splits a query line into its tab-separated fields.
+   *
+   * @param line The query line.
+   * @return The fields of the query.
+   */
+   public static String[] split(String line){
+      return line.split("\t", -1);
+   }
+
+   /**
+   * Runs one query and formats its result in the same words as the menu.
+   * Also used by {@link KnowledgeBaseServer} to answer the queries of its clients.
+   *
+   * @param query The fields of the query.
+   * @param lineNumber The line number of the query, used in error messages.
+   * @return The result, ending with a new line.
+   */
+   public String execute(String[] query, long lineNumber){
+      StringBuilder result = new StringBuilder();
+      switch(query[0]){
+         case "lookup":
+            if (query.length != 2){
+               break;
+            }
+            Statement found = knowledgeBase.lookup(query[1]);
+            if (found != null){
+               result.append(found).append('\n');
+            }
+            else{
+               result.append("No statement found for term: ").append(query[1]).append(".\n");
+            }
+            return result.toString();
+
+         case "statements":
+            if (query.length != 2 && query.length != 3){
+               break;
+            }
+            int most = Integer.MAX_VALUE;
+            if (query.length == 3){
+               try{
+                  most = Integer.parseInt(query[2]);
+               }
+               catch(NumberFormatException e){
+                  return "Line " + lineNumber + ": invalid limit '" + query[2] + "'.\n";
+               }
+            }
+            List<Statement> all = knowledgeBase.lookupAll(query[1], most);
+            result.append(all.size()).append(" statements found for term: ").append(query[1]).append(".\n");
+            appendStatements(result, all);
+            return result.toString();
+
+         case "partial":
+            if (query.length != 2){
+               break;
+            }
+            List<Statement> matches = knowledgeBase.partialMatches(query[1]);
+            result.append(matches.size()).append(" partial matches for: ").append(query[1]).append(".\n");
+            appendStatements(result, matches);
+            return result.toString();
+
+         case "sentence":
+            if (query.length != 3){
+               break;
+            }
+            Statement match = knowledgeBase.lookupTermAndSentence(query[1], query[2]);
+            if (match != null){
+               result.append(match).append('\n');
+            }
+            else{
+               result.append("No statement found for term: ").append(query[1]).append(" and sentence: ").append(query[2]).append(".\n");
+            }
+            return result.toString();
+
+         case "search":
+            if (query.length != 2){
+               break;
+            }
+            List<Statement> statements = knowledgeBase.searchStatements(query[1]);
+            result.append(statements.size()).append(" statements found containing: ").append(query[1]).append(".\n");
+            appendStatements(result, statements);
+            return result.toString();
+
+         case "prefix":
+         case "range":
+            int fields = query[0].equals("prefix") ? 3 : 4;
+            if (query.length != fields && query.length != fields + 1){
+               break;
+            }
+            int limit;
+            try{
+               limit = Integer.parseInt(query[fields - 1]);
+            }
+            catch(NumberFormatException e){
+               return "Line " + lineNumber + ": invalid limit '" + query[fields - 1] + "'.\n";
+            }
+            String cursor = (query.length > fields) ? query[fields] : null;
+            TermPage page;
+            try{
+               if (query[0].equals("prefix")){
+                  page = TermPage.read(knowledgeBase.prefix(query[1], cursor), limit);
+                  result.append(page.getStatements().size()).append(" statements with terms starting with: ").append(query[1]).append(".\n");
+               }
+               else{
+                  String from = (cursor != null) ? cursor : (query[1].isEmpty() ? null : query[1]);
+                  page = TermPage.read(knowledgeBase.range(from, query[2].isEmpty() ? null : query[2]), limit);
+                  result.append(page.getStatements().size()).append(" statements with terms from '").append(query[1])
+                     .append("' to '").append(query[2]).append("'.\n");
+               }
+            }
+            catch(UnsupportedOperationException e){
+               return e.getMessage() + "\n";
+            }
+            appendStatements(result, page.getStatements());
+            if (page.getNextCursor() != null){
+               result.append("Next page from: ").append(page.getNextCursor()).append('\n');
+            }
+            return result.toString();
+
+         case "fuzzy":
+            if (query.length != 2 && query.length != 3){
+               break;
+            }
+            int maxDistance = FUZZY_DISTANCE;
+            if (query.length == 3){
+               try{
+                  maxDistance = Integer.parseInt(query[2]);
+               }
+               catch(NumberFormatException e){
+                  return "Line " + lineNumber + ": invalid edit distance '" + query[2] + "'.\n";
+               }
+            }
+            List<Statement> close = knowledgeBase.fuzzyLookup(query[1], maxDistance);
+            result.append(close.size()).append(" terms within ").append(maxDistance).append(" edits of: ").append(query[1]).append(".\n");
+            appendStatements(result, close);
+            return result.toString();
+
+         case "top":
+            if (query.length != 2){
+               break;
+            }
+            int k;
+            try{
+               k = Integer.parseInt(query[1]);
+            }
+            catch(NumberFormatException e){
+               return "Line " + lineNumber + ": invalid number of statements '" + query[1] + "'.\n";
+            }
+            List<Statement> top = knowledgeBase.topByScore(k);
+            result.append(top.size()).append(" statements with the highest confidence scores.\n");
+            appendStatements(result, top);
+            return result.toString();
+
+         case "score":
+            if (query.length != 2){
+               break;
+            }
+            double threshold;
+            try{
+               threshold = Double.parseDouble(query[1]);
+            }
+            catch(NumberFormatException e){
+               return "Line " + lineNumber + ": invalid confidence score '" + query[1] + "'.\n";
+            }
+            List<Statement> confident = knowledgeBase.withScoreAtLeast(threshold);
+            result.append(confident.size()).append(" statements with a confidence score of at least ").append(query[1]).append(".\n");
+            appendStatements(result, confident);
+            return result.toString();
+
+         case "update":
+            if (query.length != 4){
+               break;
+            }
+            double score;
+            try{
+               score = Double.parseDouble(query[3]);
+            }
+            catch(NumberFormatException e){
+               return "Line " + lineNumber + ": invalid confidence score '" + query[3] + "'.\n";
+            }
+            UpdateResult update = knowledgeBase.addOrUpdate(query[1], query[2], score);
+            switch(update.getStatus()){
+               case ADDED:
+                  return "New node with the term " + query[1] + " added to the knowledge base.\n";
+               case UPDATED:
+                  return "Statement for term " + query[1] + " has been updated.\n";
+               default:
+                  return "The term " + query[1] + " is not found in the knowledge base.\n";
+            }
+
+         default:
+            return "Line " + lineNumber + ": unknown query '" + query[0] + "'.\n";
+      }
+      return "Line " + lineNumber + ": wrong number of fields for a " + query[0] + " query.\n";
+   }
+
+   private static void appendStatements(StringBuilder result, List<Statement> statements){
+      for (Statement statement: statements){
+         result.append(statement).append('\n');
+      }
+   }
+}
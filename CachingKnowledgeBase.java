@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.util.*;
+
+/**
+* A class that puts a cache of query results in front of another {@link KnowledgeBase}.
+* Exact lookups and partial matches are answered from two {@link QueryCache} objects with
+* least-recently-used eviction, so popular terms are not searched for again. When a term is
+* added or updated, the cached lookup of the term and the cached partial matches of each of
+* its words are removed, and loading a file or a snapshot empties both caches.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class CachingKnowledgeBase implements KnowledgeBase{
+   //cached in place of a null result, so that misses of the knowledge base are cached too
+   private static final Statement NOT_FOUND = new Statement("", "", 0);
+
+   private final KnowledgeBase knowledgeBase;
+   private final QueryCache<String, Statement> lookups;
+   private final QueryCache<String, List<Statement>> partialMatches;
+
+   /**
+   * Constructs a cache in front of a knowledge base.
+   *
+   * @param knowledgeBase The knowledge base answering the queries that are not cached.
+   * @param capacity The largest number of results held by each of the two caches.
+   */
+   public CachingKnowledgeBase(KnowledgeBase knowledgeBase, int capacity){
+      this.knowledgeBase = knowledgeBase;
+      this.lookups = new QueryCache<>(capacity);
+      this.partialMatches = new QueryCache<>(capacity);
+   }
+
+   /**
+   * Converts a term to the case-folded form used as a key in the caches.
+   *
+   * @param term The term to convert.
+   * @return The lower-cased term.
+   */
+   private static String fold(String term){
+      return term.toLowerCase(Locale.ROOT);
+   }
+
+   @Override
+   public LoadResult load(String file, boolean parallel) throws IOException{
+      //any cached result may be changed by the file
+      lookups.clear();
+      partialMatches.clear();
+      return knowledgeBase.load(file, parallel);
+   }
+
+   @Override
+   public void saveSnapshot(String file) throws IOException{
+      knowledgeBase.saveSnapshot(file);
+   }
+
+   @Override
+   public LoadResult loadSnapshot(String file) throws IOException{
+      lookups.clear();
+      partialMatches.clear();
+      return knowledgeBase.loadSnapshot(file);
+   }
+
+   @Override
+   public MergeResult merge(UpdateBatch batch){
+      lookups.clear();
+      partialMatches.clear();
+      return knowledgeBase.merge(batch);
+   }
+
+   @Override
+   public Statement lookup(String term){
+      String key = fold(term);
+      Statement result = lookups.get(key);
+      if (result == null){
+         result = knowledgeBase.lookup(term);
+         lookups.put(key, (result == null) ? NOT_FOUND : result);
+         return result;
+      }
+      return (result == NOT_FOUND) ? null : result;
+   }
+
+   @Override
+   public List<Statement> lookupAll(String term, int limit){
+      return knowledgeBase.lookupAll(term, limit);
+   }
+
+   /**
+   * Finds the partial matches to a term, from the cache if possible.
+   * The returned list is shared with the cache and cannot be modified.
+   *
+   * @param term The word to search for.
+   * @return The partial matches, or an empty list if there are none.
+   */
+   @Override
+   public List<Statement> partialMatches(String term){
+      String key = fold(term);
+      List<Statement> results = partialMatches.get(key);
+      if (results == null){
+         results = Collections.unmodifiableList(knowledgeBase.partialMatches(term));
+         partialMatches.put(key, results);
+      }
+      return results;
+   }
+
+   @Override
+   public Statement lookupTermAndSentence(String term, String sentence){
+      return knowledgeBase.lookupTermAndSentence(term, sentence);
+   }
+
+   @Override
+   public List<Statement> searchStatements(String phrase){
+      return knowledgeBase.searchStatements(phrase);
+   }
+
+   @Override
+   public List<Statement> fuzzyLookup(String term, int maxDistance){
+      return knowledgeBase.fuzzyLookup(term, maxDistance);
+   }
+
+   @Override
+   public List<Statement> topByScore(int k){
+      return knowledgeBase.topByScore(k);
+   }
+
+   @Override
+   public List<Statement> withScoreAtLeast(double threshold){
+      return knowledgeBase.withScoreAtLeast(threshold);
+   }
+
+   @Override
+   public Iterator<Statement> range(String from, String to){
+      return knowledgeBase.range(from, to);
+   }
+
+   @Override
+   public Iterator<Statement> prefix(String prefix, String from){
+      return knowledgeBase.prefix(prefix, from);
+   }
+
+   @Override
+   public UpdateResult addOrUpdate(String term, String sentence, double score){
+      UpdateResult result = knowledgeBase.addOrUpdate(term, sentence, score);
+      if (result.getStatus() != UpdateResult.Status.NOT_FOUND){
+         //the term's own lookup and the partial matches of each of its words are now out of date
+         lookups.invalidate(fold(term));
+         StringTokenizer words = new StringTokenizer(term, " ");
+         while (words.hasMoreTokens()){
+            partialMatches.invalidate(fold(words.nextToken()));
+         }
+      }
+      return result;
+   }
+
+   @Override
+   public int size(){
+      return knowledgeBase.size();
+   }
+
+   @Override
+   public KnowledgeBaseStats getStats(){
+      return knowledgeBase.getStats();
+   }
+
+   /**
+   * Describes the knowledge base behind the cache and the hit ratios of the caches.
+   *
+   * @return A short description of the knowledge base and its caches.
+   */
+   @Override
+   public String describe(){
+      return knowledgeBase.describe() + "\nLookup cache: " + lookups + ".\nPartial match cache: " + partialMatches + ".";
+   }
+}
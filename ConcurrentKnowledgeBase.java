@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+* A class that makes another {@link KnowledgeBase} safe to use from several threads at once.
+*
+* Updates and loads hold the write lock of a {@link StampedLock}. Exact lookups, partial matches
+* and term and sentence lookups are first run as optimistic reads, which take no lock at all:
+* the query runs, and its result is only kept if no writer held the lock in the meantime. If a
+* writer did, or the query failed because the data changed under it, the query runs again under
+* the read lock. Because every query copies the entries it returns into immutable
+* {@link Statement} objects, a result that validates can never hold the sentence of one update
+* with the score of another. Phrase searches scan many sentences, so they go straight to the read lock, as do
+* top-k, threshold and fuzzy queries, whose indexes are trees that a writer may be changing.
+*
+* An optimistic read is only validated once the query returns, so the queries run that way must end
+* whatever a writer is doing: a loop that follows links a writer is changing could otherwise go round
+* a cycle forever, which no exception would break. The backends make sure of this. The tree stops a
+* search that compares more nodes than it holds, the hash lookups of the terms and of their words go
+* through a {@link java.util.concurrent.ConcurrentHashMap} or an open-addressing table that is never
+* full, and every other loop of these queries runs over an array up to a count read once.
+*
+* Range and prefix iterators read a page of statements at a time under the read lock, and find the
+* next page again from its first term, so no lock is held between calls to the iterator.
+*
+* The statistics of the knowledge base count each query once: an optimistic read is an attempt of
+* its {@link KnowledgeBaseStats}, whose operations are only counted if it validates, so a query that
+* is run again under the read lock is counted with the comparisons and latency of that second run.
+*
+* Optimistic reads may only be used when the queries of the knowledge base do not change it, so
+* they must be turned off for a {@link CachingKnowledgeBase}: a query that is later found to have
+* overlapped a writer could already have cached its result.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class ConcurrentKnowledgeBase implements KnowledgeBase{
+   private final KnowledgeBase knowledgeBase;
+   private final boolean optimistic;
+   private final StampedLock lock = new StampedLock();
+   //the number of statements a range or prefix iterator reads under the lock at a time
+   private static final int PAGE_SIZE = 256;
+   //the number of queries answered by an optimistic read, and by the read lock
+   private final LongAdder optimisticReads = new LongAdder(), lockedReads = new LongAdder();
+
+   /**
+   * Constructs a thread-safe view of a knowledge base.
+   *
+   * @param knowledgeBase The knowledge base, which must only be used through this object from now on.
+   * @param optimistic Whether queries are first tried as optimistic reads. This must be false if
+   *                   the queries of the knowledge base change it, as a cache does.
+   */
+   public ConcurrentKnowledgeBase(KnowledgeBase knowledgeBase, boolean optimistic){
+      this.knowledgeBase = knowledgeBase;
+      this.optimistic = optimistic;
+   }
+
+   /**
+   * Runs a query as an optimistic read, and again under the read lock if a writer interfered.
+   *
+   * @param query The query to run.
+   * @return The result of the query.
+   */
+   private <T> T read(Supplier<T> query){
+      if (optimistic){
+         long stamp = lock.tryOptimisticRead();
+         if (stamp != 0){
+            KnowledgeBaseStats stats = knowledgeBase.getStats();
+            boolean valid = false;
+            stats.beginAttempt();
+            try{
+               T result = query.get();
+               if (lock.validate(stamp)){
+                  valid = true;
+                  optimisticReads.increment();
+                  return result;
+               }
+            }
+            catch(RuntimeException e){
+               //a writer changed the data while it was being read, so the query is run again under the lock
+            }
+            finally{
+               //the statistics of an attempt that was thrown away are not counted, the run under the lock is
+               stats.endAttempt(valid);
+            }
+         }
+      }
+      return readLocked(query);
+   }
+
+   /**
+   * Runs a query under the read lock.
+   *
+   * @param query The query to run.
+   * @return The result of the query.
+   */
+   private <T> T readLocked(Supplier<T> query){
+      long stamp = lock.readLock();
+      try{
+         lockedReads.increment();
+         return query.get();
+      }
+      finally{
+         lock.unlockRead(stamp);
+      }
+   }
+
+   @Override
+   public LoadResult load(String file, boolean parallel) throws IOException{
+      long stamp = lock.writeLock();
+      try{
+         return knowledgeBase.load(file, parallel);
+      }
+      finally{
+         lock.unlockWrite(stamp);
+      }
+   }
+
+   @Override
+   public void saveSnapshot(String file) throws IOException{
+      long stamp = lock.readLock();
+      try{
+         knowledgeBase.saveSnapshot(file);
+      }
+      finally{
+         lock.unlockRead(stamp);
+      }
+   }
+
+   @Override
+   public LoadResult loadSnapshot(String file) throws IOException{
+      long stamp = lock.writeLock();
+      try{
+         return knowledgeBase.loadSnapshot(file);
+      }
+      finally{
+         lock.unlockWrite(stamp);
+      }
+   }
+
+   @Override
+   public MergeResult merge(UpdateBatch batch){
+      long stamp = lock.writeLock();
+      try{
+         return knowledgeBase.merge(batch);
+      }
+      finally{
+         lock.unlockWrite(stamp);
+      }
+   }
+
+   @Override
+   public Statement lookup(String term){
+      return read(() -> knowledgeBase.lookup(term));
+   }
+
+   @Override
+   public List<Statement> lookupAll(String term, int limit){
+      return read(() -> knowledgeBase.lookupAll(term, limit));
+   }
+
+   @Override
+   public List<Statement> partialMatches(String term){
+      return read(() -> knowledgeBase.partialMatches(term));
+   }
+
+   @Override
+   public Statement lookupTermAndSentence(String term, String sentence){
+      return read(() -> knowledgeBase.lookupTermAndSentence(term, sentence));
+   }
+
+   @Override
+   public List<Statement> searchStatements(String phrase){
+      return readLocked(() -> knowledgeBase.searchStatements(phrase));
+   }
+
+   @Override
+   public List<Statement> fuzzyLookup(String term, int maxDistance){
+      return readLocked(() -> knowledgeBase.fuzzyLookup(term, maxDistance));
+   }
+
+   @Override
+   public List<Statement> topByScore(int k){
+      return readLocked(() -> knowledgeBase.topByScore(k));
+   }
+
+   @Override
+   public List<Statement> withScoreAtLeast(double threshold){
+      return readLocked(() -> knowledgeBase.withScoreAtLeast(threshold));
+   }
+
+   @Override
+   public Iterator<Statement> range(String from, String to){
+      return new PagedIterator(cursor -> knowledgeBase.range(cursor, to), from);
+   }
+
+   @Override
+   public Iterator<Statement> prefix(String prefix, String from){
+      return new PagedIterator(cursor -> knowledgeBase.prefix(prefix, cursor), from);
+   }
+
+   /**
+   * An iterator that reads the results of an ordered query a page at a time under the read lock.
+   */
+   private class PagedIterator implements Iterator<Statement>{
+      private final Function<String, Iterator<Statement>> query;
+      private Iterator<Statement> page = Collections.emptyIterator();
+      private String cursor;
+
+      /**
+      * Constructs an iterator and reads its first page, so an unsupported query fails straight away.
+      *
+      * @param query The query, which starts its results from a given term.
+      * @param from The first term, or null.
+      */
+      private PagedIterator(Function<String, Iterator<Statement>> query, String from){
+         this.query = query;
+         readPage(from);
+      }
+
+      private void readPage(String from){
+         TermPage next = readLocked(() -> TermPage.read(query.apply(from), PAGE_SIZE));
+         page = next.getStatements().iterator();
+         cursor = next.getNextCursor();
+      }
+
+      @Override
+      public boolean hasNext(){
+         if (!page.hasNext() && cursor != null){
+            readPage(cursor);
+         }
+         return page.hasNext();
+      }
+
+      @Override
+      public Statement next(){
+         if (!hasNext()){
+            throw new NoSuchElementException();
+         }
+         return page.next();
+      }
+   }
+
+   @Override
+   public UpdateResult addOrUpdate(String term, String sentence, double score){
+      long stamp = lock.writeLock();
+      try{
+         return knowledgeBase.addOrUpdate(term, sentence, score);
+      }
+      finally{
+         lock.unlockWrite(stamp);
+      }
+   }
+
+   @Override
+   public int size(){
+      return read(knowledgeBase::size);
+   }
+
+   @Override
+   public KnowledgeBaseStats getStats(){
+      return knowledgeBase.getStats();
+   }
+
+   /**
+   * Retrieves the fraction of queries that were answered by an optimistic read.
+   *
+   * @return The fraction of queries answered without a lock, or 0 if there have been none.
+   */
+   public double getOptimisticRatio(){
+      long optimisticCount = optimisticReads.sum(), total = optimisticCount + lockedReads.sum();
+      return (total == 0) ? 0 : optimisticCount / (double)total;
+   }
+
+   /**
+   * Describes the knowledge base and how its queries were answered.
+   *
+   * @return A short description of the knowledge base and the number of optimistic and locked reads.
+   */
+   @Override
+   public String describe(){
+      String description = readLocked(knowledgeBase::describe);
+      return String.format("%s%nConcurrent reads: %d optimistic, %d under the read lock (%.1f%% optimistic).", description,
+         optimisticReads.sum(), lockedReads.sum(), getOptimisticRatio() * 100);
+   }
+}
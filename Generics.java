@@ -1,6 +1,9 @@
+import java.util.Locale;
+
 /**
-* Class that represents a data structure for storing information about a term,
-* sentence, and confidence score. Instances of this class are used in the
+* Class that represents a data structure for storing information about a term and its
+* statements: the sentence and confidence score of the best statement, and the other statements
+* of the term ordered by confidence score. Instances of this class are used in the
 * {@link GenericsKbArrayApp} class.
 *
 * @author Nikita Martin
@@ -9,7 +12,11 @@
 **/
 public class Generics{
    private String term, sentence;
+   //the sentence in lower case, for matching sentences ignoring case without converting them again
+   private String foldedSentence;
    private double confidenceScore;
+   //the statements other than the best one, or null while the term has a single statement
+   private ScoredSentences others;
    
    /**
    * Default constructor for Generics.
@@ -18,6 +25,7 @@ public class Generics{
    public Generics(){
       this.term = "";
       this.sentence = "";
+      this.foldedSentence = "";
       this.confidenceScore = 0;
    }
    
@@ -32,6 +40,7 @@ public class Generics{
    public Generics(String term, String sentence, double score){
       this.term = term;
       this.sentence = sentence;
+      this.foldedSentence = sentence.toLowerCase(Locale.ROOT);
       confidenceScore = score;
    }
    
@@ -78,22 +87,104 @@ public class Generics{
    */
    public void setSentence(String sentence){
       this.sentence = sentence;
+      this.foldedSentence = sentence.toLowerCase(Locale.ROOT);
    }
    
    /**
-   * Adds a new statement with an updated sentence and confidence score.
+   * Adds a new statement for the term of this Generics object, keeping every statement ordered by confidence score.
+   * A statement whose score is not lower than the best one becomes the best statement, and the old
+   * best statement joins the others. A sentence the term already has keeps the higher of its two scores.
    *
-   * @param newSentence The new sentence to be added or updated
-   * @param newScore The new confidence score associated with the statement
+   * @param newSentence The sentence of the new statement
+   * @param newScore The confidence score of the new statement
+   * @return true if the sentence was new, or false if the term already had it
    **/
-   public void update(String newSentence, double newScore){
-      //updates the sentence
-      setSentence(newSentence);
-      // Check if the new score is greater than or equal to the existing score.
-      // If yes, set with the new confidence score
-      if (newScore >= this.confidenceScore){
+   public boolean update(String newSentence, double newScore){
+      return update(newSentence, newSentence.toLowerCase(Locale.ROOT), newScore);
+   }
+   
+   /**
+   * Adds a new statement as {@link #update(String, double)} does, with its sentence already lower-cased,
+   * so the lower-case string kept for sentence matches can be shared with the {@link SentenceIndex}.
+   *
+   * @param newSentence The sentence of the new statement
+   * @param newFolded The sentence in lower case
+   * @param newScore The confidence score of the new statement
+   * @return true if the sentence was new, or false if the term already had it
+   **/
+   public boolean update(String newSentence, String newFolded, double newScore){
+      if (newSentence.equals(sentence)){
+         //the best statement again, whose score can only go up
+         if (newScore > confidenceScore){
+            setScore(newScore);
+         }
+         return false;
+      }
+      double oldScore = (others == null) ? Double.NaN : others.getScore(newSentence);
+      boolean added = Double.isNaN(oldScore);
+      if (!added){
+         if (oldScore >= newScore){
+            return false; //already stored with a score that is not lower
+         }
+         others.remove(newSentence);
+      }
+      if (newScore >= confidenceScore){
+         //the new statement becomes the best one
+         if (others == null){
+            others = new ScoredSentences();
+         }
+         //the old best statement is ahead of every other, including those with the same score
+         others.addFirst(sentence, foldedSentence, confidenceScore);
+         this.sentence = newSentence;
+         this.foldedSentence = newFolded;
          setScore(newScore);
       }
+      else{
+         if (others == null){
+            others = new ScoredSentences();
+         }
+         others.add(newSentence, newFolded, newScore);
+      }
+      return added;
+   }
+   
+   /**
+   * Retrieves the number of statements stored for the term of this Generics object.
+   *
+   * @return The number of statements, at least 1.
+   */
+   public int getStatementCount(){
+      return (others == null) ? 1 : 1 + others.size();
+   }
+   
+   /**
+   * Retrieves the sentence of one of the statements of this Generics object.
+   *
+   * @param rank The position of the statement, 0 for the one with the highest confidence score.
+   * @return The sentence of the statement.
+   */
+   public String getSentence(int rank){
+      return (rank == 0) ? sentence : others.getSentence(rank - 1);
+   }
+   
+   /**
+   * Retrieves the lower-case sentence of one of the statements of this Generics object, used to match sentences ignoring case.
+   *
+   * @param rank The position of the statement, 0 for the one with the highest confidence score.
+   * @return The sentence of the statement in lower case.
+   */
+   public String getFoldedSentence(int rank){
+      return (rank == 0) ? foldedSentence : others.getFoldedSentence(rank - 1);
+   }
+   
+   /**
+   * Retrieves the confidence score of one of the statements of this Generics object.
+   *
+   * @param rank The position of the statement, 0 for the one with the highest confidence score.
+   * @return The confidence score of the statement.
+   */
+   public double getScore(int rank){
+      return (rank == 0) ? confidenceScore : others.getScore(rank - 1);
    }
    
    /**
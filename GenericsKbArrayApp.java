@@ -2,16 +2,17 @@ import java.util.*;
 import java.io.*;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
 * A class representing a knowledge base implementing as an array.
 * THe knowledge base stores information about terms, sentences and confidence scores.
 * 
 * This class provides funtionality to load data from a file, add new statements to the knowledge base,
-* search for information by term or term and sentence, display a menu for user interaction.
-* The data is stored in an array if Generics objects.
+* search for information by term or term and sentence through the {@link KnowledgeBase} interface.
+* The data is stored in an array if Generics objects, and the menu is provided by {@link KnowledgeBaseMenu}.
 *
 * The class also supports updating the knowledge base with new statements, treating them as updates
 * excuted in the order they in a file.
@@ -20,11 +21,27 @@ import java.io.IOException;
 * @version 1.0
 * @since 24/02/2024
 */
-public class GenericsKbArrayApp{
+public class GenericsKbArrayApp implements KnowledgeBase{
+   
+   //average number of bytes per line, used to estimate the size of the array from the size of the file
+   private static final int ESTIMATED_LINE_LENGTH = 64;
    
    //Instance variables
-   private static int counter;
-   private static Generics[] knowledgeBase;
+   private int counter;
+   private Generics[] knowledgeBase;
+   //maps each lower-cased term to the slot of the knowledge base array that holds it,
+   //in a map whose lookups end even when they overlap a writer during an optimistic read
+   private Map<String, Integer> termIndex = new ConcurrentHashMap<>();
+   //maps each word of the stored terms to the Generics objects whose term contains it
+   private TokenIndex<Generics> tokenIndex = new TokenIndex<>();
+   //trigram index over the lower-cased sentences of the stored Generics objects
+   private SentenceIndex<Generics> sentenceIndex = new SentenceIndex<>();
+   //the stored Generics objects ordered by confidence score, highest first
+   private ScoreIndex<Generics> scoreIndex = new ScoreIndex<>();
+   //BK-tree of the stored terms, for finding the terms closest to a misspelled one
+   private BKTree<Generics> fuzzyIndex = new BKTree<>();
+   //counters and latency histograms of the operations
+   private final KnowledgeBaseStats stats = new KnowledgeBaseStats();
    
    /**
    * Default constructor for GenericsKbArrayApp.
@@ -34,13 +51,13 @@ public class GenericsKbArrayApp{
    
    /**
    * Parameterized constructor for GenericsKbArrayApp
-   * Initializes the knowledge base to null and sets the counter based on the provided values.
+   * Initializes an empty knowledge base array with room for the given number of terms.
    *
-   * @param counter The initial value for the counter.
+   * @param capacity The initial length of the knowledge base array.
    */
-   public GenericsKbArrayApp(int counter){
-      this.knowledgeBase = null;
-      this.counter = counter;
+   public GenericsKbArrayApp(int capacity){
+      this.knowledgeBase = new Generics[Math.max(1, capacity)];
+      this.counter = 0;
    }
    
    /**
@@ -48,346 +65,549 @@ public class GenericsKbArrayApp{
    * 
    * @param data String containing the term, sentence and confidence score, to be converted into a Generics object
    * @return A Generics object containing the parsed information.
+   * @throws IllegalArgumentException if the string is not a valid statement.
    **/
    public static Generics makeData(String data){
-      // Create a scanner to read in the input String
-      Scanner scanner = new Scanner(data.trim());
-      // Set the delimiter to tab
-      scanner.useDelimiter("\t");
-      
-      // Create a node to store the parsed data
-      Generics dataInput = new Generics();
-      String score;
-      
-      //Extract the term, sentence and confidence score from the input string
-      dataInput.setTerm(scanner.next());
-      dataInput.setSentence(scanner.next());
-      score = scanner.next();
-      dataInput.setScore(Double.parseDouble(score));
+      // Split the input string at its tabs
+      RecordParser parser = new RecordParser();
+      if (!parser.parse(data, 1)){
+         throw new IllegalArgumentException(parser.getError());
+      }
       
-      return dataInput;
+      //Create a Generics object from the term, sentence and confidence score
+      return new Generics(parser.getTerm(), parser.getSentence(), parser.getScore());
    }
    
    /**
    * Loads data from a file and populated the knowledge base array.
    * The file should contain lines with tab-separated values for term, sentence, and confidence score.
+   * A line for a term that is already stored updates the existing entry, and the term index is rebuilt.
+   * The file is read once: the array is sized from the file length and doubled whenever it fills up.
+   * It is read into a new array and new indexes, which replace the current ones only once the whole
+   * file has been read, so a load that fails leaves the knowledge base as it was.
    *
    * @param file The name of the file to read data from.
+   * @param parallel Whether the file is memory-mapped and parsed in parallel.
+   * @return The number of lines read and the time the load took.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read
    */
-   private static void loadFromFile(String file) throws FileNotFoundException{
-      Scanner fileData = null;
+   @Override
+   public LoadResult load(String file, boolean parallel) throws IOException{
+      File input = new File(file);
+      if (!input.isFile()){
+         //handles a case where the file is not found, before the current knowledge base is replaced
+         throw new FileNotFoundException(file);
+      }
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
       
+      //estimates the number of entries from the size of the file
+      int capacity = (int)Math.min(Integer.MAX_VALUE - 8, Math.max(16, input.length() / ESTIMATED_LINE_LENGTH));
+      //the file is read into a new knowledge base, so a read that fails leaves the current one as it was
+      GenericsKbArrayApp loaded = new GenericsKbArrayApp(capacity);
+      loaded.termIndex = new ConcurrentHashMap<>(capacity, 0.75f);
+      
+      long lines;
+      if (parallel){
+         lines = ParallelFileLoader.load(file, loaded::addLoadedStatement);
+      }
+      else{
+         lines = loaded.readLines(input);
+      }
+      //the current knowledge base is only replaced once the whole file has been read
+      knowledgeBase = loaded.knowledgeBase;
+      termIndex = loaded.termIndex;
+      tokenIndex = loaded.tokenIndex;
+      sentenceIndex = loaded.sentenceIndex;
+      scoreIndex = loaded.scoreIndex;
+      fuzzyIndex = loaded.fuzzyIndex;
+      counter = loaded.counter;
+      //each line is one hash lookup in the term index
+      stats.record(KnowledgeBaseStats.Operation.LOAD, statsStart, lines, lines);
+      return new LoadResult(lines, counter, System.nanoTime() - startTime);
+   }
+   
+   /**
+   * Reads a file line by line into the knowledge base array.
+   * Malformed lines are reported with their line number and skipped.
+   *
+   * @param input The file to read.
+   * @return The number of lines read.
+   * @throws IOException if the file cannot be read
+   */
+   private long readLines(File input) throws IOException{
+      BufferedReader fileReader = null;
       try{
          //opens the specified file for reading
-         fileData = new Scanner(new File(file));
+         fileReader = new BufferedReader(new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8));
+         RecordParser parser = new RecordParser();
+         long lines = 0;
          
-         //counts the number of lines in the file
-         counter = 0;
-         while(fileData.hasNextLine()){
-            fileData.nextLine();
-            counter++;
-         } 
+         String dataLine;
+         while ((dataLine = fileReader.readLine()) != null){
+            lines++;
+            if (parser.parse(dataLine, lines)){
+               addLoadedStatement(parser.getTerm(), parser.getSentence(), parser.getScore());
+            }
+            else{
+               //malformed lines are reported and skipped
+               System.out.println("Skipping malformed line. " + parser.getError());
+            }
+         }
+         return lines;
       }
-      catch(FileNotFoundException e){
-         //handles a case where the file is not found
-         throw e;
-      }finally{
-         if (fileData != null) {
-            fileData.close(); // closes the file
+      finally{
+         if (fileReader!=null){
+            fileReader.close(); // closes the file
          }
       }
-      
-      Scanner fileReader = null;
+   }
+   
+   /**
+   * Adds a statement read from a file to the knowledge base array.
+   * A statement for a term that is already stored updates it, otherwise it is appended to the array.
+   *
+   * @param term The term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   */
+   private void addLoadedStatement(String term, String sentence, double score){
+      Integer slot = termIndex.get(fold(term));
+      if (slot != null){
+         //a later line for a term that is already stored updates it
+         update(knowledgeBase[slot], sentence, score);
+      }
+      else{
+         if (counter == knowledgeBase.length){
+            //the array is full, so it is doubled in size
+            knowledgeBase = Arrays.copyOf(knowledgeBase, grow(knowledgeBase.length));
+         }
+         //creates a Generics class object of each of the data read from the file
+         Generics data = new Generics(term, sentence, score);
+         termIndex.put(fold(term), counter);
+         tokenIndex.add(term, data);
+         sentenceIndex.addFolded(data, data.getFoldedSentence(0));
+         scoreIndex.add(data, score);
+         fuzzyIndex.add(term, data);
+         knowledgeBase[counter++] = data;
+      }
+   }
+   
+   /**
+   * Adds a statement to a stored Generics object with {@link Generics#update(String, String, double)} and updates the indexes.
+   *
+   * @param data The Generics object holding the term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   */
+   private void update(Generics data, String sentence, double score){
+      //the Generics object and the sentence index share the lower-case sentence
+      String folded = SentenceIndex.fold(sentence);
+      if (data.update(sentence, folded, score)){
+         sentenceIndex.addFolded(data, folded);
+      }
+      scoreIndex.update(data, data.getScore());
+   }
+   
+   /**
+   * Saves the knowledge base array to a snapshot, in the order of its slots.
+   *
+   * @param file The name of the snapshot file.
+   * @throws IOException if the snapshot cannot be written
+   */
+   @Override
+   public void saveSnapshot(String file) throws IOException{
+      SnapshotFile.Writer writer = new SnapshotFile.Writer(file, SnapshotFile.ARRAY_LAYOUT, counter);
       try{
-         fileReader = new Scanner(new File(file));
-         //creates the array of the size of the counter(the number of lines in the file)
-         knowledgeBase = new Generics[counter];
-         
-         if (fileReader.hasNextLine()){
-            fileReader.reset();//reads in the file from the beginning of the file
-            for (int i = 0;  i<counter; i++){
-               //creates a Generics class object of each of the data read from the file
-               knowledgeBase[i] = makeData(fileReader.nextLine());
+         for (int i = 0; i < counter; i++){
+            Generics data = knowledgeBase[i];
+            writer.write(data.getTerm(), data.getSentence(), data.getScore(), 0, data.getStatementCount() - 1);
+            for (int rank = 1; rank < data.getStatementCount(); rank++){
+               writer.writeOther(data.getSentence(rank), data.getScore(rank));
             }
          }
-      }
-      catch(FileNotFoundException e){
-         throw e;
+         writer.finish();
       }
       finally{
-         if (fileReader!=null){
-            fileReader.close();
+         writer.close();
+      }
+   }
+   
+   /**
+   * Replaces the knowledge base array with the contents of a snapshot.
+   * The entries are already merged and in slot order, so the array is allocated at its exact size
+   * and filled without parsing lines or looking up duplicate terms.
+   *
+   * @param file The name of the snapshot file.
+   * @return The number of entries read and the time the load took.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read or was not saved by an array
+   */
+   @Override
+   public LoadResult loadSnapshot(String file) throws IOException{
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      SnapshotFile.Reader reader = new SnapshotFile.Reader(file);
+      try{
+         if (reader.getLayout() != SnapshotFile.ARRAY_LAYOUT){
+            throw new IOException("The snapshot was not saved by an array knowledge base.");
          }
+         int count = reader.getCount();
+         Generics[] entries = new Generics[Math.max(1, count)];
+         Map<String, Integer> terms = new ConcurrentHashMap<>(Math.max(1, count), 0.75f);
+         TokenIndex<Generics> tokens = new TokenIndex<>();
+         SentenceIndex<Generics> sentences = new SentenceIndex<>();
+         ScoreIndex<Generics> scores = new ScoreIndex<>();
+         BKTree<Generics> fuzzy = new BKTree<>();
+         for (int i = 0; reader.next(); i++){
+            //the statements are added lowest score first, so each one takes the lead and they keep their saved order, ties included
+            int last = reader.getStatementCount() - 1;
+            Generics data = new Generics(reader.getTerm(), reader.getSentence(last), reader.getScore(last));
+            entries[i] = data;
+            terms.put(fold(data.getTerm()), i);
+            tokens.add(data.getTerm(), data);
+            sentences.addFolded(data, data.getFoldedSentence(0));
+            for (int rank = last - 1; rank >= 0; rank--){
+               String folded = SentenceIndex.fold(reader.getSentence(rank));
+               data.update(reader.getSentence(rank), folded, reader.getScore(rank));
+               sentences.addFolded(data, folded);
+            }
+            scores.add(data, data.getScore());
+            fuzzy.add(data.getTerm(), data);
+         }
+         //the current knowledge base is only replaced once the whole snapshot has been read
+         knowledgeBase = entries;
+         termIndex = terms;
+         tokenIndex = tokens;
+         sentenceIndex = sentences;
+         scoreIndex = scores;
+         fuzzyIndex = fuzzy;
+         counter = count;
+      }
+      finally{
+         reader.close();
+      }
+      stats.record(KnowledgeBaseStats.Operation.LOAD, statsStart, 0, counter);
+      return new LoadResult(counter, counter, System.nanoTime() - startTime);
+   }
+   
+   /**
+   * Applies an update file to the knowledge base array, keeping the terms already stored.
+   * Unlike {@link #load(String, boolean)} the array is not replaced: each statement is one lookup
+   * in the term index, and updates the Generics object of its term or appends a new one to the array.
+   * The array is not kept in the order of its terms, so the batch is applied in the order of the
+   * file rather than sorted.
+   *
+   * @param batch The statements to apply.
+   * @return The number of terms added and of statements that updated a term.
+   */
+   @Override
+   public MergeResult merge(UpdateBatch batch){
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      if (knowledgeBase == null){
+         knowledgeBase = new Generics[Math.max(16, batch.size())];
       }
+      int before = counter;
+      for (int i = 0; i < batch.size(); i++){
+         addLoadedStatement(batch.getTerm(i), batch.getSentence(i), batch.getScore(i));
+      }
+      int added = counter - before;
+      //each statement is one hash lookup in the term index
+      stats.record(KnowledgeBaseStats.Operation.MERGE, statsStart, batch.size(), batch.size());
+      return new MergeResult(batch.getLines(), added, batch.size() - added, counter, System.nanoTime() - startTime);
+   }
+   
+   /**
+   * Calculates the new length of a full array, doubling it without overflowing.
+   *
+   * @param length The current length of the array.
+   * @return The new length of the array.
+   **/
+   private static int grow(int length){
+      int maxLength = Integer.MAX_VALUE - 8;
+      if (length >= maxLength){
+         throw new OutOfMemoryError("The knowledge base is too large for an array.");
+      }
+      return (int)Math.min(maxLength, 2L * length);
+   }
+   
+   /**
+   * Converts a term to the case-folded form used as a key in the term index.
+   *
+   * @param term The term to convert.
+   * @return The lower-cased term.
+   **/
+   private static String fold(String term){
+      return term.toLowerCase(Locale.ROOT);
+   }
+   
+   /**
+   * Finds the Generics object holding a term through the term index, ignoring case.
+   *
+   * @param term The term to look for.
+   * @return The Generics object for the term, or null if it is not found.
+   **/
+   private Generics find(String term){
+      Integer slot = termIndex.get(fold(term));
+      return (slot == null) ? null : knowledgeBase[slot];
+   }
+   
+   /**
+   * Copies a Generics object into a statement that can be returned to the caller.
+   *
+   * @param data The Generics object to copy.
+   * @return The statement, or null if data is null.
+   **/
+   private static Statement toStatement(Generics data){
+      return (data == null) ? null : new Statement(data.getTerm(), data.getSentence(), data.getScore());
+   }
+   
+   /**
+   * Copies one of the statements of a Generics object into a statement that can be returned to the caller.
+   *
+   * @param data The Generics object.
+   * @param rank The position of the statement, 0 for the best one.
+   * @return The statement.
+   **/
+   private static Statement toStatement(Generics data, int rank){
+      return new Statement(data.getTerm(), data.getSentence(rank), data.getScore(rank));
+   }
+   
+   /**
+   * Copies a list of Generics objects into statements.
+   *
+   * @param entries The Generics objects to copy.
+   * @return The list of statements.
+   **/
+   private static List<Statement> toStatements(List<Generics> entries){
+      List<Statement> results = new ArrayList<>(entries.size());
+      for (Generics data: entries){
+         results.add(toStatement(data));
+      }
+      return results;
    }
       
    /**
-   * Searches for a term in the knowledge base and print the associated information.
+   * Searches for a term in the knowledge base.
+   * The knowledge base is searched through the term index in constant time.
    *
    * @param searchTerm The term to search for.
-   * @param knowledgeBase The array representing the knowledge base.
+   * @return The statement for the term, or null if it is not found.
    **/
-   public static void searchTerm(String searchTerm, Generics[] knowledgeBase){
-      // Flag to track if the term is found in the knowledge base.
-      boolean termFound = false;
-      
-      // Iterate through each Generics object in the knowledgeBase array.
-      for(Generics data: knowledgeBase){
-         // Check if the Generics object is not null and its term matches the searchTerm (case-insensitive).
-         if (data != null && data.getTerm().equalsIgnoreCase(searchTerm)){
-            // Print the statement and confidence score if the term is found.
-            System.out.println("Statement found: " + data.getSentence() + " (Confidence score: " + data.getScore() + ").\n");
-            termFound = true;
-            break; // Break out of the loop once the term is found.
-         }
-      }
-      // If the term is not found, print a message indicating so.
-      if (!termFound){
-         System.out.println("No statement found for term: " + searchTerm + ".\n");
+   @Override
+   public Statement lookup(String searchTerm){
+      long start = stats.start();
+      Generics data = find(searchTerm);
+      stats.record(KnowledgeBaseStats.Operation.LOOKUP, start, 1, (data == null) ? 0 : 1);
+      return toStatement(data);
+   }
+   
+   /**
+   * Looks up the statements of a term in the knowledge base, which the Generics object for the term keeps in order.
+   *
+   * @param term The term to search for.
+   * @param limit The largest number of statements to return.
+   * @return Up to limit statements for the term, highest score first, or an empty list if it is not found.
+   **/
+   @Override
+   public List<Statement> lookupAll(String term, int limit){
+      long start = stats.start();
+      Generics data = find(term);
+      List<Statement> results = new ArrayList<>();
+      for (int rank = 0; data != null && rank < Math.min(limit, data.getStatementCount()); rank++){
+         results.add(toStatement(data, rank));
       }
+      stats.record(KnowledgeBaseStats.Operation.LOOKUP, start, 1, results.size());
+      return results;
    }
    
    /**
    * Searches for the knowledge base for partial matches to a term.
+   * A Generics object matches if one of the words of its term equals the searched term.
+   * The matches are read from the token index, so no stored term is tokenized during the search.
    * 
    * @param term  The term to search for.
-   * @return A list of Generic objects that are partial matches to a term, or an empty list of not found.
+   * @return A list of statements that are partial matches to a term, or an empty list of not found.
    **/
-   public static List<Generics> similarSearches(String term){
-      List<Generics> results = new ArrayList<>(); //creates an array to store the partial matches
-      if (knowledgeBase== null){
-         // base case: the root is null or the term is present at the root
-         return results;
-         
-      } else{
-         //checks for partial matches
-         for (Generics data: knowledgeBase){
-            StringTokenizer termCompare = new StringTokenizer(data.getTerm(), " ");
-            //String similarTerms = termCompare.nextToken(" ");
-            while (termCompare.hasMoreElements())   
-           {    
-               if (termCompare.nextToken().equalsIgnoreCase(term))
-                  results.add(data);
-           }
-        }
+   @Override
+   public List<Statement> partialMatches(String term){
+      long start = stats.start();
+      List<Statement> results = new ArrayList<>(); //creates an array to store the partial matches
+      //looks up the partial matches in the token index
+      List<Generics> candidates = tokenIndex.lookup(term);
+      for (Generics data: candidates){
+         if (!data.getTerm().equalsIgnoreCase(term)){
+            results.add(toStatement(data));
+         }
       }
+      stats.record(KnowledgeBaseStats.Operation.PARTIAL_MATCH, start, candidates.size(), candidates.size());
       return results;
    }
    
    /**
-   * Searches for a term and sentence in the knowledge base and prints the associated confidence score.
+   * Searches for a term and sentence in the knowledge base.
+   * The sentence matches if one of the stored sentences of the term contains it, ignoring case.
    *
    * @param term The term to search for.
    * @param sentence The sentence to search for.
-   * @param knowledgeBase The array representing the knowledge base.
+   * @return The statement for the term, or null if the term or sentence is not found.
    **/
-   public static void searchForTermAndSentence(String term, String sentence, Generics[] knowledgeBase){
-      boolean termFound = false;
-      double score = -1;
-      boolean sentenceFound = false;
-      
-      // Check if the knowledge base is not null.
-      if (knowledgeBase != null){
-         // Iterate through each Generics object in the knowledgeBase array
-         for(Generics data: knowledgeBase){
-            // Check if the Generics object's term and sentence match the specified term and sentence (case-insensitive)
-            if (data.getTerm().equalsIgnoreCase(term)){
-               termFound = true;
-               // Update the score and set the found flag to true
-               if (data.getSentence().equalsIgnoreCase(sentence)||(data.getSentence().toLowerCase()).contains(sentence.toLowerCase())){
-                  //checks if the sentence that the user searches for matches or us similar to the sentence of the term
-                  sentenceFound = true;
-                  score = data.getScore();
-                  break; // Break out of the loop once the term and sentence are found
-               }
+   @Override
+   public Statement lookupTermAndSentence(String term, String sentence){
+      long start = stats.start();
+      // Look up the Generics object holding the term
+      Generics data = find(term);
+      //checks the sentences of the term from the best one down for the sentence that the user searches for,
+      //comparing against the pre-folded sentences
+      Statement result = null;
+      int checked = 0;
+      if (data != null){
+         String folded = fold(sentence);
+         while (result == null && checked < data.getStatementCount()){
+            if (data.getFoldedSentence(checked).contains(folded)){
+               result = toStatement(data, checked);
             }
-         }
-         // If the term and sentence combination is not found, print a message indicating so
-         if (termFound==false){
-            // Print the confidence score if the term and sentence combination is found
-            System.out.println("The term was not found in the knowledge base.\n");
-         }
-         else if(termFound == true && sentenceFound == false){
-            System.out.println("The sentence was not found in the knowledge base.\n");
-         }
-         else{
-            // Print a message if the knowledge base is empty or not found
-            System.out.println("The statement was found and has a confidence score of " + score + ".\n");
+            checked++;
          }
       }
-      else{
-         System.out.println("The knowledge base is empty or not found.\n");
+      stats.record(KnowledgeBaseStats.Operation.TERM_AND_SENTENCE, start, 1 + checked, checked);
+      return result;
+   }
+   
+   /**
+   * Searches the whole knowledge base for statements whose sentence contains a phrase, ignoring case.
+   * The search uses the trigram index, so only sentences sharing the rarest
+   * three-letter part of the phrase are checked.
+   *
+   * Every matching statement of a term is returned, best first.
+   *
+   * @param phrase The phrase to search for.
+   * @return The matching statements, or an empty list if there are none.
+   **/
+   @Override
+   public List<Statement> searchStatements(String phrase){
+      long start = stats.start();
+      List<Generics> matches = sentenceIndex.search(phrase);
+      String folded = fold(phrase);
+      List<Statement> results = new ArrayList<>(matches.size());
+      for (Generics data: matches){
+         for (int rank = 0; rank < data.getStatementCount(); rank++){
+            if (data.getFoldedSentence(rank).contains(folded)){
+               results.add(toStatement(data, rank));
+            }
+         }
       }
+      stats.record(KnowledgeBaseStats.Operation.STATEMENT_SEARCH, start, matches.size(), results.size());
+      return results;
    }
    
    /**
-   * updates the sentence of an existing Generics object in a knowledge base.
-   * If the term is found in the knowledge base, the method updates the associated sentence and confidence score,
-   * unless the new statement has a lower confidence score.
-   * The update functionality is supported through the user interface and file loading.
+   * Finds the statements whose term is within an edit distance of the given term using the BK-tree of the terms.
+   *
+   * @param term The term to look up.
+   * @param maxDistance The largest number of inserted, deleted or replaced letters allowed.
+   * @return The matching statements, closest first, or an empty list if there are none.
+   */
+   @Override
+   public List<Statement> fuzzyLookup(String term, int maxDistance){
+      long start = stats.start();
+      List<Generics> matches = fuzzyIndex.search(term, maxDistance);
+      stats.record(KnowledgeBaseStats.Operation.FUZZY_LOOKUP, start, matches.size(), matches.size());
+      return toStatements(matches);
+   }
+   
+   /**
+   * Finds the statements with the highest confidence scores using the score index.
+   *
+   * @param k The largest number of statements to return.
+   * @return Up to k statements, highest score first.
+   */
+   @Override
+   public List<Statement> topByScore(int k){
+      long start = stats.start();
+      List<Generics> matches = scoreIndex.top(k);
+      stats.record(KnowledgeBaseStats.Operation.SCORE_QUERY, start, matches.size(), matches.size());
+      return toStatements(matches);
+   }
+   
+   /**
+   * Finds every statement with a confidence score of at least a threshold using the score index.
+   *
+   * @param threshold The lowest confidence score returned.
+   * @return The matching statements, highest score first, or an empty list if there are none.
+   */
+   @Override
+   public List<Statement> withScoreAtLeast(double threshold){
+      long start = stats.start();
+      List<Generics> matches = scoreIndex.atLeast(threshold);
+      stats.record(KnowledgeBaseStats.Operation.SCORE_QUERY, start, matches.size(), matches.size());
+      return toStatements(matches);
+   }
+   
+   /**
+   * adds a statement to an existing Generics object in a knowledge base.
+   * If the term is found in the knowledge base, the statement joins the other statements of the term in the order
+   * of its confidence score, and becomes the best one unless it has a lower score. Terms that are not in the array are not added.
    *
    * @param term The term to which the statement is related.
    * @param sentence The statement to be added or updated.
    * @param score The confidence score for th statement.
+   * @return UPDATED with the best statement of the term, or NOT_FOUND if the term is not in the knowledge base.
    */
-   public static void addStatementToKnowledgeBase(String term, String sentence, double score){
-      boolean found = false;//boolean variable to check if the term is found in the knowledge base
-      // Iterate through each Generics object in the knowledgeBase array
-      for (Generics data: knowledgeBase){
-         // Check if the term matches the specified term (case-insensitive)
-         if ((data.getTerm()).equalsIgnoreCase(term)){
-            // update the statement and confidence score.
-            data.update(sentence, score);
-            found = true;//term is found in the knowledge base
-         }
-      }
-      //prints the appropriate statement depending on whether the term has been found
-      if(found){
-         System.out.println("Statement for term " + term + " has been updated.\n");
-      }
-      else{
-         System.out.println("The term " + term + " is not found in the knowledge base\n");
+   @Override
+   public UpdateResult addOrUpdate(String term, String sentence, double score){
+      long start = stats.start();
+      // Look up the Generics object holding the term (case-insensitive)
+      Generics data = find(term);
+      if (data == null){
+         stats.record(KnowledgeBaseStats.Operation.ADD_OR_UPDATE, start, 1, 0);
+         return new UpdateResult(UpdateResult.Status.NOT_FOUND, null);
       }
+      // update the statement and confidence score.
+      update(data, sentence, score);
+      stats.record(KnowledgeBaseStats.Operation.ADD_OR_UPDATE, start, 1, 1);
+      return new UpdateResult(UpdateResult.Status.UPDATED, toStatement(data));
    }
    
    /**
-   * Displays a menu for the user to interact with the knowledge base.
-   * The user can choose actions like loading a knowledge base, adding a new statement,
-   * searching for items, and quitting the program.
+   * Retrieves the number of terms stored in the array.
    *
-   * @param input The scanner object for user input.
+   * @return The number of terms.
    **/
-   public static void displayMenu(Scanner input){
-      int choice;
-      do{
-         System.out.println("Choose an action from the menu:");
-         System.out.println("1. Load a knowledge base from a file");
-         System.out.println("2. Add a new statement to the knowledge base");
-         System.out.println("3. Search for an item in the knowledge base by term");
-         System.out.println("4. Search for a item in the knowledge base by term and sentence");
-         System.out.println("5. Quit");
-         
-         System.out.print("Enter your choice: ");
-         
-         if (input.hasNextInt()){
-         
-            choice = input.nextInt();
-            input.nextLine();//consumes newLine charachter
-            System.out.println();
-            
-            switch(choice){
-               case 1:
-                  System.out.print("Enter File name: ");
-                  String fileName = input.nextLine();
-                  try{
-                  //checks if file is found
-                     loadFromFile(fileName);
-                     if (knowledgeBase != null){
-                        System.out.println();
-                        System.out.println("Knowledge base loaded successfully.\n");
-                     }
-                     else{
-                        System.out.println("Error loading knowledge base.\n");
-                     }
-
-                  }
-                  catch(FileNotFoundException e){
-                     //Handles the case where the file is not found
-                     System.out.println("\nFile '" + fileName + "' not found.\n");
-                  }
-                  break;
-            
-               case 2:
-                  //Add a new statement to the knowledge base
-                  GenericsKbArrayApp genData = new GenericsKbArrayApp();
-                  if (knowledgeBase != null) {
-                     System.out.print("Enter the term: ");
-                     String term = input.nextLine();
-                     System.out.print("Enter the statement: ");
-                     String statement = input.nextLine();
-                     System.out.print("Enter the confidence score: ");
-                     double score = input.nextDouble();
-                     genData.addStatementToKnowledgeBase(term, statement, score);
-                  }
-                  else{
-                     System.out.println("No knowledge base loaded. Please load a knowledge base first.\n");
-                  }
-                  break;
-                  
-               case 3:
-                  //Search for an item in the knowledge base by term
-                  if (knowledgeBase != null) {
+   @Override
+   public int size(){
+      return counter;
+   }
    
-                     System.out.print("Enter the term to search: ");
-                     String searchTerm = input.nextLine();
-                     searchTerm(searchTerm, knowledgeBase);
-                     //retrieves partial matches of the item
-                     List<Generics> results = similarSearches(searchTerm);
-                     if (results != null && !results.isEmpty()){
-                        //prints out the partial matches if they are found
-                        System.out.println("Partial matches are: ");
-                        for (Generics result: results){
-                           System.out.println("Term: " + result.getTerm() + ". Statement: " + result.getSentence() + " (Confidence score: " + result.getScore() + ").");
-                        }
-                     }
-                     System.out.println();
-
-                  }
-                  else{
-                     System.out.println("No knowledge base loaded. Please load a knowledge base first.\n");
-                  }
-                  
-                  break;
-                  
-               case 4:
-                  //Search for an item in the knowledge base by term and sentence
-                  if (knowledgeBase != null) {
-                     System.out.print("Enter the term: ");
-                     String termForSearch = input.nextLine();
-                     System.out.print("Enter the statement to search for: ");
-                     String sentence = input.nextLine();
-                     searchForTermAndSentence(termForSearch, sentence, knowledgeBase);
-                     List<Generics> matches= similarSearches(termForSearch);
-                     if (matches != null && !matches.isEmpty()){
-                        //prints out the partial matches if they are found
-                        System.out.println("Partial matches are: ");
-                        for (Generics result: matches){
-                           System.out.println("Term: " + result.getTerm() + ". Statement: " + result.getSentence() + " (Confidence score: " + result.getScore() + ").");
-                        }
-                        System.out.println();
-                     }
-                  }
-                  else{
-                     System.out.println("No knowledge base loaded. Please load a knowledge base first.\n");
-                  }
-                  break;
-                  
-               case 5:
-                  //Exit program once the user chooses quit
-                  System.out.println("Exiting the program. Goodbye!");
-                  break;
-                  
-               default:
-                 System.out.println("Invalid choice. Please enter a number between 1 and 5.\n");
-                 break;
-            }
-         }
-         else{
-            System.out.println("Invalid choice. Please enter a number from 1 to 5.\n");
-            input.nextLine(); // Consume invalid input
-            choice = 0; // Set choice to an invalid value to continue the loop
-         }
-      }
-      while (choice!=5); //loop until the user quits the program
+   /**
+   * Retrieves the statistics collected about the operations of this knowledge base.
+   *
+   * @return The statistics of this knowledge base.
+   **/
+   @Override
+   public KnowledgeBaseStats getStats(){
+      return stats;
    }
    
-    /**
-   * The main entry point for the program which displays the menu for interacting with the knowledge base implemented using a Binary Search Tree (BST) and closes the scanner afterward.
+   /**
+   * Describes the knowledge base array.
    *
-   * @param args The command-line arguments (not used in this program).
-   */   public static void main(String[] args) {
-      Scanner scanner = new Scanner(System.in);
-      GenericsKbArrayApp.displayMenu(scanner);
-      scanner.close();
+   * @return The number of terms and the length of the array.
+   **/
+   @Override
+   public String describe(){
+      return "Array of " + counter + " terms (capacity " + ((knowledgeBase == null) ? 0 : knowledgeBase.length) + ").";
+   }
+   
+   /**
+   * The main entry point for the program which displays the menu for interacting with the knowledge base
+   * implemented using an array. Another backend can be chosen with --backend.
+   *
+   * @param args The command-line arguments, see {@link KnowledgeBaseMenu#run(String[], String)}.
+   */
+   public static void main(String[] args) {
+      KnowledgeBaseMenu.run(args, "array");
    }
 }
\ No newline at end of file
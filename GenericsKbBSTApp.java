@@ -1,24 +1,40 @@
 import java.util.*;
+import java.util.function.Consumer;
 import java.io.*;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
 * A class representing a knowledge base implemented by a Binary Search Tree (BST).
-* Each node in a tree contains information about a specific term, sentence and confidence score.
-* The class contains methods for inserting a node into the BST, searching, and updating the knowledge base.
+* Each node in a tree contains information about a specific term and its statements, each a sentence and confidence score.
+* The class contains methods for inserting a node into the BST, searching, and updating the knowledge base,
+* and answers the queries of the {@link KnowledgeBase} interface. The menu is provided by {@link KnowledgeBaseMenu}.
 *
 * @author Nikita Martin
 * @version 1.0
 * @since 24/02/2024
 **/
-public class GenericsKbBSTApp{
-   //1private static String term, sentence;
-   private static Node root;
-   //private class Listener extends
+public class GenericsKbBSTApp implements KnowledgeBase{
+   private Node root;
+   //the number of nodes in the tree
+   private int size;
+   //set by addOrUpdate when it creates a new node rather than updating one
+   private boolean added;
+   //maps each word of the stored terms to the nodes whose term contains it
+   private TokenIndex<Node> tokenIndex = new TokenIndex<>();
+   //trigram index over the lower-cased sentences of the nodes
+   private SentenceIndex<Node> sentenceIndex = new SentenceIndex<>();
+   //the nodes ordered by confidence score, highest first
+   private ScoreIndex<Node> scoreIndex = new ScoreIndex<>();
+   //BK-tree of the terms of the nodes, for finding the terms closest to a misspelled one
+   private BKTree<Node> fuzzyIndex = new BKTree<>();
+   //counters and latency histograms of the operations
+   private final KnowledgeBaseStats stats = new KnowledgeBaseStats();
+   //the number of terms compared by addOrUpdate and by merges so far
+   private long comparisons;
+   
    /**
    * Constructs an empty knowledge base represented as a Binary Search Tree
    **/
@@ -31,57 +47,148 @@ public class GenericsKbBSTApp{
    * 
    * @param data  The input string containing the term, sentence and confidence score, separated by tabs.
    * @return A new node with the parsed information.
+   * @throws IllegalArgumentException if the string is not a valid statement.
    **/
    public static Node makeData(String data){
-      // Create a scanner to read in the input String
-      Scanner scanner = new Scanner(data.trim());
-      // Set the delimiter to tab
-      scanner.useDelimiter("\t");
+      // Split the input string at its tabs
+      RecordParser parser = new RecordParser();
+      if (!parser.parse(data, 1)){
+         throw new IllegalArgumentException(parser.getError());
+      }
       
       // Create a node to store the parsed data
-      Node dataInput = new Node();
-      String score;
-      
-      //Extract the term, sentence and confidence score from the input string
-      dataInput.setTerm(scanner.next());
-      dataInput.setSentence(scanner.next());
-      score = scanner.next();
-      dataInput.setScore(Double.parseDouble(score));
-      
-      return dataInput;
+      return new Node(parser.getTerm(), parser.getSentence(), parser.getScore());
    }
    
    /**
-   * Creates a new node with the given term, sentence and confidence score, and inserts it into the BST.
-   * 
-   * @param root The root of the current subtree
-   * @param newNode  The new node to be inserted into the BST.
-   * @return THe root of the updated subtree.
+   * Adds a node that has just joined the tree to the indexes and counts it.
+   *
+   * @param node The new node.
    **/
-   private static Node insert(Node root, Node newNode){
-      //if tree is empty, return a new node
-      if (root == null){
-         return newNode;
+   private void index(Node node){
+      tokenIndex.add(node.getTerm(), node);
+      sentenceIndex.addFolded(node, node.getFoldedSentence(0));
+      scoreIndex.add(node, node.getScore());
+      fuzzyIndex.add(node.getTerm(), node);
+      size++;
+   }
+   
+   /**
+   * Adds a statement to a node of the tree with {@link Node#update(String, double)} and updates the indexes.
+   *
+   * @param node The node holding the term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   **/
+   private void update(Node node, String sentence, double score){
+      //the node and the sentence index share the lower-case sentence
+      String folded = SentenceIndex.fold(sentence);
+      if (node.update(sentence, folded, score)){
+         sentenceIndex.addFolded(node, folded);
       }
+      scoreIndex.update(node, node.getScore());
+   }
+   
+   /**
+   * Returns the height of a subtree, where an empty subtree has a height of 0.
+   *
+   * @param node The root of the subtree.
+   * @return The height of the subtree.
+   **/
+   private static int height(Node node){
+      return (node == null) ? 0 : node.getHeight();
+   }
+   
+   /**
+   * Recalculates the height of a node from the heights of its children.
+   *
+   * @param node The node to update.
+   **/
+   private static void updateHeight(Node node){
+      node.setHeight(1 + Math.max(height(node.getLeftNode()), height(node.getRightNode())));
+   }
+   
+   /**
+   * Rotates a subtree to the right, making the left child the new root of the subtree.
+   *
+   * @param node The root of the subtree to rotate.
+   * @return The new root of the subtree.
+   **/
+   private static Node rotateRight(Node node){
+      Node newRoot = node.getLeftNode();
+      node.setLeftNode(newRoot.getRightNode());
+      newRoot.setRightNode(node);
+      updateHeight(node);
+      updateHeight(newRoot);
+      return newRoot;
+   }
+   
+   /**
+   * Rotates a subtree to the left, making the right child the new root of the subtree.
+   *
+   * @param node The root of the subtree to rotate.
+   * @return The new root of the subtree.
+   **/
+   private static Node rotateLeft(Node node){
+      Node newRoot = node.getRightNode();
+      node.setRightNode(newRoot.getLeftNode());
+      newRoot.setLeftNode(node);
+      updateHeight(node);
+      updateHeight(newRoot);
+      return newRoot;
+   }
+   
+   /**
+   * Restores the AVL property of a subtree after a node has been inserted below it.
+   * The heights of the two children may differ by at most one.
+   *
+   * @param node The root of the subtree to balance.
+   * @return The root of the balanced subtree.
+   **/
+   private static Node balance(Node node){
+      updateHeight(node);
+      int balanceFactor = height(node.getLeftNode()) - height(node.getRightNode());
       
-      //otherwise recur down the subtrees by inserting logic based on binary search tree rules
-      if ((newNode.getTerm()).compareTo(root.getTerm())<0){
-         //nodes with terms less than the rootnode term, gets placed on the left subtree
-         root.setLeftNode(insert(root.getLeftNode(), newNode));
-      }
-      else if((newNode.getTerm()).compareTo(root.getTerm())>0){
-         //nodes with terms more than the rootnode term, gets placed on the right subtree
-         root.setRightNode(insert(root.getRightNode(), newNode));
+      if (balanceFactor > 1){
+         //left heavy: a left-right case is first turned into a left-left case
+         if (height(node.getLeftNode().getLeftNode()) < height(node.getLeftNode().getRightNode())){
+            node.setLeftNode(rotateLeft(node.getLeftNode()));
+         }
+         return rotateRight(node);
       }
-      else{
-         root.update(newNode.getSentence(), newNode.getScore());
+      else if (balanceFactor < -1){
+         //right heavy: a right-left case is first turned into a right-right case
+         if (height(node.getRightNode().getRightNode()) < height(node.getRightNode().getLeftNode())){
+            node.setRightNode(rotateRight(node.getRightNode()));
+         }
+         return rotateLeft(node);
       }
-      //return the (unchanged) node pointer
+      return node;
+   }
+   
+   /**
+   * Retrieves the height of the knowledge base tree.
+   *
+   * @return The height of the tree, or 0 if the tree is empty.
+   **/
+   public int getTreeHeight(){
+      return height(root);
+   }
+   
+   /**
+   * Retrieves the root of the knowledge base tree, to search or traverse it with the methods that take a subtree.
+   * The tree must not be changed through the nodes it returns.
+   *
+   * @return The root node, or null if the tree is empty.
+   **/
+   public Node getRoot(){
       return root;
    }
    
    /**
-   * Searches for a node with the specified term in the BST recursively.
+   * Searches for a node with the specified term in the BST.
+   * Terms are compared ignoring case, in the same order used to build the tree.
+   * The search walks down the tree in a loop, so it uses no stack however deep the tree is.
    *
    * @param node The rootNode of the current subtree
    * @param term The term to search for.
@@ -89,148 +196,397 @@ public class GenericsKbBSTApp{
    **/
    public static Node search( Node node, String term){
       // Search for the node with the given term
-      if (node == null||node.getTerm().equalsIgnoreCase(term)){
-         //base case: root is null or term is present at root
-         return node;
-      }
-      //recursively search for a node
-      if (term.compareTo(node.getTerm())==0){
-         return node;
-      }
-      else if (term.compareTo(node.getTerm())<0){
-         //recursively search the left branch of the node as the term comes before the root's term
-         if (node.getLeftNode() == null)
-            return null;//the left node if a leaf
-         else
-            return search(node.getLeftNode(), term);
-      }
-      else{
-         //recurively search the right branch of the node, as the term comes after the root's term
-         if(node.getRightNode() == null)
-            return null;//the right node is a leaf
-         else
-            return search(node.getRightNode(), term);
+      while (node != null){
+         int compare = term.compareToIgnoreCase(node.getTerm());
+         if (compare==0){
+            return node;
+         }
+         //the left branch holds the terms before the node's term, and the right branch the terms after it
+         node = (compare<0) ? node.getLeftNode() : node.getRightNode();
       }
+      return null;
    }
    
    /**
    * Searches for nodes with partial matches to a term in the BST.
+   * A node matches if one of the words of its term equals the searched term, but the term itself does not.
+   * Searches of the whole tree are answered from the token index, while other subtrees are traversed in order.
    * 
    * @param node  The root of the current subTree
    * @param term  The term to search for.
    * @return A list of nodes containing the list of the partial matches, or an empty list of not found.
    **/
-   public static List<Node> similarSearches(Node node, String term){
+   public List<Node> similarSearches(Node node, String term){
+      long start = stats.start();
       List<Node> results = new ArrayList<>(); //creates an array to store the partial matches
-      if (node== null)
-         // base case: the root is null or the term is present at the root
-         return results;
+      if (node == root){
+         //looks up the partial matches of the whole tree in the token index
+         List<Node> candidates = tokenIndex.lookup(term);
+         for (Node match: candidates){
+            if (!match.getTerm().equalsIgnoreCase(term)){
+               results.add(match);
+            }
+         }
+         stats.record(KnowledgeBaseStats.Operation.PARTIAL_MATCH, start, candidates.size(), candidates.size());
+      }
       else{
-         StringTokenizer termCompare = new StringTokenizer(node.getTerm(), " ");
-         //checks for partial matches
-         while (termCompare.hasMoreElements())
-           {    
-            //checks if terms are equal
-               if (termCompare.nextToken().equalsIgnoreCase(term) && !node.getTerm().equalsIgnoreCase(term))
-                  results.add(node);
-           }
-         
-         //recursively searches for nodes through the subtrees
-         results.addAll(similarSearches(node.getLeftNode(), term));
-         results.addAll(similarSearches(node.getRightNode(), term));
+         collectSimilar(node, term, results);
       }
       return results;
    }
    
-         
    /**
-   * Searches for a specific term in the knowledge base and prints the corresponding sentence and confidence score.
-   * This method utilizes the 'seach' method to find the relevent information in the Binary Search Tree.
+   * Traverses a subtree and adds the nodes that partially match a term to a list.
+   * 
+   * @param node  The root of the current subTree
+   * @param term  The term to search for.
+   * @param results The list that the partial matches are added to.
+   **/
+   private static void collectSimilar(Node node, String term, List<Node> results){
+      forEachInOrder(node, visited -> {
+         if (!visited.getTerm().equalsIgnoreCase(term)){
+            StringTokenizer termCompare = new StringTokenizer(visited.getTerm(), " ");
+            //checks for partial matches
+            while (termCompare.hasMoreTokens()){
+               //checks if terms are equal
+               if (termCompare.nextToken().equalsIgnoreCase(term)){
+                  results.add(visited);
+                  break; //each node is only added once
+               }
+            }
+         }
+      });
+   }
+   
+   /**
+   * Visits every node of a subtree in the order of their terms.
+   * The traversal keeps the path to the current node in an array as long as the height of the
+   * subtree, so it uses no recursion and allocates nothing for each node it visits.
+   * The subtree must not be changed during the traversal.
    *
-   * @param term The term to searcg for in the knowledge base
+   * @param node The root of the subtree, or null for an empty subtree.
+   * @param action The action run on each node.
+   **/
+   public static void forEachInOrder(Node node, Consumer<? super Node> action){
+      Node[] path = new Node[height(node)];
+      int depth = 0;
+      while (node != null || depth > 0){
+         //goes down to the first node of the subtree not yet visited
+         while (node != null){
+            path[depth++] = node;
+            node = node.getLeftNode();
+         }
+         Node next = path[--depth];
+         action.accept(next);
+         node = next.getRightNode();
+      }
+   }
+   
+   /**
+   * Visits every node of the tree in the order of their terms, see {@link #forEachInOrder(Node, Consumer)}.
+   *
+   * @param action The action run on each node.
+   **/
+   public void forEachNode(Consumer<? super Node> action){
+      forEachInOrder(root, action);
+   }
+   
+   /**
+   * Iterates over the nodes of the tree in the order of their terms.
+   * Like {@link #forEachNode(Consumer)} it keeps its path in an array as long as the height of the
+   * tree and allocates nothing for each node. The tree must not be changed while the iterator is in use.
+   *
+   * @return An iterator over the nodes of the tree.
    **/
-   public static void searchTerm(String term){
-      boolean termFound = false;
-      // Searcg for the node with the given term
-      Node result = search(root, term);
+   public Iterator<Node> nodeIterator(){
+      return new NodeIterator(root);
+   }
+   
+   /**
+   * An in-order iterator over the nodes of a subtree, with the path to the next node held in an array.
+   **/
+   private static final class NodeIterator implements Iterator<Node>{
+      private final Node[] path;
+      private int depth;
       
-      if (result != null && result.getTerm().equalsIgnoreCase(term)){
-         // if the node is found, print the corresponding sentence and confidence score
-         System.out.println("Statement found: " + result.getSentence() + " (Confidence score: " + result.getScore() + ").\n");
-         termFound = true;
+      private NodeIterator(Node root){
+         path = new Node[height(root)];
+         descend(root);
       }
-      if (!termFound){
-         // prints the appropriate statement if the term is not found
-         System.out.println("No statement found for term: " + term + ".\n");
+      
+      /**
+      * Pushes a node and its chain of left children, the first of which is the next node in order.
+      *
+      * @param node The root of the subtree to enter.
+      **/
+      private void descend(Node node){
+         while (node != null){
+            path[depth++] = node;
+            node = node.getLeftNode();
+         }
+      }
+      
+      @Override
+      public boolean hasNext(){
+         return depth > 0;
+      }
+      
+      @Override
+      public Node next(){
+         if (depth == 0){
+            throw new NoSuchElementException();
+         }
+         Node next = path[--depth];
+         descend(next.getRightNode());
+         return next;
       }
    }
    
    /**
-   * Read data from a file and inserts it into the BST.
+   * Read data from a file and adds it to the BST.
+   * Malformed lines are reported with their line number and skipped.
+   * With the parallel option the file is memory-mapped and parsed in parallel.
+   *
+   * The statements are read into an {@link UpdateBatch} first rather than inserted one at a time.
+   * GenericsKB files are sorted by term, so the batch is usually already in order, and otherwise it
+   * is sorted. The lines for each term are then folded into one node with {@link Node#update(String, double)}
+   * in the order of the file, and the nodes are linked bottom-up into a tree of minimal height in
+   * linear time, without comparing terms to find their place or rotating. Loading into a tree that
+   * already has nodes merges the file with them in the same way, see {@link #merge(UpdateBatch)}.
    *
    * @param file The name of the file to read.
+   * @param parallel Whether the file is memory-mapped and parsed in parallel.
+   * @return The number of lines read and the time the load took.
    * @throws FileNotFoundException if file if not found
+   * @throws IOException if the file cannot be read
    **/
-   public static void loadFromFile(String file) throws FileNotFoundException{
-      Scanner fileData = null;
-      
+   @Override
+   public LoadResult load(String file, boolean parallel) throws IOException{
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      long comparisonsBefore = comparisons;
+      UpdateBatch batch = UpdateBatch.read(file, parallel);
+      apply(batch);
+      long compared = comparisons - comparisonsBefore;
+      stats.record(KnowledgeBaseStats.Operation.LOAD, statsStart, compared, batch.getLines());
+      return new LoadResult(batch.getLines(), size, System.nanoTime() - startTime);
+   }
+   
+   /**
+   * Saves the tree to a snapshot in pre-order, with the height of each node and which of its children exist.
+   *
+   * @param file The name of the snapshot file.
+   * @throws IOException if the snapshot cannot be written
+   **/
+   @Override
+   public void saveSnapshot(String file) throws IOException{
+      SnapshotFile.Writer writer = new SnapshotFile.Writer(file, SnapshotFile.TREE_LAYOUT, size);
       try{
-         //opens the specified file for reading
-         fileData = new Scanner(new File(file));
-         
-         //read each line from the file and insert into th BST
-         while (fileData.hasNext()){
-            String dataLine = fileData.nextLine();
-            Node newNode = makeData(dataLine); //creates a new node from the data
-            root = insert(root, newNode); //inserts node into the BST
+         writeSubtree(writer, root);
+         writer.finish();
+      }
+      finally{
+         writer.close();
+      }
+   }
+   
+   /**
+   * Writes a subtree to a snapshot in pre-order, using a stack of the subtrees still to be written instead of recursion.
+   * The shape of each node holds its height, shifted left by two bits, and a bit for each child.
+   *
+   * @param writer The snapshot being written.
+   * @param node The root of the subtree.
+   * @throws IOException if the snapshot cannot be written
+   **/
+   private static void writeSubtree(SnapshotFile.Writer writer, Node node) throws IOException{
+      if (node == null){
+         return;
+      }
+      //the nodes still to be written, the next one on top, so each node comes before its left and then its right subtree
+      Deque<Node> pending = new ArrayDeque<>();
+      pending.push(node);
+      while (!pending.isEmpty()){
+         node = pending.pop();
+         int shape = (node.getHeight() << 2) | ((node.getLeftNode() != null) ? 1 : 0) | ((node.getRightNode() != null) ? 2 : 0);
+         writer.write(node.getTerm(), node.getSentence(), node.getScore(), shape, node.getStatementCount() - 1);
+         for (int rank = 1; rank < node.getStatementCount(); rank++){
+            writer.writeOther(node.getSentence(rank), node.getScore(rank));
+         }
+         if (node.getRightNode() != null){
+            pending.push(node.getRightNode());
+         }
+         if (node.getLeftNode() != null){
+            pending.push(node.getLeftNode());
          }
       }
-      catch(FileNotFoundException e){
-         //Handles the case where the file is not found
-         throw e; //Re-throw the exception to be handled by the calling code
+   }
+   
+   /**
+   * Replaces the tree with the contents of a snapshot.
+   * The nodes are linked in the same shape and with the same heights they were saved with,
+   * so no terms are compared and no rotations are made.
+   *
+   * @param file The name of the snapshot file.
+   * @return The number of nodes read and the time the load took.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read or was not saved by a tree
+   **/
+   @Override
+   public LoadResult loadSnapshot(String file) throws IOException{
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      SnapshotFile.Reader reader = new SnapshotFile.Reader(file);
+      try{
+         if (reader.getLayout() != SnapshotFile.TREE_LAYOUT){
+            throw new IOException("The snapshot was not saved by a tree knowledge base.");
+         }
+         TokenIndex<Node> tokens = new TokenIndex<>();
+         SentenceIndex<Node> sentences = new SentenceIndex<>();
+         ScoreIndex<Node> scores = new ScoreIndex<>();
+         BKTree<Node> fuzzy = new BKTree<>();
+         Node newRoot = (reader.getCount() == 0) ? null : readSubtree(reader, tokens, sentences, scores, fuzzy);
+         //the current tree is only replaced once the whole snapshot has been read
+         root = newRoot;
+         size = reader.getCount();
+         tokenIndex = tokens;
+         sentenceIndex = sentences;
+         scoreIndex = scores;
+         fuzzyIndex = fuzzy;
       }
       finally{
-         if (fileData!=null){
-            fileData.close(); //closes the file
+         reader.close();
+      }
+      stats.record(KnowledgeBaseStats.Operation.LOAD, statsStart, 0, size);
+      return new LoadResult(size, size, System.nanoTime() - startTime);
+   }
+   
+   /**
+   * Reads a subtree saved by {@link #writeSubtree(SnapshotFile.Writer, Node)} and adds its nodes to the indexes.
+   * The nodes are read in a loop, so a snapshot whose tree is deeper than expected cannot overflow the stack.
+   *
+   * @param reader The snapshot being read.
+   * @param tokens The token index of the new tree.
+   * @param sentences The sentence index of the new tree.
+   * @param scores The score index of the new tree.
+   * @param fuzzy The BK-tree of the terms of the new tree.
+   * @return The root of the subtree.
+   * @throws IOException if the snapshot ends early
+   **/
+   private static Node readSubtree(SnapshotFile.Reader reader, TokenIndex<Node> tokens, SentenceIndex<Node> sentences,
+         ScoreIndex<Node> scores, BKTree<Node> fuzzy) throws IOException{
+      Node root = readNode(reader, tokens, sentences, scores, fuzzy);
+      //the nodes read so far whose right subtree is still to come, the nearest one on top
+      Deque<Node> pendingRight = new ArrayDeque<>();
+      Node node = root;
+      while (true){
+         int shape = reader.getShape();
+         if ((shape & 2) != 0){
+            pendingRight.push(node);
+         }
+         if ((shape & 1) != 0){
+            //the left subtree follows its parent directly
+            Node left = readNode(reader, tokens, sentences, scores, fuzzy);
+            node.setLeftNode(left);
+            node = left;
+         }
+         else if (!pendingRight.isEmpty()){
+            //a subtree without a left branch is complete, so the next node is the right child of the nearest node waiting for one
+            Node parent = pendingRight.pop();
+            Node right = readNode(reader, tokens, sentences, scores, fuzzy);
+            parent.setRightNode(right);
+            node = right;
+         }
+         else{
+            return root;
          }
       }
-      
+   }
+   
+   /**
+   * Reads the next node of a snapshot, without its children, and adds it to the indexes.
+   * The shape of the node is left in the reader.
+   *
+   * @param reader The snapshot being read.
+   * @param tokens The token index of the new tree.
+   * @param sentences The sentence index of the new tree.
+   * @param scores The score index of the new tree.
+   * @param fuzzy The BK-tree of the terms of the new tree.
+   * @return The node read.
+   * @throws IOException if the snapshot ends early
+   **/
+   private static Node readNode(SnapshotFile.Reader reader, TokenIndex<Node> tokens, SentenceIndex<Node> sentences,
+         ScoreIndex<Node> scores, BKTree<Node> fuzzy) throws IOException{
+      if (!reader.next()){
+         throw new EOFException("The snapshot has fewer nodes than its tree.");
+      }
+      //the statements are added lowest score first, so each one takes the lead and they keep their saved order, ties included
+      int last = reader.getStatementCount() - 1;
+      Node node = new Node(reader.getTerm(), reader.getSentence(last), reader.getScore(last));
+      node.setHeight(reader.getShape() >>> 2);
+      tokens.add(node.getTerm(), node);
+      sentences.addFolded(node, node.getFoldedSentence(0));
+      for (int rank = last - 1; rank >= 0; rank--){
+         String folded = SentenceIndex.fold(reader.getSentence(rank));
+         node.update(reader.getSentence(rank), folded, reader.getScore(rank));
+         sentences.addFolded(node, folded);
+      }
+      scores.add(node, node.getScore());
+      fuzzy.add(node.getTerm(), node);
+      return node;
    }
    
    /**
    *  Adds or updates a node in the knowledge base for a specific term, and updates the confidence score fr a given term.
+   * The search for the term walks down the tree in a loop, and the nodes on its path are rebalanced
+   * on the way back up from an array, stopping at the first subtree whose root and height are unchanged.
    *
    * @param node  The node to search for
    * @param term The term to which the statement will be added.
    * @param sentence The statement to be added.
    * @param score The confidence score of the statement.
-   * @return The root of the updated BST
+   * @return The root of the updated (balanced) BST
    **/
-   public static Node addOrUpdate(Node node, String term, String sentence, double score){
-      if (node == null){
-         // if the root is null, create a new node and return it as the new root
-         Node newNode =  new Node(term, sentence, score);
-         insert(node, newNode);
-         System.out.println("New node with the term " + term + " added to the knowledge base.\n");
-         return newNode;
-      }    
-      else{  
+   public Node addOrUpdate(Node node, String term, String sentence, double score){
+      //the nodes passed on the way down, and whether the way went left from each, to rebalance them on the way back up
+      Node[] path = new Node[height(node)];
+      boolean[] wentLeft = new boolean[path.length];
+      int depth = 0;
+      Node current = node;
+      while (current != null){
          //compare the term with the current node's term
-         if ((term).compareTo(node.getTerm())<0){
-            // If the term is smaller, go to the left subtree.
-            node.setLeftNode(addOrUpdate(node.getLeftNode(), term, sentence, score));
+         int compare = (term).compareToIgnoreCase(current.getTerm());
+         comparisons++;
+         if (compare == 0){
+            // If the term is equal, update the existing node with the new statement and score.
+            update(current, sentence, score);
+            return node; //the shape of the tree is unchanged
          }
-         else if((term).compareTo(node.getTerm())>0){
-            // If the term is larger, go to the right subtree.
-            node.setRightNode(addOrUpdate(node.getRightNode(), term, sentence, score));
+         // If the term is smaller, go to the left subtree, otherwise to the right subtree.
+         path[depth] = current;
+         wentLeft[depth++] = compare < 0;
+         current = (compare < 0) ? current.getLeftNode() : current.getRightNode();
+      }
+      
+      // the term is not in the tree, so a new node is created where the search ended
+      Node subtree = new Node(term, sentence, score);
+      index(subtree);
+      added = true;
+      //links each subtree to its parent and restores the balance of the parent, from the bottom up
+      for (int i = depth - 1; i >= 0; i--){
+         Node parent = path[i];
+         int heightBefore = parent.getHeight();
+         if (wentLeft[i]){
+            parent.setLeftNode(subtree);
          }
          else{
-            // If the term is equal, update the existing node with the new statement and score.
-            node.update(sentence, score);
-            System.out.println("Statement for term " + term + " has been updated.\n");
+            parent.setRightNode(subtree);
+         }
+         subtree = balance(parent);
+         if (subtree == parent && parent.getHeight() == heightBefore){
+            return node; //the subtree kept its root and height, so nothing above it changes
          }
       }
-      return node;
+      return subtree;
    }
    
    /**
@@ -239,169 +595,489 @@ public class GenericsKbBSTApp{
    * @param term  The term to which the statement will be added.
    * @param sentence The statement to be added
    * @param score The confidence scpre of the statement
+   * @return ADDED if a new node was created, otherwise UPDATED, with the statement stored for the term.
    */
-   public static void addOrUpdate(String term, String sentence, double score){
+   @Override
+   public UpdateResult addOrUpdate(String term, String sentence, double score){
+      long start = stats.start();
+      long comparisonsBefore = comparisons;
+      added = false;
       root = addOrUpdate(root, term, sentence, score);
+      UpdateResult.Status status = added ? UpdateResult.Status.ADDED : UpdateResult.Status.UPDATED;
+      long compared = comparisons - comparisonsBefore;
+      stats.record(KnowledgeBaseStats.Operation.ADD_OR_UPDATE, start, compared, compared + (added ? 1 : 0));
+      return new UpdateResult(status, toStatement(search(root, term)));
+   }
+   
+   /**
+   * Merges an update file into the tree. A large batch is sorted by term and merged with the terms of
+   * the tree in a single in-order pass: statements for a stored term update its node in place, and
+   * statements for other terms become new nodes in their place in the sequence. If any node was added,
+   * the tree is then rebuilt from the merged sequence, which is already in order, so the whole merge
+   * takes time linear in the size of the tree and the batch apart from the sort. A batch too small to
+   * be worth a pass over the whole tree is added one statement at a time instead.
+   *
+   * @param batch The statements to apply, which are sorted by term.
+   * @return The number of terms added and of statements that updated a term.
+   **/
+   @Override
+   public MergeResult merge(UpdateBatch batch){
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      long comparisonsBefore = comparisons;
+      int sizeBefore = size;
+      apply(batch);
+      int addedTerms = size - sizeBefore;
+      long compared = comparisons - comparisonsBefore;
+      stats.record(KnowledgeBaseStats.Operation.MERGE, statsStart, compared, compared + batch.size());
+      return new MergeResult(batch.getLines(), addedTerms, batch.size() - addedTerms, size, System.nanoTime() - startTime);
+   }
+   
+   /**
+   * Adds a batch of statements to the tree by the cheaper of two ways: one search of the tree for
+   * each statement, or sorting the batch and merging it with every node of the tree.
+   *
+   * @param batch The statements to apply, which may be sorted by term.
+   **/
+   private void apply(UpdateBatch batch){
+      if ((long)batch.size() * Math.max(1, getTreeHeight()) < size){
+         //each statement costs one search of the tree, which is less than visiting every node
+         for (int i = 0; i < batch.size(); i++){
+            root = addOrUpdate(root, batch.getTerm(i), batch.getSentence(i), batch.getScore(i));
+         }
+      }
+      else{
+         batch.sortByTerm();
+         mergeSorted(batch);
+      }
+   }
+   
+   /**
+   * Merges a batch sorted by term with the nodes of the tree in order, then rebuilds the tree if nodes were added.
+   * When the tree is empty this builds it from the batch alone.
+   *
+   * @param batch The statements to apply, sorted by term ignoring case.
+   **/
+   private void mergeSorted(UpdateBatch batch){
+      Node[] merged = new Node[size + batch.size()];
+      int count = 0;
+      int sizeBefore = size;
+      //the path to the next node of the tree in order
+      Deque<Node> path = new ArrayDeque<>();
+      for (Node node = root; node != null; node = node.getLeftNode()){
+         path.push(node);
+      }
+      int i = 0;
+      while (i < batch.size()){
+         String term = batch.getTerm(i);
+         Node node = null;
+         //the nodes before the term are kept as they are
+         while (!path.isEmpty()){
+            Node next = path.peek();
+            int compare = next.getTerm().compareToIgnoreCase(term);
+            comparisons++;
+            if (compare > 0){
+               break;
+            }
+            path.pop();
+            for (Node child = next.getRightNode(); child != null; child = child.getLeftNode()){
+               path.push(child);
+            }
+            if (compare == 0){
+               node = next;
+               break;
+            }
+            merged[count++] = next;
+         }
+         if (node == null){
+            //the term is not in the tree, so its first statement makes a new node
+            node = new Node(term, batch.getSentence(i), batch.getScore(i));
+            index(node);
+            i++;
+         }
+         //the remaining statements for the term are applied in the order of the file
+         while (i < batch.size() && batch.getTerm(i).compareToIgnoreCase(node.getTerm()) == 0){
+            comparisons++;
+            update(node, batch.getSentence(i), batch.getScore(i));
+            i++;
+         }
+         merged[count++] = node;
+      }
+      if (size == sizeBefore){
+         return; //only existing nodes were updated, so the shape of the tree is unchanged
+      }
+      while (!path.isEmpty()){
+         Node next = path.pop();
+         for (Node child = next.getRightNode(); child != null; child = child.getLeftNode()){
+            path.push(child);
+         }
+         merged[count++] = next;
+      }
+      root = build(merged, 0, count);
+   }
+   
+   /**
+   * Links a run of nodes that is in order into a tree of minimal height, taking the middle node as the root.
+   * The recursion only goes as deep as the height of the new tree, about log2 of the number of nodes.
+   *
+   * @param nodes The nodes, in the order of their terms.
+   * @param from The first node of the run.
+   * @param to The position after the last node of the run.
+   * @return The root of the new subtree, or null if the run is empty.
+   **/
+   private static Node build(Node[] nodes, int from, int to){
+      if (from >= to){
+         return null;
+      }
+      int middle = (from + to) >>> 1;
+      Node node = nodes[middle];
+      node.setLeftNode(build(nodes, from, middle));
+      node.setRightNode(build(nodes, middle + 1, to));
+      updateHeight(node);
+      return node;
+   }
+   
+   /**
+   * Searches the tree for a term without recursion and records the number of nodes compared.
+   * A search that compares more nodes than the tree holds can only be following links a concurrent writer
+   * is rotating, which may form a cycle for a moment, so it stops and throws rather than loop forever.
+   *
+   * @param term The term to search for.
+   * @param operation The operation the search is part of.
+   * @param start The value returned by {@link KnowledgeBaseStats#start()} when the operation began.
+   * @return The node containing the term, or null if not found.
+   * @throws ConcurrentModificationException if the tree was changed during the search
+   **/
+   private Node find(String term, KnowledgeBaseStats.Operation operation, long start){
+      Node node = root;
+      int compared = 0;
+      while (node != null){
+         if (++compared > size){
+            throw new ConcurrentModificationException("The tree was changed during the search for '" + term + "'.");
+         }
+         int compare = term.compareToIgnoreCase(node.getTerm());
+         if (compare == 0){
+            break;
+         }
+         node = (compare < 0) ? node.getLeftNode() : node.getRightNode();
+      }
+      stats.record(operation, start, compared, compared);
+      return node;
+   }
+   
+   /**
+   * Copies a node into a statement that can be returned to the caller.
+   *
+   * @param node The node to copy.
+   * @return The statement, or null if node is null.
+   **/
+   private static Statement toStatement(Node node){
+      return (node == null) ? null : new Statement(node.getTerm(), node.getSentence(), node.getScore());
+   }
+   
+   /**
+   * Copies one of the statements of a node into a statement that can be returned to the caller.
+   *
+   * @param node The node.
+   * @param rank The position of the statement, 0 for the best one.
+   * @return The statement.
+   **/
+   private static Statement toStatement(Node node, int rank){
+      return new Statement(node.getTerm(), node.getSentence(rank), node.getScore(rank));
+   }
+   
+   /**
+   * Copies a list of nodes into statements.
+   *
+   * @param nodes The nodes to copy.
+   * @return The list of statements.
+   **/
+   private static List<Statement> toStatements(List<Node> nodes){
+      List<Statement> results = new ArrayList<>(nodes.size());
+      for (Node node: nodes){
+         results.add(toStatement(node));
+      }
+      return results;
+   }
+   
+   /**
+   * Searches for a specific term in the knowledge base.
+   * This method utilizes the 'seach' method to find the relevent information in the Binary Search Tree.
+   *
+   * @param term The term to searcg for in the knowledge base
+   * @return The statement for the term, or null if it is not found.
+   **/
+   @Override
+   public Statement lookup(String term){
+      return toStatement(find(term, KnowledgeBaseStats.Operation.LOOKUP, stats.start()));
+   }
+   
+   /**
+   * Searches for a term in the tree and returns its statements, which the node keeps in order.
+   *
+   * @param term The term to search for.
+   * @param limit The largest number of statements to return.
+   * @return Up to limit statements for the term, highest score first, or an empty list if it is not found.
+   **/
+   @Override
+   public List<Statement> lookupAll(String term, int limit){
+      Node node = find(term, KnowledgeBaseStats.Operation.LOOKUP, stats.start());
+      List<Statement> results = new ArrayList<>();
+      for (int rank = 0; node != null && rank < Math.min(limit, node.getStatementCount()); rank++){
+         results.add(toStatement(node, rank));
+      }
+      return results;
+   }
+   
+   /**
+   * Searches for partial matches to a term in the whole tree.
+   *
+   * @param term The term to search for.
+   * @return The partial matches, or an empty list if not found.
+   **/
+   @Override
+   public List<Statement> partialMatches(String term){
+      return toStatements(similarSearches(root, term));
    }
    
    /**
    * Searches for a specific term and sentence in the knowledge base BST.
-   * If found, prints the confidence score, otherwise prints an appropriate message
    *
    * @param term The term to search for.
    * @param sentence The sentence associated with the term.
+   * @return The best statement for the term whose sentence matches, or null if the term or statement is not found.
    **/
-   public static void searchForTermAndSentence(String term, String sentence){
-      double score = -1;//initializes the confidence score to -1 (indicating not found)
-      boolean found = false;
-      
+   @Override
+   public Statement lookupTermAndSentence(String term, String sentence){
       //search for the specified term in the knowledge base
-      Node node = search(root, term);
+      Node node = find(term, KnowledgeBaseStats.Operation.TERM_AND_SENTENCE, stats.start());
       
-      if (node!=null){
-         //checks if the sentence matches the searched term, and accounts for a case if the user forgot part of the sentence
-         if (node.getTerm().equalsIgnoreCase(term) && (node.getSentence().equalsIgnoreCase(term) || (node.getSentence().toLowerCase()).contains(sentence.toLowerCase()))){
-            score = node.getScore();//sets the confidence score
-            found = true;
+      //checks if one of the sentences of the term matches, and accounts for a case if the user forgot part of the sentence
+      //the pre-folded sentences of the node are used, so no sentence is lower-cased again
+      if (node != null){
+         String folded = SentenceIndex.fold(sentence);
+         for (int rank = 0; rank < node.getStatementCount(); rank++){
+            if (node.getFoldedSentence(rank).contains(folded)){
+               return toStatement(node, rank);
+            }
          }
       }
-      
-      //Displays the result
-      if (!found){
-         System.out.println("The term or statement was not found.\n");
-      }
-      else{
-         System.out.println("The statement was found and has a confidence score of " + score + ".\n");
+      return null;
+   }
+   
+   /**
+   * Searches the whole knowledge base for statements whose sentence contains a phrase, ignoring case.
+   * The search uses the trigram index, so only sentences sharing the rarest
+   * three-letter part of the phrase are checked.
+   *
+   * Every matching statement of a term is returned, best first.
+   *
+   * @param phrase The phrase to search for.
+   * @return The matching statements, or an empty list if there are none.
+   **/
+   @Override
+   public List<Statement> searchStatements(String phrase){
+      long start = stats.start();
+      List<Node> matches = sentenceIndex.search(phrase);
+      String folded = SentenceIndex.fold(phrase);
+      List<Statement> results = new ArrayList<>(matches.size());
+      for (Node node: matches){
+         for (int rank = 0; rank < node.getStatementCount(); rank++){
+            if (node.getFoldedSentence(rank).contains(folded)){
+               results.add(toStatement(node, rank));
+            }
+         }
       }
+      stats.record(KnowledgeBaseStats.Operation.STATEMENT_SEARCH, start, matches.size(), results.size());
+      return results;
+   }
+   
+   /**
+   * Finds the statements whose term is within an edit distance of the given term using the BK-tree of the terms.
+   *
+   * @param term The term to look up.
+   * @param maxDistance The largest number of inserted, deleted or replaced letters allowed.
+   * @return The matching statements, closest first, or an empty list if there are none.
+   **/
+   @Override
+   public List<Statement> fuzzyLookup(String term, int maxDistance){
+      long start = stats.start();
+      List<Node> matches = fuzzyIndex.search(term, maxDistance);
+      stats.record(KnowledgeBaseStats.Operation.FUZZY_LOOKUP, start, matches.size(), matches.size());
+      return toStatements(matches);
    }
    
    /**
-   * Displays a menu for the user to interact with the knowledge base
+   * Finds the statements with the highest confidence scores using the score index.
    *
-   * @param input A Scanner object for user input.
+   * @param k The largest number of statements to return.
+   * @return Up to k statements, highest score first.
    **/
-   public static void displayMenu(Scanner input){
-      int choice;
+   @Override
+   public List<Statement> topByScore(int k){
+      long start = stats.start();
+      List<Node> matches = scoreIndex.top(k);
+      stats.record(KnowledgeBaseStats.Operation.SCORE_QUERY, start, matches.size(), matches.size());
+      return toStatements(matches);
+   }
+   
+   /**
+   * Finds every statement with a confidence score of at least a threshold using the score index.
+   *
+   * @param threshold The lowest confidence score returned.
+   * @return The matching statements, highest score first, or an empty list if there are none.
+   **/
+   @Override
+   public List<Statement> withScoreAtLeast(double threshold){
+      long start = stats.start();
+      List<Node> matches = scoreIndex.atLeast(threshold);
+      stats.record(KnowledgeBaseStats.Operation.SCORE_QUERY, start, matches.size(), matches.size());
+      return toStatements(matches);
+   }
+   
+   /**
+   * Iterates over the statements whose term lies in a range, in order.
+   * Subtrees that lie before the start of the range are never visited, and the iteration stops at the end of the range.
+   * The tree must not be changed while the iterator is in use.
+   *
+   * @param from The first term of the range, or null to start at the first term.
+   * @param to The term the range ends before, or null to end at the last term.
+   * @return An iterator over the statements in the range.
+   **/
+   @Override
+   public Iterator<Statement> range(String from, String to){
+      return new TermIterator(from, to, null);
+   }
+   
+   /**
+   * Iterates over the statements whose term starts with a prefix, in order.
+   * Terms sharing a prefix are next to each other in the tree, so the iteration starts at the
+   * first of them and stops at the first term after them.
+   * The tree must not be changed while the iterator is in use.
+   *
+   * @param prefix The start of the terms.
+   * @param from The first term to return, or null to start at the first match.
+   * @return An iterator over the statements whose term starts with the prefix.
+   **/
+   @Override
+   public Iterator<Statement> prefix(String prefix, String from){
+      String start = (from == null || from.compareToIgnoreCase(prefix) < 0) ? prefix : from;
+      return new TermIterator(start, null, prefix);
+   }
+   
+   /**
+   * An in-order iterator over part of the tree, which keeps the path to the next node on a stack.
+   **/
+   private class TermIterator implements Iterator<Statement>{
+      private final Deque<Node> path = new ArrayDeque<>();
+      private final String to, prefix;
+      private Node next;
       
-      do{
-         System.out.println("Choose an action from the menu:");
-         System.out.println("1. Load a knowledge base from a file");
-         System.out.println("2. Add a new statement to the knowledge base");
-         System.out.println("3. Search for an item in the knowledge base by term");
-         System.out.println("4. Search for a item in the knowledge base by term and sentence");
-         System.out.println("5. Quit");
-         
-         System.out.print("Enter your choice: ");
-         
-                  
-         if (input.hasNextInt()){
-         
-            choice = input.nextInt();
-            input.nextLine();//consumes newLine charachter
-            System.out.println();
-
-            switch(choice){
-               case 1:
-                  System.out.print("Enter File name: ");
-                  
-                  String fileName = input.nextLine();
-                  try{
-                  //checks if file is found
-                     loadFromFile(fileName);
-                     System.out.println("\nKnowledge base loaded successfully.\n");
-                  }
-                  catch(FileNotFoundException e){
-                     //Handles the case where the file is not found
-                     System.out.println("\nFile '" + fileName + "' not found.\n");
-                  }
-                  
-                  break;
-            
-               case 2:
-                  //Add a new statement to the knowledge base
-                  //GenericsKbBSTApp genData = new GenericsKbBSTApp();
-                  System.out.print("Enter the term: ");
-                  String term = input.nextLine();
-                  System.out.print("Enter the statement: ");
-                  String statement = input.nextLine();
-                  System.out.print("Enter the confidence score: ");
-                  double score = input.nextDouble();
-                  addOrUpdate(term, statement, score);
-                  break;
-                  
-               case 3:
-                  if(root!= null){//checks if a knowledge base has been loaded
-                     //Search for an item in the knowledge base by term
-                     System.out.print("Enter the term to search: ");
-                     String searchTerm = input.nextLine();
-                     searchTerm(searchTerm);
-                     
-                     //retrieves partial matches of the item
-                     List<Node> results = similarSearches(root, searchTerm);
-                     if (results != null && !results.isEmpty()){
-                        //checks if there are partial matches to the searched term                        System.out.println("Partial matches are: ");
-                        for (Node result: results){
-                           System.out.println("Term: " + result.getTerm() + ". Statement: " + result.getSentence() + " (Confidence score: " + result.getScore() + ").");
-                        }
-                        System.out.println();
-                     }
-                  } else{
-                     System.out.println("No knowledge base loaded. Please load the knowledge base or add a statement to the Binary Search Tree.\n");
-                  }
-                  break;
-                  
-               case 4:
-                  if(root!= null){
-                     //Search for an item in the knowledge base by term and sentence
-                     System.out.print("Enter the term: ");
-                     String termForSearch = input.nextLine();
-                     System.out.print("Enter the statement to search for: ");
-                     String sentence = input.nextLine();
-                     searchForTermAndSentence(termForSearch, sentence);
-                     List<Node> matches= similarSearches(root, termForSearch);
-                     if (matches != null && !matches.isEmpty()){
-                        //prints out the partial matches if they are found
-                        System.out.println("Partial matches are: ");
-                        for (Node result: matches){
-                           System.out.println("Term: " + result.getTerm() + ". Statement: " + result.getSentence() + " (Confidence score: " + result.getScore() + ")." );
-                        }
-                        System.out.println();
-                     }
-                  } else{
-                     System.out.println("No knowledge base loaded. Please load the knowledge base or add a statement to the Binary Search Tree.\n");
-                  }
-                  break;
-                  
-               case 5:
-                  //Exit program once the user chooses quit
-                  System.out.println("Exiting the program. Goodbye!");
-                  break;
-               
-               default:
-                 System.out.println("Invalid choice. Please enter a number between 1 and 5.\n");
-                 break;
+      /**
+      * Constructs an iterator starting at the first term that is not before from.
+      *
+      * @param from The first term, or null to start at the first term of the tree.
+      * @param to The term to stop before, or null.
+      * @param prefix The start every term must have, or null.
+      **/
+      private TermIterator(String from, String to, String prefix){
+         this.to = to;
+         this.prefix = prefix;
+         descend(root, from);
+         advance();
+      }
+      
+      /**
+      * Pushes the nodes of a subtree that lead to its first term not before from,
+      * skipping every left subtree that lies wholly before it.
+      *
+      * @param node The root of the subtree.
+      * @param from The first term, or null for the first term of the subtree.
+      **/
+      private void descend(Node node, String from){
+         while (node != null){
+            if (from == null || node.getTerm().compareToIgnoreCase(from) >= 0){
+               path.push(node);
+               node = node.getLeftNode();
+            }
+            else{
+               node = node.getRightNode();
             }
          }
-         else{
-            System.out.println("Invalid choice. Please enter a number from 1 to 5.\n");
-            input.nextLine(); // Consume invalid input
-            choice = 0; // Set choice to an invalid value to continue the loop
+      }
+      
+      /**
+      * Moves to the next node in order, or ends the iteration if it lies beyond the range.
+      **/
+      private void advance(){
+         next = null;
+         if (path.isEmpty()){
+            return;
+         }
+         Node node = path.pop();
+         if ((to != null && node.getTerm().compareToIgnoreCase(to) >= 0)
+            || (prefix != null && !node.getTerm().regionMatches(true, 0, prefix, 0, prefix.length()))){
+            //every later term is beyond the end as well
+            path.clear();
+            return;
          }
+         descend(node.getRightNode(), null);
+         next = node;
       }
       
-      //loop until the user quits the program
-      while (choice!=5);
+      @Override
+      public boolean hasNext(){
+         return next != null;
+      }
       
+      @Override
+      public Statement next(){
+         if (next == null){
+            throw new NoSuchElementException();
+         }
+         Statement statement = toStatement(next);
+         advance();
+         return statement;
+      }
+   }
+   
+   /**
+   * Retrieves the number of nodes in the tree.
+   *
+   * @return The number of terms.
+   **/
+   @Override
+   public int size(){
+      return size;
+   }
+   
+   /**
+   * Retrieves the statistics collected about the operations of this knowledge base.
+   *
+   * @return The statistics of this knowledge base.
+   **/
+   @Override
+   public KnowledgeBaseStats getStats(){
+      return stats;
+   }
+   
+   /**
+   * Describes the tree.
+   *
+   * @return The number of nodes and the height of the tree.
+   **/
+   @Override
+   public String describe(){
+      return "Balanced BST of " + size + " terms, tree height: " + getTreeHeight() + ".";
    }
    
    /**
-   * The main entry point for the program which displays the menu for interacting with the knowledge base implemented using a Binary Search Tree (BST) and closes the scanner afterward.
+   * The main entry point for the program which displays the menu for interacting with the knowledge base implemented using a Binary Search Tree (BST).
+   * Another backend can be chosen with --backend.
    *
-   * @param args The command-line arguments (not used in this program).
+   * @param args The command-line arguments, see {@link KnowledgeBaseMenu#run(String[], String)}.
    */
    public static void main(String[] args) {
-      Scanner scanner = new Scanner(System.in);
-      GenericsKbBSTApp.displayMenu(scanner);
-      scanner.close();
+      KnowledgeBaseMenu.run(args, "bst");
    }
 }
\ No newline at end of file
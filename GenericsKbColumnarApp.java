@@ -0,0 +1,1215 @@
+import java.util.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* A class representing a knowledge base stored as columns, with the same behaviour as {@link GenericsKbArrayApp}.
+*
+* Instead of one {@link Generics} object per term, with two String objects and a list of its other
+* statements, every column holds one field of every entry in a primitive array. The terms and the
+* sentences are the UTF-8 bytes of one shared byte array each, found through an array of offsets,
+* and the confidence scores are a double array. Each statement is a row of the statement columns.
+* The row of the best statement of a term is kept in a column of its own, and a term with more
+* statements has an array of the rows of the others, ordered by score like {@link ScoredSentences}.
+* An entry therefore costs its text plus a few bytes in each column, with no object headers or
+* references to follow.
+*
+* Exact lookups go through an open-addressing hash table of slot numbers, the sentences of a term through
+* a second table of row numbers, and partial matches through lists of slot numbers for each word. The queries that would need an index with an object for every
+* entry instead scan the columns from start to end: score queries read the score column, sentence
+* searches read the sentence bytes, and fuzzy lookups compare the term with each stored term.
+* Snapshots use the array layout, so a snapshot saved by either class can be loaded by the other.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class GenericsKbColumnarApp implements KnowledgeBase{
+
+   //average number of bytes per line, used to estimate the size of the columns from the size of the file
+   private static final int ESTIMATED_LINE_LENGTH = 64;
+   //average number of bytes of a term and of a sentence, used to size the byte columns
+   private static final int ESTIMATED_TERM_LENGTH = 16, ESTIMATED_SENTENCE_LENGTH = 48;
+   //the row that follows the last statement of a term
+   private static final int NONE = -1;
+   //the longest array that can be allocated
+   private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+   //the lower-case form of each ASCII character
+   private static final byte[] LOWER_CASE = new byte[128];
+   static{
+      for (int c = 0; c < 128; c++){
+         LOWER_CASE[c] = (byte)Character.toLowerCase(c);
+      }
+   }
+
+   //the term columns, with one slot for each term in the order the terms were added
+   private int counter;
+   private byte[] termBytes;
+   //the bytes of term i are termBytes[termStarts[i]] up to termBytes[termStarts[i + 1]]
+   private int[] termStarts;
+   //the hash code of each lower-cased term, compared before a term is decoded
+   private int[] hashes;
+   //the confidence score and the row of the best statement of each term
+   private double[] scores;
+   private int[] bestRows;
+   //the rows of the other statements of each term, highest score first after their number, or null while a term has one statement
+   private int[][] otherRows;
+
+   //the statement columns, with one row for each sentence in the order the sentences were added
+   private int rows;
+   private byte[] sentenceBytes;
+   //the bytes of sentence r are sentenceBytes[sentenceStarts[r]] up to sentenceBytes[sentenceStarts[r + 1]]
+   private int[] sentenceStarts;
+   private double[] rowScores;
+   //the slot of the term of each statement
+   private int[] rowSlots;
+
+   //open-addressing hash table of the terms, holding each slot plus one, or 0 where it is empty
+   private int[] table;
+   //open-addressing hash table of the statements by term and sentence, holding each row plus one
+   private int[] statementTable;
+   //maps each lower-cased word of the stored terms to the slots whose term contains it, with the number of slots first,
+   //in a map whose lookups end even when they overlap a writer during an optimistic read
+   private Map<String, int[]> postings;
+   //counters and latency histograms of the operations
+   private final KnowledgeBaseStats stats = new KnowledgeBaseStats();
+
+   /**
+   * Default constructor for GenericsKbColumnarApp.
+   * Initializes an empty knowledge base.
+   */
+   public GenericsKbColumnarApp(){
+      this(16);
+   }
+
+   /**
+   * Parameterized constructor for GenericsKbColumnarApp.
+   * Initializes empty columns with room for the given number of terms.
+   *
+   * @param capacity The initial number of terms the columns can hold.
+   */
+   public GenericsKbColumnarApp(int capacity){
+      clear(Math.max(1, capacity));
+   }
+
+   /**
+   * Replaces the columns with empty ones.
+   *
+   * @param capacity The number of terms the columns can hold before they grow.
+   */
+   private void clear(int capacity){
+      counter = 0;
+      termBytes = new byte[(int)Math.min(MAX_LENGTH, (long)capacity * ESTIMATED_TERM_LENGTH)];
+      termStarts = new int[capacity + 1];
+      hashes = new int[capacity];
+      scores = new double[capacity];
+      bestRows = new int[capacity];
+      otherRows = new int[capacity][];
+      rows = 0;
+      sentenceBytes = new byte[(int)Math.min(MAX_LENGTH, (long)capacity * ESTIMATED_SENTENCE_LENGTH)];
+      sentenceStarts = new int[capacity + 1];
+      rowScores = new double[capacity];
+      rowSlots = new int[capacity];
+      table = new int[tableLength(capacity)];
+      statementTable = new int[tableLength(capacity)];
+      postings = new ConcurrentHashMap<>();
+   }
+
+   /**
+   * Replaces the columns with those of another knowledge base, once it has been completely loaded.
+   *
+   * @param loaded The knowledge base whose columns are taken over.
+   */
+   private void replaceWith(GenericsKbColumnarApp loaded){
+      counter = loaded.counter;
+      termBytes = loaded.termBytes;
+      termStarts = loaded.termStarts;
+      hashes = loaded.hashes;
+      scores = loaded.scores;
+      bestRows = loaded.bestRows;
+      otherRows = loaded.otherRows;
+      rows = loaded.rows;
+      sentenceBytes = loaded.sentenceBytes;
+      sentenceStarts = loaded.sentenceStarts;
+      rowScores = loaded.rowScores;
+      rowSlots = loaded.rowSlots;
+      table = loaded.table;
+      statementTable = loaded.statementTable;
+      postings = loaded.postings;
+   }
+
+   /**
+   * Loads data from a file into new columns.
+   * The file should contain lines with tab-separated values for term, sentence, and confidence score.
+   * A line for a term that is already stored updates it. The columns are sized from the file length,
+   * doubled whenever they fill up, and trimmed to the size of their contents once the file is read.
+   * They replace the current columns only then, so a load that fails leaves the knowledge base as it was.
+   *
+   * @param file The name of the file to read data from.
+   * @param parallel Whether the file is memory-mapped and parsed in parallel.
+   * @return The number of lines read and the time the load took.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read
+   */
+   @Override
+   public LoadResult load(String file, boolean parallel) throws IOException{
+      File input = new File(file);
+      if (!input.isFile()){
+         //handles a case where the file is not found, before the current knowledge base is replaced
+         throw new FileNotFoundException(file);
+      }
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+
+      //estimates the number of entries from the size of the file, and reads it into new columns,
+      //so a read that fails leaves the current ones as they were
+      GenericsKbColumnarApp loaded = new GenericsKbColumnarApp((int)Math.min(MAX_LENGTH / ESTIMATED_SENTENCE_LENGTH, Math.max(16, input.length() / ESTIMATED_LINE_LENGTH)));
+      long lines;
+      if (parallel){
+         lines = ParallelFileLoader.load(file, loaded::addLoadedStatement);
+      }
+      else{
+         lines = loaded.readLines(input);
+      }
+      loaded.trim();
+      //the current columns are only replaced once the whole file has been read
+      replaceWith(loaded);
+      //each line is one lookup in the hash table
+      stats.record(KnowledgeBaseStats.Operation.LOAD, statsStart, lines, lines);
+      return new LoadResult(lines, counter, System.nanoTime() - startTime);
+   }
+
+   /**
+   * Reads a file line by line into the columns.
+   * Malformed lines are reported with their line number and skipped.
+   *
+   * @param input The file to read.
+   * @return The number of lines read.
+   * @throws IOException if the file cannot be read
+   */
+   private long readLines(File input) throws IOException{
+      BufferedReader fileReader = null;
+      try{
+         fileReader = new BufferedReader(new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8));
+         RecordParser parser = new RecordParser();
+         long lines = 0;
+
+         String dataLine;
+         while ((dataLine = fileReader.readLine()) != null){
+            lines++;
+            if (parser.parse(dataLine, lines)){
+               addLoadedStatement(parser.getTerm(), parser.getSentence(), parser.getScore());
+            }
+            else{
+               //malformed lines are reported and skipped
+               System.out.println("Skipping malformed line. " + parser.getError());
+            }
+         }
+         return lines;
+      }
+      finally{
+         if (fileReader!=null){
+            fileReader.close(); // closes the file
+         }
+      }
+   }
+
+   /**
+   * Adds a statement read from a file to the columns.
+   * A statement for a term that is already stored updates it, otherwise the term is appended to the columns.
+   *
+   * @param term The term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   */
+   private void addLoadedStatement(String term, String sentence, double score){
+      String folded = fold(term);
+      int slot = find(folded);
+      if (slot != NONE){
+         //a later line for a term that is already stored updates it
+         update(slot, sentence, score);
+      }
+      else{
+         add(term, folded, sentence, score);
+      }
+   }
+
+   /**
+   * Appends a new term with its first statement to the columns, and indexes it.
+   *
+   * @param term The term.
+   * @param folded The lower-cased term.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   * @return The slot of the term.
+   */
+   private int add(String term, String folded, String sentence, double score){
+      if (counter == hashes.length){
+         int length = grow(counter);
+         termStarts = Arrays.copyOf(termStarts, length + 1);
+         hashes = Arrays.copyOf(hashes, length);
+         scores = Arrays.copyOf(scores, length);
+         bestRows = Arrays.copyOf(bestRows, length);
+         otherRows = Arrays.copyOf(otherRows, length);
+      }
+      byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+      int start = termStarts[counter];
+      termBytes = ensureCapacity(termBytes, (long)start + bytes.length);
+      System.arraycopy(bytes, 0, termBytes, start, bytes.length);
+      termStarts[counter + 1] = start + bytes.length;
+      int slot = counter++;
+      hashes[slot] = folded.hashCode();
+      scores[slot] = score;
+      if (counter > table.length / 4 * 3){
+         table = rehash(table.length * 2, hashes, counter);
+      }
+      insert(table, hashes[slot], slot);
+      byte[] sentenceBytes = sentence.getBytes(StandardCharsets.UTF_8);
+      bestRows[slot] = addRow(sentenceBytes, statementHash(slot, sentenceBytes, 0, sentenceBytes.length), score, slot);
+
+      StringTokenizer words = new StringTokenizer(term, " ");
+      while (words.hasMoreTokens()){
+         addPosting(fold(words.nextToken()), slot);
+      }
+      return slot;
+   }
+
+   /**
+   * Appends a statement to the statement columns and to the table of statements, but not to the statements of its term.
+   *
+   * @param bytes The UTF-8 bytes of the sentence.
+   * @param hash The hash code of the term and sentence, see {@link #statementHash(int, byte[], int, int)}.
+   * @param score The confidence score of the statement.
+   * @param slot The slot of the term of the statement.
+   * @return The row of the statement.
+   */
+   private int addRow(byte[] bytes, int hash, double score, int slot){
+      if (rows == rowScores.length){
+         int length = grow(rows);
+         sentenceStarts = Arrays.copyOf(sentenceStarts, length + 1);
+         rowScores = Arrays.copyOf(rowScores, length);
+         rowSlots = Arrays.copyOf(rowSlots, length);
+      }
+      int start = sentenceStarts[rows];
+      sentenceBytes = ensureCapacity(sentenceBytes, (long)start + bytes.length);
+      System.arraycopy(bytes, 0, sentenceBytes, start, bytes.length);
+      sentenceStarts[rows + 1] = start + bytes.length;
+      rowScores[rows] = score;
+      rowSlots[rows] = slot;
+      int row = rows++;
+      if (rows > statementTable.length / 4 * 3){
+         int[] rowHashes = new int[rows];
+         for (int r = 0; r < rows; r++){
+            rowHashes[r] = statementHash(rowSlots[r], sentenceBytes, sentenceStarts[r], sentenceStarts[r + 1]);
+         }
+         statementTable = rehash(statementTable.length * 2, rowHashes, rows);
+      }
+      insert(statementTable, hash, row);
+      return row;
+   }
+
+   /**
+   * Finds the row of a statement of a term through the table of statements.
+   *
+   * @param slot The slot of the term.
+   * @param bytes The UTF-8 bytes of the sentence.
+   * @param hash The hash code of the term and sentence.
+   * @return The row of the statement, or NONE if the term does not have the sentence.
+   */
+   private int findRow(int slot, byte[] bytes, int hash){
+      int mask = statementTable.length - 1;
+      for (int i = position(hash, statementTable); statementTable[i] != 0; i = (i + 1) & mask){
+         int row = statementTable[i] - 1;
+         if (rowSlots[row] == slot && sentenceEquals(row, bytes)){
+            return row;
+         }
+      }
+      return NONE;
+   }
+
+   /**
+   * Calculates the hash code of a statement from the slot of its term and the bytes of its sentence.
+   *
+   * @param slot The slot of the term.
+   * @param bytes The bytes holding the sentence.
+   * @param from The first byte of the sentence.
+   * @param to The end of the sentence.
+   * @return The hash code.
+   */
+   private static int statementHash(int slot, byte[] bytes, int from, int to){
+      int hash = slot;
+      for (int i = from; i < to; i++){
+         hash = 31 * hash + bytes[i];
+      }
+      return hash;
+   }
+
+   /**
+   * Retrieves the number of statements of a term.
+   *
+   * @param slot The slot of the term.
+   * @return The number of statements, at least 1.
+   */
+   private int statementCount(int slot){
+      return (otherRows[slot] == null) ? 1 : 1 + otherRows[slot][0];
+   }
+
+   /**
+   * Retrieves the row of one of the statements of a term.
+   *
+   * @param slot The slot of the term.
+   * @param rank The position of the statement, 0 for the one with the highest confidence score.
+   * @return The row of the statement.
+   */
+   private int row(int slot, int rank){
+      return (rank == 0) ? bestRows[slot] : otherRows[slot][rank];
+   }
+
+   /**
+   * Inserts a row among the other statements of a term, moving the later ones back by one.
+   *
+   * @param slot The slot of the term.
+   * @param position The position among the other statements, 0 for the first.
+   * @param row The row to insert.
+   */
+   private void insertOther(int slot, int position, int row){
+      int[] others = otherRows[slot];
+      if (others == null){
+         others = new int[3];
+      }
+      else if (others[0] + 1 == others.length){
+         //grows by half, so a term with many statements wastes little room
+         others = Arrays.copyOf(others, others.length + (others.length >> 1));
+      }
+      System.arraycopy(others, position + 1, others, position + 2, others[0] - position);
+      others[position + 1] = row;
+      others[0]++;
+      otherRows[slot] = others;
+   }
+
+   /**
+   * Adds a statement for a stored term, keeping its statements ordered by confidence score, in the same way as
+   * {@link Generics#update(String, double)}. A sentence the term already has keeps its row, which is moved if its score goes up.
+   * The sentence is found through the table of statements, so a term with many statements is not searched one by one.
+   *
+   * @param slot The slot of the term.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   */
+   private void update(int slot, String sentence, double score){
+      byte[] bytes = sentence.getBytes(StandardCharsets.UTF_8);
+      int best = bestRows[slot];
+      if (sentenceEquals(best, bytes)){
+         //the best statement again, whose score can only go up
+         if (score > rowScores[best]){
+            rowScores[best] = score;
+            scores[slot] = score;
+         }
+         return;
+      }
+      int hash = statementHash(slot, bytes, 0, bytes.length), row = findRow(slot, bytes, hash);
+      if (row != NONE){
+         if (rowScores[row] >= score){
+            return; //already stored with a score that is not lower
+         }
+         //takes the statement out of the others, to insert it again at its new score
+         int[] others = otherRows[slot];
+         int i = 1;
+         while (others[i] != row){
+            i++;
+         }
+         System.arraycopy(others, i + 1, others, i, others[0] - i);
+         others[0]--;
+         rowScores[row] = score;
+      }
+      else{
+         row = addRow(bytes, hash, score, slot);
+      }
+      if (score >= rowScores[best]){
+         //the new statement becomes the best one, and the old best statement is ahead of every other
+         insertOther(slot, 0, best);
+         bestRows[slot] = row;
+         scores[slot] = score;
+      }
+      else{
+         //the statement goes after every statement with the same or a higher score, found by binary search
+         int[] others = otherRows[slot];
+         int low = 0, high = (others == null) ? 0 : others[0];
+         while (low < high){
+            int middle = (low + high) >>> 1;
+            if (rowScores[others[middle + 1]] >= score){
+               low = middle + 1;
+            }
+            else{
+               high = middle;
+            }
+         }
+         insertOther(slot, low, row);
+      }
+   }
+
+   /**
+   * Adds a slot to the list of slots of a word, unless it was the last one added, as for a term that repeats a word.
+   *
+   * @param word The lower-cased word.
+   * @param slot The slot of a term containing the word.
+   */
+   private void addPosting(String word, int slot){
+      int[] slots = postings.get(word);
+      if (slots == null){
+         slots = new int[3];
+         postings.put(word, slots);
+      }
+      else if (slots[slots[0]] == slot){
+         return;
+      }
+      else if (slots[0] + 1 == slots.length){
+         slots = Arrays.copyOf(slots, grow(slots.length));
+         postings.put(word, slots);
+      }
+      slots[++slots[0]] = slot;
+   }
+
+   /**
+   * Builds a larger hash table holding the same entries.
+   *
+   * @param length The length of the new table, a power of two.
+   * @param entryHashes The hash code of each entry.
+   * @param count The number of entries.
+   * @return The new table.
+   */
+   private static int[] rehash(int length, int[] entryHashes, int count){
+      int[] rehashed = new int[length];
+      for (int entry = 0; entry < count; entry++){
+         insert(rehashed, entryHashes[entry], entry);
+      }
+      return rehashed;
+   }
+
+   /**
+   * Stores an entry in the first empty place of a hash table from the position of its hash code.
+   *
+   * @param hashTable The hash table, which must have an empty place.
+   * @param hash The hash code of the entry.
+   * @param entry The slot or row to store.
+   */
+   private static void insert(int[] hashTable, int hash, int entry){
+      int mask = hashTable.length - 1, i = position(hash, hashTable);
+      while (hashTable[i] != 0){
+         i = (i + 1) & mask;
+      }
+      hashTable[i] = entry + 1;
+   }
+
+   /**
+   * Calculates the position in a hash table where the search for a hash code starts.
+   * The hash code is multiplied by an odd constant and the top bits of the product are used,
+   * so similar terms, whose hash codes differ in the low bits, are spread over the table.
+   *
+   * @param hash The hash code of an entry.
+   * @param hashTable The hash table.
+   * @return The position in the table.
+   */
+   private static int position(int hash, int[] hashTable){
+      return (hash * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(hashTable.length - 1);
+   }
+
+   /**
+   * Calculates the length of a hash table that holds a number of entries while at most three quarters full.
+   *
+   * @param capacity The number of entries.
+   * @return The length, a power of two.
+   */
+   private static int tableLength(int capacity){
+      return Math.max(16, Integer.highestOneBit((int)Math.min(1 << 29, capacity * 4L / 3 + 1)) << 1);
+   }
+
+   /**
+   * Shrinks every column to the size of its contents, so no room is left unused after a load.
+   */
+   private void trim(){
+      termBytes = Arrays.copyOf(termBytes, termStarts[counter]);
+      termStarts = Arrays.copyOf(termStarts, counter + 1);
+      hashes = Arrays.copyOf(hashes, counter);
+      scores = Arrays.copyOf(scores, counter);
+      bestRows = Arrays.copyOf(bestRows, counter);
+      sentenceBytes = Arrays.copyOf(sentenceBytes, sentenceStarts[rows]);
+      sentenceStarts = Arrays.copyOf(sentenceStarts, rows + 1);
+      rowScores = Arrays.copyOf(rowScores, rows);
+      rowSlots = Arrays.copyOf(rowSlots, rows);
+      otherRows = Arrays.copyOf(otherRows, counter);
+      for (int slot = 0; slot < counter; slot++){
+         int[] others = otherRows[slot];
+         if (others != null && others[0] + 1 < others.length){
+            otherRows[slot] = Arrays.copyOf(others, others[0] + 1);
+         }
+      }
+   }
+
+   /**
+   * Saves the columns to a snapshot in the array layout, in the order of their slots.
+   *
+   * @param file The name of the snapshot file.
+   * @throws IOException if the snapshot cannot be written
+   */
+   @Override
+   public void saveSnapshot(String file) throws IOException{
+      SnapshotFile.Writer writer = new SnapshotFile.Writer(file, SnapshotFile.ARRAY_LAYOUT, counter);
+      try{
+         for (int slot = 0; slot < counter; slot++){
+            int count = statementCount(slot);
+            writer.write(getTerm(slot), getSentence(bestRows[slot]), scores[slot], 0, count - 1);
+            for (int rank = 1; rank < count; rank++){
+               int row = row(slot, rank);
+               writer.writeOther(getSentence(row), rowScores[row]);
+            }
+         }
+         writer.finish();
+      }
+      finally{
+         writer.close();
+      }
+   }
+
+   /**
+   * Replaces the columns with the contents of a snapshot in the array layout, saved by this class or by {@link GenericsKbArrayApp}.
+   * The entries are already merged and in slot order, so each statement is appended after the one
+   * before it without comparing any sentences.
+   *
+   * @param file The name of the snapshot file.
+   * @return The number of entries read and the time the load took.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read or was not saved by an array
+   */
+   @Override
+   public LoadResult loadSnapshot(String file) throws IOException{
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      SnapshotFile.Reader reader = new SnapshotFile.Reader(file);
+      try{
+         if (reader.getLayout() != SnapshotFile.ARRAY_LAYOUT){
+            throw new IOException("The snapshot was not saved by an array knowledge base.");
+         }
+         GenericsKbColumnarApp loaded = new GenericsKbColumnarApp(Math.max(1, reader.getCount()));
+         while (reader.next()){
+            String term = reader.getTerm();
+            int slot = loaded.add(term, fold(term), reader.getSentence(0), reader.getScore(0));
+            for (int rank = 1; rank < reader.getStatementCount(); rank++){
+               byte[] bytes = reader.getSentence(rank).getBytes(StandardCharsets.UTF_8);
+               int row = loaded.addRow(bytes, statementHash(slot, bytes, 0, bytes.length), reader.getScore(rank), slot);
+               loaded.insertOther(slot, rank - 1, row);
+            }
+         }
+         loaded.trim();
+         //the current columns are only replaced once the whole snapshot has been read
+         replaceWith(loaded);
+      }
+      finally{
+         reader.close();
+      }
+      stats.record(KnowledgeBaseStats.Operation.LOAD, statsStart, 0, counter);
+      return new LoadResult(counter, counter, System.nanoTime() - startTime);
+   }
+
+   /**
+   * Applies an update file to the columns, keeping the terms already stored.
+   * Each statement is one lookup in the hash table, and updates its term or appends a new one.
+   * The columns are not kept in the order of their terms, so the batch is applied in the order of the file.
+   *
+   * @param batch The statements to apply.
+   * @return The number of terms added and of statements that updated a term.
+   */
+   @Override
+   public MergeResult merge(UpdateBatch batch){
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      int before = counter;
+      for (int i = 0; i < batch.size(); i++){
+         addLoadedStatement(batch.getTerm(i), batch.getSentence(i), batch.getScore(i));
+      }
+      int added = counter - before;
+      //each statement is one lookup in the hash table
+      stats.record(KnowledgeBaseStats.Operation.MERGE, statsStart, batch.size(), batch.size());
+      return new MergeResult(batch.getLines(), added, batch.size() - added, counter, System.nanoTime() - startTime);
+   }
+
+   /**
+   * Calculates the new length of a full column, doubling it without overflowing.
+   *
+   * @param length The current length of the column.
+   * @return The new length of the column.
+   **/
+   private static int grow(int length){
+      if (length >= MAX_LENGTH){
+         throw new OutOfMemoryError("The knowledge base is too large for its columns.");
+      }
+      return (int)Math.min(MAX_LENGTH, Math.max(4, 2L * length));
+   }
+
+   /**
+   * Makes sure a byte column can hold a number of bytes, doubling it if it cannot.
+   *
+   * @param column The byte column.
+   * @param needed The number of bytes it must hold.
+   * @return The column, or a longer copy of it.
+   **/
+   private static byte[] ensureCapacity(byte[] column, long needed){
+      if (needed <= column.length){
+         return column;
+      }
+      if (needed > MAX_LENGTH){
+         throw new OutOfMemoryError("The knowledge base is too large for its columns.");
+      }
+      return Arrays.copyOf(column, (int)Math.max(needed, grow(column.length)));
+   }
+
+   /**
+   * Converts a term to the case-folded form that terms are matched by.
+   *
+   * @param term The term to convert.
+   * @return The lower-cased term.
+   **/
+   private static String fold(String term){
+      return term.toLowerCase(Locale.ROOT);
+   }
+
+   /**
+   * Finds the slot of a term through the hash table. Only terms with the same hash code are decoded and compared.
+   *
+   * @param folded The lower-cased term to look for.
+   * @return The slot of the term, or NONE if it is not found.
+   **/
+   private int find(String folded){
+      int hash = folded.hashCode(), mask = table.length - 1;
+      for (int i = position(hash, table); table[i] != 0; i = (i + 1) & mask){
+         int slot = table[i] - 1;
+         if (hashes[slot] == hash && fold(getTerm(slot)).equals(folded)){
+            return slot;
+         }
+      }
+      return NONE;
+   }
+
+   /**
+   * Decodes the term of a slot.
+   *
+   * @param slot The slot of the term.
+   * @return The term.
+   **/
+   private String getTerm(int slot){
+      return new String(termBytes, termStarts[slot], termStarts[slot + 1] - termStarts[slot], StandardCharsets.UTF_8);
+   }
+
+   /**
+   * Decodes the sentence of a row.
+   *
+   * @param row The row of the statement.
+   * @return The sentence.
+   **/
+   private String getSentence(int row){
+      return new String(sentenceBytes, sentenceStarts[row], sentenceStarts[row + 1] - sentenceStarts[row], StandardCharsets.UTF_8);
+   }
+
+   /**
+   * Checks whether the sentence of a row has exactly the given bytes.
+   *
+   * @param row The row of the statement.
+   * @param bytes The UTF-8 bytes of a sentence.
+   * @return true if the sentences are equal.
+   **/
+   private boolean sentenceEquals(int row, byte[] bytes){
+      return Arrays.equals(sentenceBytes, sentenceStarts[row], sentenceStarts[row + 1], bytes, 0, bytes.length);
+   }
+
+   /**
+   * Checks whether the sentence of a row contains a phrase, ignoring case. An ASCII phrase is searched
+   * for in the bytes of the sentence in one pass. A match there is a match of the lower-cased sentence, but a
+   * sentence with other characters and no match is decoded and lower-cased, since lower-casing some of them gives ASCII letters.
+   *
+   * @param row The row of the statement.
+   * @param folded The lower-cased phrase.
+   * @param pattern The bytes of the lower-cased phrase if it is made only of ASCII characters, or null.
+   * @return true if the sentence contains the phrase.
+   **/
+   private boolean sentenceContains(int row, String folded, byte[] pattern){
+      int from = sentenceStarts[row], to = sentenceStarts[row + 1];
+      if (pattern == null){
+         return fold(getSentence(row)).contains(folded);
+      }
+      if (pattern.length == 0){
+         return true;
+      }
+      boolean ascii = true;
+      byte first = pattern[0];
+      for (int i = from, last = to - pattern.length; i < to; i++){
+         byte b = sentenceBytes[i];
+         if (b < 0){
+            ascii = false;
+         }
+         else if (LOWER_CASE[b] == first && i <= last){
+            int j = 1;
+            while (j < pattern.length && sentenceBytes[i + j] >= 0 && LOWER_CASE[sentenceBytes[i + j]] == pattern[j]){
+               j++;
+            }
+            if (j == pattern.length){
+               return true;
+            }
+         }
+      }
+      return !ascii && fold(getSentence(row)).contains(folded);
+   }
+
+   /**
+   * Makes the bytes of a lower-cased phrase for {@link #sentenceContains(int, String, byte[])}.
+   *
+   * @param folded The lower-cased phrase.
+   * @return The bytes of the phrase, or null if it has a character beyond ASCII.
+   **/
+   private static byte[] asciiPattern(String folded){
+      byte[] bytes = folded.getBytes(StandardCharsets.UTF_8);
+      return isAscii(bytes, 0, bytes.length) ? bytes : null;
+   }
+
+   /**
+   * Checks whether a range of UTF-8 bytes only holds ASCII characters, each of which is one byte below 128.
+   *
+   * @param bytes The bytes.
+   * @param from The first byte of the range.
+   * @param to The end of the range.
+   * @return true if every byte in the range is ASCII.
+   **/
+   private static boolean isAscii(byte[] bytes, int from, int to){
+      for (int i = from; i < to; i++){
+         if (bytes[i] < 0){
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+   * Copies the best statement of a term into a statement that can be returned to the caller.
+   *
+   * @param slot The slot of the term.
+   * @return The statement.
+   **/
+   private Statement toStatement(int slot){
+      return new Statement(getTerm(slot), getSentence(bestRows[slot]), scores[slot]);
+   }
+
+   /**
+   * Copies a list of slots into the statements of their best sentences.
+   *
+   * @param slots The slots of the terms.
+   * @param count The number of slots in the list.
+   * @return The list of statements.
+   **/
+   private List<Statement> toStatements(int[] slots, int count){
+      List<Statement> results = new ArrayList<>(count);
+      for (int i = 0; i < count; i++){
+         results.add(toStatement(slots[i]));
+      }
+      return results;
+   }
+
+   /**
+   * Searches for a term in the knowledge base through the hash table.
+   *
+   * @param searchTerm The term to search for.
+   * @return The statement for the term, or null if it is not found.
+   **/
+   @Override
+   public Statement lookup(String searchTerm){
+      long start = stats.start();
+      int slot = find(fold(searchTerm));
+      stats.record(KnowledgeBaseStats.Operation.LOOKUP, start, 1, (slot == NONE) ? 0 : 1);
+      return (slot == NONE) ? null : toStatement(slot);
+   }
+
+   /**
+   * Looks up the statements of a term by reading its rows from the best one down.
+   *
+   * @param term The term to search for.
+   * @param limit The largest number of statements to return.
+   * @return Up to limit statements for the term, highest score first, or an empty list if it is not found.
+   **/
+   @Override
+   public List<Statement> lookupAll(String term, int limit){
+      long start = stats.start();
+      int slot = find(fold(term));
+      List<Statement> results = new ArrayList<>();
+      if (slot != NONE){
+         String stored = getTerm(slot);
+         for (int rank = 0, count = Math.min(limit, statementCount(slot)); rank < count; rank++){
+            int row = row(slot, rank);
+            results.add(new Statement(stored, getSentence(row), rowScores[row]));
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.LOOKUP, start, 1, results.size());
+      return results;
+   }
+
+   /**
+   * Searches the knowledge base for partial matches to a term.
+   * A term matches if one of its words equals the searched term, and the matches are read from the slots listed for the word.
+   *
+   * @param term The term to search for.
+   * @return A list of statements that are partial matches to a term, or an empty list of not found.
+   **/
+   @Override
+   public List<Statement> partialMatches(String term){
+      long start = stats.start();
+      int[] slots = postings.get(fold(term));
+      int candidates = (slots == null) ? 0 : slots[0];
+      List<Statement> results = new ArrayList<>(candidates);
+      for (int i = 1; i <= candidates; i++){
+         Statement match = toStatement(slots[i]);
+         if (!match.getTerm().equalsIgnoreCase(term)){
+            results.add(match);
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.PARTIAL_MATCH, start, candidates, candidates);
+      return results;
+   }
+
+   /**
+   * Searches for a term and sentence in the knowledge base.
+   * The sentence matches if one of the stored sentences of the term contains it, ignoring case.
+   *
+   * @param term The term to search for.
+   * @param sentence The sentence to search for.
+   * @return The statement for the term, or null if the term or sentence is not found.
+   **/
+   @Override
+   public Statement lookupTermAndSentence(String term, String sentence){
+      long start = stats.start();
+      int slot = find(fold(term));
+      //checks the sentences of the term from the best one down
+      Statement result = null;
+      int checked = 0;
+      if (slot != NONE){
+         String folded = fold(sentence);
+         byte[] pattern = asciiPattern(folded);
+         for (int rank = 0, count = statementCount(slot); rank < count && result == null; rank++){
+            int row = row(slot, rank);
+            if (sentenceContains(row, folded, pattern)){
+               result = new Statement(getTerm(slot), getSentence(row), rowScores[row]);
+            }
+            checked++;
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.TERM_AND_SENTENCE, start, 1 + checked, checked);
+      return result;
+   }
+
+   /**
+   * Searches the whole knowledge base for statements whose sentence contains a phrase, ignoring case.
+   * There is no index of the sentences: the statements of each term are checked in turn, in the bytes of
+   * the sentence column, which a load fills in the same order. Every matching statement of a term is returned, best first.
+   *
+   * @param phrase The phrase to search for.
+   * @return The matching statements, or an empty list if there are none.
+   **/
+   @Override
+   public List<Statement> searchStatements(String phrase){
+      long start = stats.start();
+      String folded = fold(phrase);
+      byte[] pattern = asciiPattern(folded);
+      List<Statement> results = new ArrayList<>();
+      for (int slot = 0; slot < counter; slot++){
+         for (int rank = 0, count = statementCount(slot); rank < count; rank++){
+            int row = row(slot, rank);
+            if (sentenceContains(row, folded, pattern)){
+               results.add(new Statement(getTerm(slot), getSentence(row), rowScores[row]));
+            }
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.STATEMENT_SEARCH, start, rows, results.size());
+      return results;
+   }
+
+   /**
+   * Finds the statements whose term is within an edit distance of the given term, by comparing it with every stored term.
+   * A term made only of ASCII characters has one byte per letter, so terms whose length differs by more
+   * than the distance are skipped without being decoded.
+   *
+   * @param term The term to look up.
+   * @param maxDistance The largest number of inserted, deleted or replaced letters allowed.
+   * @return The matching statements, closest first and then in the order of their terms, or an empty list if there are none.
+   */
+   @Override
+   public List<Statement> fuzzyLookup(String term, int maxDistance){
+      long start = stats.start();
+      List<Match> matches = new ArrayList<>();
+      String folded = fold(term);
+      BKTree.Pattern pattern = new BKTree.Pattern(folded);
+      long compared = 0;
+      for (int slot = 0; slot < counter && maxDistance >= 0; slot++){
+         int from = termStarts[slot], to = termStarts[slot + 1];
+         if (Math.abs(to - from - folded.length()) > maxDistance && isAscii(termBytes, from, to)){
+            continue;
+         }
+         String key = fold(getTerm(slot));
+         int distance = pattern.distance(key, maxDistance);
+         compared++;
+         if (distance <= maxDistance){
+            matches.add(new Match(distance, key, slot));
+         }
+      }
+      matches.sort((a, b) -> (a.distance != b.distance) ? Integer.compare(a.distance, b.distance) : a.key.compareTo(b.key));
+      List<Statement> results = new ArrayList<>(matches.size());
+      for (Match match: matches){
+         results.add(toStatement(match.slot));
+      }
+      stats.record(KnowledgeBaseStats.Operation.FUZZY_LOOKUP, start, compared, results.size());
+      return results;
+   }
+
+   /**
+   * A term found by a fuzzy lookup, with its distance from the query.
+   */
+   private static final class Match{
+      private final int distance, slot;
+      private final String key;
+
+      private Match(int distance, String key, int slot){
+         this.distance = distance;
+         this.key = key;
+         this.slot = slot;
+      }
+   }
+
+   /**
+   * Finds the statements with the highest confidence scores in one pass over the score column.
+   * The k best slots seen so far are kept in a heap with the lowest of them on top, so most scores
+   * are only compared with the top of the heap. Statements with the same score are in the order of their slots.
+   *
+   * @param k The largest number of statements to return.
+   * @return Up to k statements, highest score first.
+   */
+   @Override
+   public List<Statement> topByScore(int k){
+      long start = stats.start();
+      int[] heap = new int[Math.max(0, Math.min(k, counter))];
+      int size = 0;
+      for (int slot = 0; slot < counter && heap.length > 0; slot++){
+         if (size < heap.length){
+            //the new slot goes at the bottom and moves up past the slots that rank before it
+            int i = size++;
+            while (i > 0 && ranksBefore(heap[(i - 1) / 2], slot)){
+               heap[i] = heap[(i - 1) / 2];
+               i = (i - 1) / 2;
+            }
+            heap[i] = slot;
+         }
+         else if (scores[slot] > scores[heap[0]]){
+            siftDown(heap, size, slot);
+         }
+      }
+      //the lowest slot is taken off the top until the heap is empty, filling the results from the end
+      int[] ordered = new int[size];
+      for (int count = size; count > 0; count--){
+         ordered[count - 1] = heap[0];
+         if (count > 1){
+            siftDown(heap, count - 1, heap[count - 1]);
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.SCORE_QUERY, start, counter, size);
+      return toStatements(ordered, size);
+   }
+
+   /**
+   * Puts a slot at the top of a heap and moves it down past the slots that rank after it.
+   *
+   * @param heap The heap, with the slot ranked last on top.
+   * @param size The number of slots in the heap.
+   * @param slot The slot to put in place of the top.
+   */
+   private void siftDown(int[] heap, int size, int slot){
+      int i = 0;
+      while (2 * i + 1 < size){
+         int child = 2 * i + 1;
+         if (child + 1 < size && ranksBefore(heap[child], heap[child + 1])){
+            child++;
+         }
+         if (!ranksBefore(slot, heap[child])){
+            break;
+         }
+         heap[i] = heap[child];
+         i = child;
+      }
+      heap[i] = slot;
+   }
+
+   /**
+   * Checks whether a term comes before another in the order of the score queries: higher score first, then lower slot.
+   *
+   * @param a The slot of one term.
+   * @param b The slot of the other term.
+   * @return true if a comes before b.
+   */
+   private boolean ranksBefore(int a, int b){
+      return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
+   }
+
+   /**
+   * Finds every statement with a confidence score of at least a threshold in one pass over the score column.
+   * Only the matching slots are then sorted by score.
+   *
+   * @param threshold The lowest confidence score returned.
+   * @return The matching statements, highest score first, or an empty list if there are none.
+   */
+   @Override
+   public List<Statement> withScoreAtLeast(double threshold){
+      long start = stats.start();
+      int[] slots = new int[16];
+      double[] matchScores = new double[16];
+      int count = 0;
+      for (int slot = 0; slot < counter; slot++){
+         if (scores[slot] >= threshold){
+            if (count == slots.length){
+               slots = Arrays.copyOf(slots, grow(count));
+               matchScores = Arrays.copyOf(matchScores, slots.length);
+            }
+            matchScores[count] = scores[slot];
+            slots[count++] = slot;
+         }
+      }
+      slots = sortByScore(slots, matchScores, count);
+      stats.record(KnowledgeBaseStats.Operation.SCORE_QUERY, start, counter, count);
+      return toStatements(slots, count);
+   }
+
+   /**
+   * Sorts slots by score, highest first, with a merge sort of the slot numbers themselves rather than of boxed ones.
+   * The scores are sorted along with the slots, so every pass reads both arrays in order instead of
+   * looking up the score of each slot. The sort is stable, so slots with the same score stay in the order they were in.
+   *
+   * @param slots The slots to sort, in the first count elements of the array.
+   * @param keys The scores of the slots, in the same order.
+   * @param count The number of slots.
+   * @return An array holding the sorted slots, either the given one or another of the same length.
+   */
+   private static int[] sortByScore(int[] slots, double[] keys, int count){
+      int[] slotBuffer = new int[slots.length];
+      double[] keyBuffer = new double[keys.length];
+      for (int width = 1; width < count; width *= 2){
+         //merges each pair of neighbouring runs of the width into the buffers
+         for (int from = 0; from < count; from += 2 * width){
+            int middle = Math.min(from + width, count), to = Math.min(from + 2 * width, count);
+            int i = from, j = middle, k = from;
+            while (i < middle && j < to){
+               //a later slot only goes first if its score is strictly higher
+               if (keys[j] > keys[i]){
+                  keyBuffer[k] = keys[j];
+                  slotBuffer[k++] = slots[j++];
+               }
+               else{
+                  keyBuffer[k] = keys[i];
+                  slotBuffer[k++] = slots[i++];
+               }
+            }
+            System.arraycopy(keys, i, keyBuffer, k, middle - i);
+            System.arraycopy(slots, i, slotBuffer, k, middle - i);
+            k += middle - i;
+            System.arraycopy(keys, j, keyBuffer, k, to - j);
+            System.arraycopy(slots, j, slotBuffer, k, to - j);
+         }
+         int[] slotSwap = slots;
+         slots = slotBuffer;
+         slotBuffer = slotSwap;
+         double[] keySwap = keys;
+         keys = keyBuffer;
+         keyBuffer = keySwap;
+      }
+      return slots;
+   }
+
+   /**
+   * Adds a statement to a stored term.
+   * If the term is found, the statement joins the other statements of the term in the order of its
+   * confidence score, and becomes the best one unless it has a lower score. As in {@link GenericsKbArrayApp},
+   * terms that are not stored are not added.
+   *
+   * @param term The term to which the statement is related.
+   * @param sentence The statement to be added or updated.
+   * @param score The confidence score for th statement.
+   * @return UPDATED with the best statement of the term, or NOT_FOUND if the term is not in the knowledge base.
+   */
+   @Override
+   public UpdateResult addOrUpdate(String term, String sentence, double score){
+      long start = stats.start();
+      int slot = find(fold(term));
+      if (slot == NONE){
+         stats.record(KnowledgeBaseStats.Operation.ADD_OR_UPDATE, start, 1, 0);
+         return new UpdateResult(UpdateResult.Status.NOT_FOUND, null);
+      }
+      update(slot, sentence, score);
+      stats.record(KnowledgeBaseStats.Operation.ADD_OR_UPDATE, start, 1, 1);
+      return new UpdateResult(UpdateResult.Status.UPDATED, toStatement(slot));
+   }
+
+   /**
+   * Retrieves the number of terms stored in the columns.
+   *
+   * @return The number of terms.
+   **/
+   @Override
+   public int size(){
+      return counter;
+   }
+
+   /**
+   * Retrieves the statistics collected about the operations of this knowledge base.
+   *
+   * @return The statistics of this knowledge base.
+   **/
+   @Override
+   public KnowledgeBaseStats getStats(){
+      return stats;
+   }
+
+   /**
+   * Calculates the memory held by the columns, the hash tables and the word lists, counting the length of each
+   * array and a 16-byte header for each array, and an estimate for each word and its entry in the map.
+   *
+   * @return The number of bytes.
+   **/
+   public long getColumnBytes(){
+      long bytes = 16L * 12 + termBytes.length + sentenceBytes.length
+         + 4L * (termStarts.length + hashes.length + bestRows.length + otherRows.length + sentenceStarts.length + rowSlots.length
+            + table.length + statementTable.length)
+         + 8L * (scores.length + rowScores.length);
+      for (int[] others: otherRows){
+         if (others != null){
+            bytes += 16 + 4L * others.length;
+         }
+      }
+      for (Map.Entry<String, int[]> entry: postings.entrySet()){
+         //the map entry, the word with its own array, and the array of slots
+         bytes += 32 + 40 + entry.getKey().length() + 16 + 4L * entry.getValue().length;
+      }
+      return bytes;
+   }
+
+   /**
+   * Describes the columns.
+   *
+   * @return The number of terms and statements, and the bytes the columns hold for each term.
+   **/
+   @Override
+   public String describe(){
+      return "Columns of " + counter + " terms and " + rows + " statements (" + (getColumnBytes() / Math.max(1, counter)) + " bytes per term).";
+   }
+
+   /**
+   * The main entry point for the program which displays the menu for interacting with the knowledge base
+   * stored as columns. Another backend can be chosen with --backend.
+   *
+   * @param args The command-line arguments, see {@link KnowledgeBaseMenu#run(String[], String)}.
+   */
+   public static void main(String[] args) {
+      KnowledgeBaseMenu.run(args, "columnar");
+   }
+}
@@ -0,0 +1,799 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+* A class representing a knowledge base implemented by a concurrent skip list.
+*
+* The entries are kept in a {@link ConcurrentSkipListMap} keyed by the lower-cased term, so like
+* {@link GenericsKbBSTApp} it keeps the terms in order. Each entry holds the statements of its
+* term in an array, best first, and an update replaces the array with a copy holding the new
+* statement by compare-and-set. The new statement is placed by its confidence score as in
+* {@link Node#update(String, double)}, so a query never sees a half-made change. Partial matches are answered from a concurrent map of
+* the words of the terms. Apart from fuzzy lookups no query takes a lock, and an update only locks its own entry when it
+* raises the score, so this knowledge base can be used by many threads at once without a {@link ConcurrentKnowledgeBase}.
+*
+* Top-k and threshold queries are answered from a second skip list holding a key for each entry,
+* ordered by confidence score. When an update raises the score of an entry, the new key is added
+* before the old one is removed, and each entry records which of its keys is current so that
+* queries skip the other. Moving the keys of one entry is serialized by locking that entry alone.
+*
+* Phrase searches scan the sentences instead of using a trigram index, because
+* {@link SentenceIndex} is not safe for use by several threads. Fuzzy lookups use a {@link BKTree},
+* which is guarded by a read-write lock. An update that adds a term does not take that lock: it puts the
+* new entry in a concurrent queue, and a fuzzy lookup adds the queued entries to the tree under the write
+* lock before it searches. Every so many new terms, the writer adding one also empties the queue if the
+* tree is free, without waiting for it, so the queue stays short when there are no fuzzy lookups.
+* Writers to different terms therefore never wait for each other or for a fuzzy lookup.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class GenericsKbSkipListApp implements KnowledgeBase{
+   //the number of new terms after which the writer adding one empties the queue of terms for the BK-tree, if it is free
+   private static final int FUZZY_DRAIN_INTERVAL = 4096;
+   //the entries, word index and size are replaced together when a file is loaded
+   private volatile Contents contents = new Contents();
+   //counters and latency histograms of the operations
+   private final KnowledgeBaseStats stats = new KnowledgeBaseStats();
+
+   /**
+   * The statements of a term, best first, with the lower-case form of each sentence at the same
+   * position, so sentence matches do not convert every sentence they compare. Both arrays are
+   * replaced together and never changed.
+   */
+   private static final class Statements{
+      private final Statement[] statements;
+      private final String[] foldedSentences;
+
+      private Statements(Statement[] statements, String[] foldedSentences){
+         this.statements = statements;
+         this.foldedSentences = foldedSentences;
+      }
+   }
+
+   /**
+   * The statements stored for a term, best first, and the key that places the term in the score index.
+   */
+   private static final class Entry{
+      //compares and sets the statements of an entry, without an atomic reference object for each entry
+      private static final VarHandle STATEMENTS;
+      static{
+         try{
+            STATEMENTS = MethodHandles.lookup().findVarHandle(Entry.class, "statements", Statements.class);
+         }
+         catch(ReflectiveOperationException e){
+            throw new ExceptionInInitializerError(e);
+         }
+      }
+
+      private final String key;
+      //the statements of the term, replaced as a whole whenever one is added
+      private volatile Statements statements;
+      //the key of this entry in the score index, changed only while holding the lock of the entry
+      private volatile ScoreKey indexed;
+
+      private Entry(String key, Statement statement){
+         this.key = key;
+         this.statements = new Statements(new Statement[]{statement}, new String[]{fold(statement.getSentence())});
+      }
+
+      /**
+      * Retrieves the statements of the term, best first.
+      *
+      * @return The current array of statements, which is never changed.
+      */
+      private Statement[] get(){
+         return statements.statements;
+      }
+
+      /**
+      * Retrieves the statements of the term with their lower-case sentences, read together.
+      *
+      * @return The current statements, which are never changed.
+      */
+      private Statements current(){
+         return statements;
+      }
+
+      /**
+      * Replaces the statements of the term if no other thread has replaced them first.
+      *
+      * @param expected The statements that were read.
+      * @param updated The statements to store.
+      * @return true if the statements were replaced.
+      */
+      private boolean compareAndSet(Statements expected, Statements updated){
+         return STATEMENTS.compareAndSet(this, expected, updated);
+      }
+
+      /**
+      * Retrieves the statement with the highest confidence score.
+      *
+      * @return The best statement of the term.
+      */
+      private Statement best(){
+         return get()[0];
+      }
+   }
+
+   /**
+   * The place of an entry in the score index: the highest score comes first, and entries with the
+   * same score are kept in the order of their terms.
+   */
+   private static final class ScoreKey implements Comparable<ScoreKey>{
+      private final double score;
+      private final Entry entry;
+
+      private ScoreKey(double score, Entry entry){
+         this.score = score;
+         this.entry = entry;
+      }
+
+      @Override
+      public int compareTo(ScoreKey other){
+         return (score != other.score) ? Double.compare(other.score, score) : entry.key.compareTo(other.entry.key);
+      }
+   }
+
+   /**
+   * The entries of the knowledge base and the indexes of the words of their terms, of their scores and of their spelling.
+   */
+   private static class Contents{
+      private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+      private final ConcurrentHashMap<String, Queue<Entry>> words = new ConcurrentHashMap<>();
+      private final ConcurrentSkipListSet<ScoreKey> scores = new ConcurrentSkipListSet<>();
+      private final BKTree<Entry> fuzzy = new BKTree<>();
+      private final ReadWriteLock fuzzyLock = new ReentrantReadWriteLock();
+      //the new entries not yet added to the BK-tree, which is only done while holding its write lock
+      private final Queue<Entry> pendingFuzzy = new ConcurrentLinkedQueue<>();
+      private final AtomicInteger size = new AtomicInteger();
+
+      /**
+      * Adds a statement for a term, or updates the statement already stored for it.
+      *
+      * @param term The term of the statement.
+      * @param sentence The sentence of the statement.
+      * @param score The confidence score of the statement.
+      * @return ADDED if the term was new, otherwise UPDATED, with the statement stored for the term.
+      */
+      private UpdateResult addOrUpdate(String term, String sentence, double score){
+         String key = fold(term);
+         Entry entry = entries.get(key);
+         if (entry == null){
+            Statement statement = new Statement(term, sentence, score);
+            Entry newEntry = new Entry(key, statement);
+            entry = entries.putIfAbsent(key, newEntry);
+            if (entry == null){
+               //only the thread that added the entry indexes its words
+               for (String word: new HashSet<>(Arrays.asList(key.split(" ")))){
+                  if (!word.isEmpty()){
+                     words.computeIfAbsent(word, w -> new ConcurrentLinkedQueue<>()).add(newEntry);
+                  }
+               }
+               pendingFuzzy.add(newEntry);
+               if (size.incrementAndGet() % FUZZY_DRAIN_INTERVAL == 0 && fuzzyLock.writeLock().tryLock()){
+                  //empties the queue only if no fuzzy lookup holds the tree, so the writer never waits
+                  try{
+                     addPendingTerms();
+                  }
+                  finally{
+                     fuzzyLock.writeLock().unlock();
+                  }
+               }
+               index(newEntry);
+               return new UpdateResult(UpdateResult.Status.ADDED, statement);
+            }
+            //another thread added the term first
+         }
+         Statement updated = update(entry, sentence, score);
+         index(entry);
+         return new UpdateResult(UpdateResult.Status.UPDATED, updated);
+      }
+
+      /**
+      * Adds the queued new entries to the BK-tree. The caller must hold the write lock of the tree.
+      */
+      private void addPendingTerms(){
+         for (Entry entry = pendingFuzzy.poll(); entry != null; entry = pendingFuzzy.poll()){
+            fuzzy.add(entry.key, entry);
+         }
+      }
+
+      /**
+      * Moves the key of an entry in the score index to its current score, if the score has changed.
+      * The score is read again under the lock of the entry, so whichever thread moves the key last
+      * leaves it at the latest score, even when several threads raise the score at once.
+      *
+      * @param entry The entry whose score may have changed.
+      */
+      private void index(Entry entry){
+         ScoreKey old = entry.indexed;
+         if (old != null && old.score == entry.best().getScore()){
+            //only the sentence changed
+            return;
+         }
+         synchronized (entry){
+            old = entry.indexed;
+            double score = entry.best().getScore();
+            if (old == null || old.score != score){
+               //the new key is added before the old one is removed, so a query finds one of them
+               ScoreKey key = new ScoreKey(score, entry);
+               scores.add(key);
+               entry.indexed = key;
+               if (old != null){
+                  scores.remove(old);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+   * Constructs an empty knowledge base represented as a skip list.
+   */
+   public GenericsKbSkipListApp(){}
+
+   /**
+   * Converts a term to the case-folded form used as a key of the skip list.
+   *
+   * @param term The term to convert.
+   * @return The lower-cased term.
+   */
+   private static String fold(String term){
+      return term.toLowerCase(Locale.ROOT);
+   }
+
+   /**
+   * Adds a statement to an entry by replacing its statements with compare-and-set.
+   *
+   * @param entry The entry to update.
+   * @param sentence The new sentence.
+   * @param score The confidence score of the new sentence.
+   * @return The best statement of the entry afterwards.
+   */
+   private static Statement update(Entry entry, String sentence, double score){
+      Statements current, updated;
+      do{
+         current = entry.current();
+         updated = add(current, sentence, score);
+      }
+      while (updated != current && !entry.compareAndSet(current, updated));
+      return updated.statements[0];
+   }
+
+   /**
+   * Copies the statements of a term with a statement added in the place of its confidence score.
+   * A statement whose score is not lower than the best one becomes the best one, and other
+   * statements go after those with the same score. A sentence the term already has is moved to
+   * the higher of its two scores.
+   *
+   * @param statements The statements of the term, best first.
+   * @param sentence The new sentence.
+   * @param score The confidence score of the new sentence.
+   * @return The new statements, or the given ones if the term already has the sentence with a score that is not lower.
+   */
+   private static Statements add(Statements statements, String sentence, double score){
+      Statement[] current = statements.statements;
+      String[] currentFolded = statements.foldedSentences;
+      int existing = -1;
+      for (int i = 0; i < current.length && existing < 0; i++){
+         if (current[i].getSentence().equals(sentence)){
+            existing = i;
+         }
+      }
+      if (existing >= 0 && current[existing].getScore() >= score){
+         return statements;
+      }
+      Statement statement = new Statement(current[0].getTerm(), sentence, score);
+      String folded = (existing < 0) ? fold(sentence) : currentFolded[existing];
+      Statement[] updated = new Statement[(existing < 0) ? current.length + 1 : current.length];
+      String[] updatedFolded = new String[updated.length];
+      int next = 0;
+      boolean placed = false;
+      for (int i = 0; i < current.length; i++){
+         if (i == existing){
+            continue;
+         }
+         if (!placed && ((next == 0) ? score >= current[i].getScore() : score > current[i].getScore())){
+            updatedFolded[next] = folded;
+            updated[next++] = statement;
+            placed = true;
+         }
+         updatedFolded[next] = currentFolded[i];
+         updated[next++] = current[i];
+      }
+      if (!placed){
+         updatedFolded[next] = folded;
+         updated[next] = statement;
+      }
+      return new Statements(updated, updatedFolded);
+   }
+
+   /**
+   * Loads the statements of a file into a new skip list, which replaces the current one once the file has been read.
+   * Malformed lines are reported with their line number and skipped.
+   *
+   * @param file The name of the file to read.
+   * @param parallel Whether the file is memory-mapped and parsed in parallel.
+   * @return The number of lines read and the time the load took.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read
+   */
+   @Override
+   public LoadResult load(String file, boolean parallel) throws IOException{
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      Contents loaded = new Contents();
+      long lines;
+      if (parallel){
+         lines = ParallelFileLoader.load(file, loaded::addOrUpdate);
+      }
+      else{
+         BufferedReader fileData = null;
+         try{
+            fileData = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            RecordParser parser = new RecordParser();
+            lines = 0;
+            String dataLine;
+            while ((dataLine = fileData.readLine()) != null){
+               lines++;
+               if (parser.parse(dataLine, lines)){
+                  loaded.addOrUpdate(parser.getTerm(), parser.getSentence(), parser.getScore());
+               }
+               else{
+                  System.out.println("Skipping malformed line. " + parser.getError());
+               }
+            }
+         }
+         finally{
+            if (fileData!=null){
+               fileData.close();
+            }
+         }
+      }
+      contents = loaded;
+      stats.record(KnowledgeBaseStats.Operation.LOAD, statsStart, 0, lines);
+      return new LoadResult(lines, loaded.size.get(), System.nanoTime() - startTime);
+   }
+
+   /**
+   * Applies an update file to the skip list in place, one statement at a time, so that queries
+   * running during the merge see each update as a whole. A concurrent skip list cannot take a
+   * sorted run of keys in a single pass, so the batch is applied in the order of the file.
+   *
+   * @param batch The statements to apply.
+   * @return The number of terms added and of statements that updated a term.
+   */
+   @Override
+   public MergeResult merge(UpdateBatch batch){
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      Contents current = contents;
+      int added = 0;
+      for (int i = 0; i < batch.size(); i++){
+         if (current.addOrUpdate(batch.getTerm(i), batch.getSentence(i), batch.getScore(i)).getStatus() == UpdateResult.Status.ADDED){
+            added++;
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.MERGE, statsStart, 0, batch.size());
+      return new MergeResult(batch.getLines(), added, batch.size() - added, current.size.get(), System.nanoTime() - startTime);
+   }
+
+   /**
+   * Saves the skip list to a snapshot in the order of its keys.
+   *
+   * @param file The name of the snapshot file.
+   * @throws IOException if the snapshot cannot be written
+   */
+   @Override
+   public void saveSnapshot(String file) throws IOException{
+      //the entries are copied first, so that terms added during the save do not change the count
+      List<Statement[]> terms = new ArrayList<>();
+      for (Entry entry: contents.entries.values()){
+         terms.add(entry.get());
+      }
+      SnapshotFile.Writer writer = new SnapshotFile.Writer(file, SnapshotFile.SORTED_LAYOUT, terms.size());
+      try{
+         for (Statement[] statements: terms){
+            writer.write(statements[0].getTerm(), statements[0].getSentence(), statements[0].getScore(), 0, statements.length - 1);
+            for (int rank = 1; rank < statements.length; rank++){
+               writer.writeOther(statements[rank].getSentence(), statements[rank].getScore());
+            }
+         }
+         writer.finish();
+      }
+      finally{
+         writer.close();
+      }
+   }
+
+   /**
+   * Replaces the skip list with the contents of a snapshot.
+   *
+   * @param file The name of the snapshot file.
+   * @return The number of entries read and the time the load took.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read or was not saved by a skip list
+   */
+   @Override
+   public LoadResult loadSnapshot(String file) throws IOException{
+      long startTime = System.nanoTime();
+      long statsStart = stats.start();
+      Contents loaded = new Contents();
+      SnapshotFile.Reader reader = new SnapshotFile.Reader(file);
+      try{
+         if (reader.getLayout() != SnapshotFile.SORTED_LAYOUT){
+            throw new IOException("The snapshot was not saved by a skip list knowledge base.");
+         }
+         while (reader.next()){
+            //the statements are added lowest score first, so each one takes the lead and they keep their saved order, ties included
+            for (int rank = reader.getStatementCount() - 1; rank >= 0; rank--){
+               loaded.addOrUpdate(reader.getTerm(), reader.getSentence(rank), reader.getScore(rank));
+            }
+         }
+      }
+      finally{
+         reader.close();
+      }
+      contents = loaded;
+      stats.record(KnowledgeBaseStats.Operation.LOAD, statsStart, 0, loaded.size.get());
+      return new LoadResult(loaded.size.get(), loaded.size.get(), System.nanoTime() - startTime);
+   }
+
+   /**
+   * Searches for a term in the skip list.
+   *
+   * @param term The term to search for.
+   * @return The statement for the term, or null if it is not found.
+   */
+   @Override
+   public Statement lookup(String term){
+      long start = stats.start();
+      Entry entry = contents.entries.get(fold(term));
+      stats.record(KnowledgeBaseStats.Operation.LOOKUP, start, 0, (entry == null) ? 0 : 1);
+      return (entry == null) ? null : entry.best();
+   }
+
+   /**
+   * Searches for the statements whose term contains the given term as one of its words.
+   *
+   * @param term The word to search for.
+   * @return The partial matches, or an empty list if there are none.
+   */
+   @Override
+   public List<Statement> partialMatches(String term){
+      long start = stats.start();
+      List<Statement> results = new ArrayList<>();
+      Queue<Entry> candidates = contents.words.get(fold(term));
+      int visited = 0;
+      if (candidates != null){
+         for (Entry entry: candidates){
+            visited++;
+            Statement statement = entry.best();
+            if (!statement.getTerm().equalsIgnoreCase(term)){
+               results.add(statement);
+            }
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.PARTIAL_MATCH, start, 0, visited);
+      return results;
+   }
+
+   /**
+   * Searches for a term in the skip list and returns its statements, which the entry keeps in order.
+   *
+   * @param term The term to search for.
+   * @param limit The largest number of statements to return.
+   * @return Up to limit statements for the term, highest score first, or an empty list if it is not found.
+   */
+   @Override
+   public List<Statement> lookupAll(String term, int limit){
+      long start = stats.start();
+      Entry entry = contents.entries.get(fold(term));
+      List<Statement> results = new ArrayList<>();
+      if (entry != null){
+         Statement[] statements = entry.get();
+         results.addAll(Arrays.asList(statements).subList(0, Math.max(0, Math.min(limit, statements.length))));
+      }
+      stats.record(KnowledgeBaseStats.Operation.LOOKUP, start, 0, results.size());
+      return results;
+   }
+
+   /**
+   * Searches for a term and checks whether one of its sentences contains the given sentence, ignoring case.
+   *
+   * @param term The term to search for.
+   * @param sentence The sentence to search for.
+   * @return The best statement for the term whose sentence matches, or null if the term or sentence is not found.
+   */
+   @Override
+   public Statement lookupTermAndSentence(String term, String sentence){
+      long start = stats.start();
+      Entry entry = contents.entries.get(fold(term));
+      Statement result = null;
+      int checked = 0;
+      if (entry != null){
+         String folded = fold(sentence);
+         Statements statements = entry.current();
+         for (int i = 0; i < statements.statements.length; i++){
+            checked++;
+            if (statements.foldedSentences[i].contains(folded)){
+               result = statements.statements[i];
+               break;
+            }
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.TERM_AND_SENTENCE, start, 0, checked);
+      return result;
+   }
+
+   /**
+   * Scans the skip list for statements whose sentence contains a phrase, ignoring case.
+   * The statements are returned in the order of their terms, and those of one term best first.
+   *
+   * @param phrase The phrase to search for.
+   * @return The matching statements, or an empty list if there are none.
+   */
+   @Override
+   public List<Statement> searchStatements(String phrase){
+      long start = stats.start();
+      String folded = fold(phrase);
+      List<Statement> results = new ArrayList<>();
+      int visited = 0;
+      for (Entry entry: contents.entries.values()){
+         Statements statements = entry.current();
+         for (int i = 0; i < statements.statements.length; i++){
+            visited++;
+            if (statements.foldedSentences[i].contains(folded)){
+               results.add(statements.statements[i]);
+            }
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.STATEMENT_SEARCH, start, 0, visited);
+      return results;
+   }
+
+   /**
+   * Finds the statements whose term is within an edit distance of the given term using the BK-tree of the terms.
+   * Terms added since the last fuzzy lookup are first added to the tree under its write lock. The search
+   * itself holds the read lock, so it runs alongside other fuzzy lookups, and no update waits for it.
+   *
+   * @param term The term to look up.
+   * @param maxDistance The largest number of inserted, deleted or replaced letters allowed.
+   * @return The matching statements, closest first, or an empty list if there are none.
+   */
+   @Override
+   public List<Statement> fuzzyLookup(String term, int maxDistance){
+      long start = stats.start();
+      Contents current = contents;
+      List<Entry> matches;
+      Lock readLock = current.fuzzyLock.readLock();
+      if (!current.pendingFuzzy.isEmpty()){
+         current.fuzzyLock.writeLock().lock();
+         try{
+            current.addPendingTerms();
+            //keeps the tree locked against other writers while giving up the write lock for the search
+            readLock.lock();
+         }
+         finally{
+            current.fuzzyLock.writeLock().unlock();
+         }
+      }
+      else{
+         readLock.lock();
+      }
+      try{
+         matches = current.fuzzy.search(term, maxDistance);
+      }
+      finally{
+         readLock.unlock();
+      }
+      List<Statement> results = new ArrayList<>(matches.size());
+      for (Entry entry: matches){
+         results.add(entry.best());
+      }
+      stats.record(KnowledgeBaseStats.Operation.FUZZY_LOOKUP, start, 0, matches.size());
+      return results;
+   }
+
+   /**
+   * Finds the statements with the highest confidence scores from the score index.
+   * Keys that are being moved by an update are skipped, so an entry whose score is raised
+   * during the query may be returned at its old place or not at all.
+   *
+   * @param k The largest number of statements to return.
+   * @return Up to k statements, highest score first.
+   */
+   @Override
+   public List<Statement> topByScore(int k){
+      long start = stats.start();
+      List<Statement> results = new ArrayList<>();
+      int visited = 0;
+      Iterator<ScoreKey> keys = contents.scores.iterator();
+      while (results.size() < k && keys.hasNext()){
+         ScoreKey key = keys.next();
+         visited++;
+         if (key == key.entry.indexed){
+            results.add(key.entry.best());
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.SCORE_QUERY, start, 0, visited);
+      return results;
+   }
+
+   /**
+   * Finds every statement with a confidence score of at least a threshold from the score index.
+   * Scores are only ever raised, so every statement returned has a score of at least the threshold.
+   *
+   * @param threshold The lowest confidence score returned.
+   * @return The matching statements, highest score first, or an empty list if there are none.
+   */
+   @Override
+   public List<Statement> withScoreAtLeast(double threshold){
+      long start = stats.start();
+      List<Statement> results = new ArrayList<>();
+      int visited = 0;
+      for (ScoreKey key: contents.scores){
+         if (key.score < threshold){
+            break; //every later key has a lower score
+         }
+         visited++;
+         if (key == key.entry.indexed){
+            results.add(key.entry.best());
+         }
+      }
+      stats.record(KnowledgeBaseStats.Operation.SCORE_QUERY, start, 0, visited);
+      return results;
+   }
+
+   /**
+   * Iterates over the statements whose lower-cased term lies in a range, in order.
+   * The iterator reads the skip list as it advances, and sees some of the updates made meanwhile.
+   *
+   * @param from The first term of the range, or null to start at the first term.
+   * @param to The term the range ends before, or null to end at the last term.
+   * @return An iterator over the statements in the range.
+   */
+   @Override
+   public Iterator<Statement> range(String from, String to){
+      NavigableMap<String, Entry> view = contents.entries;
+      if (from != null && to != null && fold(from).compareTo(fold(to)) > 0){
+         //an empty range, as the tree would return it
+         return Collections.emptyIterator();
+      }
+      if (from != null){
+         view = view.tailMap(fold(from), true);
+      }
+      if (to != null){
+         view = view.headMap(fold(to), false);
+      }
+      return new StatementIterator(view.entrySet().iterator(), null);
+   }
+
+   /**
+   * Iterates over the statements whose term starts with a prefix, in order.
+   * The iterator reads the skip list as it advances, and sees some of the updates made meanwhile.
+   *
+   * @param prefix The start of the terms.
+   * @param from The first term to return, or null to start at the first match.
+   * @return An iterator over the statements whose term starts with the prefix.
+   */
+   @Override
+   public Iterator<Statement> prefix(String prefix, String from){
+      String folded = fold(prefix);
+      String start = (from == null || fold(from).compareTo(folded) < 0) ? folded : fold(from);
+      return new StatementIterator(contents.entries.tailMap(start, true).entrySet().iterator(), folded);
+   }
+
+   /**
+   * An iterator over entries of the skip list that stops at the first key without a given prefix.
+   */
+   private static class StatementIterator implements Iterator<Statement>{
+      private final Iterator<Map.Entry<String, Entry>> entries;
+      private final String prefix;
+      private Map.Entry<String, Entry> next;
+
+      /**
+      * Constructs an iterator over entries of the skip list.
+      *
+      * @param entries The entries, in order of their keys.
+      * @param prefix The start every key must have, or null.
+      */
+      private StatementIterator(Iterator<Map.Entry<String, Entry>> entries, String prefix){
+         this.entries = entries;
+         this.prefix = prefix;
+         advance();
+      }
+
+      private void advance(){
+         next = entries.hasNext() ? entries.next() : null;
+         if (next != null && prefix != null && !next.getKey().startsWith(prefix)){
+            next = null;
+         }
+      }
+
+      @Override
+      public boolean hasNext(){
+         return next != null;
+      }
+
+      @Override
+      public Statement next(){
+         if (next == null){
+            throw new NoSuchElementException();
+         }
+         Statement statement = next.getValue().best();
+         advance();
+         return statement;
+      }
+   }
+
+   /**
+   * Adds a statement for a term, or updates the statement already stored for it.
+   *
+   * @param term The term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   * @return ADDED if the term was new, otherwise UPDATED, with the statement stored for the term.
+   */
+   @Override
+   public UpdateResult addOrUpdate(String term, String sentence, double score){
+      long start = stats.start();
+      UpdateResult result = contents.addOrUpdate(term, sentence, score);
+      stats.record(KnowledgeBaseStats.Operation.ADD_OR_UPDATE, start, 0, 1);
+      return result;
+   }
+
+   /**
+   * Retrieves the number of terms in the skip list.
+   *
+   * @return The number of terms.
+   */
+   @Override
+   public int size(){
+      return contents.size.get();
+   }
+
+   /**
+   * Retrieves the statistics collected about the operations of this knowledge base.
+   * Key comparisons happen inside the skip list, so they are not counted.
+   *
+   * @return The statistics of this knowledge base.
+   */
+   @Override
+   public KnowledgeBaseStats getStats(){
+      return stats;
+   }
+
+   /**
+   * Describes the skip list.
+   *
+   * @return The number of terms.
+   */
+   @Override
+   public String describe(){
+      return "Concurrent skip list of " + size() + " terms.";
+   }
+
+   /**
+   * The main entry point for the program which displays the menu for interacting with the knowledge base
+   * implemented using a skip list. Another backend can be chosen with --backend.
+   *
+   * @param args The command-line arguments, see {@link KnowledgeBaseMenu#run(String[], String)}.
+   */
+   public static void main(String[] args){
+      KnowledgeBaseMenu.run(args, "skiplist");
+   }
+}
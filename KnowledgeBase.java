@@ -0,0 +1,207 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+* Interface for a knowledge base that stores statements, each a sentence and a confidence score,
+* for each term. Queries about a term use its best statement, the one with the highest score, unless
+* they ask for all of them with {@link #lookupAll(String, int)}.
+* It has four implementations:
+* <ul>
+* <li>{@link GenericsKbArrayApp}, which stores {@link Generics} objects in an array,</li>
+* <li>{@link GenericsKbColumnarApp}, which stores the same entries as columns of primitive arrays,</li>
+* <li>{@link GenericsKbBSTApp}, which stores {@link Node} objects in a balanced binary search tree,</li>
+* <li>{@link GenericsKbSkipListApp}, which can be used by several threads at once.</li>
+* </ul>
+* Terms are matched ignoring case, and every query returns copies of the
+* stored entries as {@link Statement} objects instead of printing them, so the knowledge base
+* can be used by the {@link KnowledgeBaseMenu} or by other programs.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public interface KnowledgeBase{
+
+   /**
+   * Loads the statements of a file, where each line holds a term, sentence and confidence
+   * score separated by tabs. A line for a term that is already stored updates it.
+   *
+   * @param file The name of the file to load.
+   * @param parallel Whether to memory-map the file and parse it in parallel.
+   * @return The number of lines read and the time the load took.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read
+   */
+   LoadResult load(String file, boolean parallel) throws IOException;
+
+   /**
+   * Saves the knowledge base to a binary {@link SnapshotFile}, keeping the layout of its data
+   * structure so that it can be loaded again without parsing or rebalancing.
+   *
+   * @param file The name of the snapshot file.
+   * @throws IOException if the snapshot cannot be written
+   */
+   void saveSnapshot(String file) throws IOException;
+
+   /**
+   * Replaces the knowledge base with the contents of a snapshot saved by {@link #saveSnapshot(String)}.
+   *
+   * @param file The name of the snapshot file.
+   * @return The number of entries read and the time the load took.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read, or was saved by a different kind of knowledge base
+   */
+   LoadResult loadSnapshot(String file) throws IOException;
+
+   /**
+   * Applies the statements of an update file to the knowledge base, keeping the terms already stored.
+   * Each statement is applied as by {@link #addOrUpdate(String, String, double)}, in the order of
+   * the file for the statements of one term, except that terms which are not stored are always
+   * added. Knowledge bases that keep their terms in order may sort the batch and merge it in a
+   * single pass over their terms.
+   *
+   * @param batch The statements to apply, which may be reordered by term.
+   * @return The number of terms added and of statements that updated a term.
+   */
+   MergeResult merge(UpdateBatch batch);
+
+   /**
+   * Looks up the statement with the highest confidence score stored for a term.
+   *
+   * @param term The term to look up.
+   * @return The best statement for the term, or null if it is not found.
+   */
+   Statement lookup(String term);
+
+   /**
+   * Looks up the statements stored for a term, in the order of their confidence scores.
+   *
+   * @param term The term to look up.
+   * @param limit The largest number of statements to return.
+   * @return Up to limit statements for the term, highest score first, or an empty list if the term is not found.
+   */
+   List<Statement> lookupAll(String term, int limit);
+
+   /**
+   * Finds the statements whose term contains the given term as one of its words,
+   * excluding the statement for the term itself.
+   *
+   * @param term The word to search for.
+   * @return The partial matches, or an empty list if there are none.
+   */
+   List<Statement> partialMatches(String term);
+
+   /**
+   * Looks up the best statement for a term whose sentence contains the given sentence, ignoring case.
+   *
+   * @param term The term to look up.
+   * @param sentence The sentence, or part of the sentence, to look for.
+   * @return The statement for the term, or null if the term is not found or none of its sentences match.
+   */
+   Statement lookupTermAndSentence(String term, String sentence);
+
+   /**
+   * Finds every statement whose sentence contains a phrase, ignoring case. The array and tree backends
+   * only compare the sentences their {@link SentenceIndex} finds for the phrase, while the columnar and
+   * skip list backends compare every sentence they store.
+   *
+   * @param phrase The phrase to search for.
+   * @return The matching statements, or an empty list if there are none.
+   */
+   List<Statement> searchStatements(String phrase);
+
+   /**
+   * Finds the statements whose term is within an edit distance of the given term, ignoring case,
+   * such as the terms a misspelled term was meant to be. The array, tree and skip list backends keep
+   * their terms in a {@link BKTree}, so only a small part of them is compared with the given term, while
+   * the columnar backend compares every term it stores.
+   *
+   * @param term The term to look up.
+   * @param maxDistance The largest number of inserted, deleted or replaced letters allowed.
+   * @return The matching statements, closest first, or an empty list if there are none.
+   */
+   List<Statement> fuzzyLookup(String term, int maxDistance);
+
+   /**
+   * Finds the statements with the highest confidence scores. The array, tree and skip list backends
+   * keep an index on the scores, so that only the statements returned are visited, while the columnar
+   * backend reads the score of every term.
+   *
+   * @param k The largest number of statements to return.
+   * @return Up to k statements, highest score first.
+   */
+   List<Statement> topByScore(int k);
+
+   /**
+   * Finds every statement with a confidence score of at least a threshold. The array, tree and skip list
+   * backends keep an index on the scores, so that only the statements returned are visited, while the
+   * columnar backend reads the score of every term.
+   *
+   * @param threshold The lowest confidence score returned.
+   * @return The matching statements, highest score first, or an empty list if there are none.
+   */
+   List<Statement> withScoreAtLeast(double threshold);
+
+   /**
+   * Iterates over the statements whose term lies in a range, in the order of the terms, ignoring case.
+   * The statements are found as the iterator advances, so no list of the results is built.
+   * Knowledge bases that do not keep their terms in order do not support this query.
+   *
+   * @param from The first term of the range, or null to start at the first term.
+   * @param to The term the range ends before, or null to end at the last term.
+   * @return An iterator over the statements in the range.
+   * @throws UnsupportedOperationException if the knowledge base does not keep its terms in order
+   */
+   default Iterator<Statement> range(String from, String to){
+      throw new UnsupportedOperationException("This knowledge base does not keep its terms in order.");
+   }
+
+   /**
+   * Iterates over the statements whose term starts with a prefix, in the order of the terms, ignoring case.
+   * The statements are found as the iterator advances, so no list of the results is built.
+   * Knowledge bases that do not keep their terms in order do not support this query.
+   *
+   * @param prefix The start of the terms.
+   * @param from The first term to return, such as the cursor of a {@link TermPage}, or null to start at the first match.
+   * @return An iterator over the statements whose term starts with the prefix.
+   * @throws UnsupportedOperationException if the knowledge base does not keep its terms in order
+   */
+   default Iterator<Statement> prefix(String prefix, String from){
+      throw new UnsupportedOperationException("This knowledge base does not keep its terms in order.");
+   }
+
+   /**
+   * Adds a statement for a term. A term keeps every statement added for it, ordered by confidence
+   * score, and a sentence the term already has keeps the higher of its two scores.
+   *
+   * @param term The term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   * @return What happened and the statement stored for the term afterwards.
+   */
+   UpdateResult addOrUpdate(String term, String sentence, double score);
+
+   /**
+   * Retrieves the number of terms stored.
+   *
+   * @return The number of terms.
+   */
+   int size();
+
+   /**
+   * Retrieves the statistics collected about the operations of this knowledge base.
+   * They are disabled until {@link KnowledgeBaseStats#setEnabled(boolean)} is called.
+   *
+   * @return The statistics of this knowledge base.
+   */
+   KnowledgeBaseStats getStats();
+
+   /**
+   * Describes the data structure holding the knowledge base, such as the height of a tree.
+   *
+   * @return A short description of the knowledge base.
+   */
+   String describe();
+}
@@ -0,0 +1,346 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+* A class that benchmarks the {@link KnowledgeBase} backends on synthetic GenericsKB files.
+* For every backend, dataset size and insertion order it measures loading the file and then
+* the exact lookup, partial match, term and sentence lookup, and update operations, and
+* prints the throughput, the latency percentiles and the number of bytes allocated per
+* operation. For the load the max column holds the total load time, and the allocation only
+* counts the loading thread, so it leaves out the parser threads of a parallel load. The heap row
+* holds the bytes the loaded knowledge base keeps on the heap for each term, measured after a garbage collection.
+* The array backend also prints a heap-core row, without its sentence index, score index and BK-tree, which
+* the columnar backend does without by scanning its columns, so that the two can be compared like for like.
+* The heap of those indexes is measured by building them again over a copy of the entries of the dataset.
+*
+* Options:
+* --backends=array,columnar,bst,skiplist   the backends to compare (any name accepted by {@link KnowledgeBaseMenu#createKnowledgeBase(String)}),
+* --sizes=10000,100000   the number of lines in each dataset (10K to 10M),
+* --orders=sorted,random,skewed   the order of the lines: sorted by term, shuffled, or with a few
+*                                 popular terms repeated many times,
+* --operations=20000     the number of measured calls of each operation (after the same number of warm-up calls),
+* --parallel             loads the files with the parallel loader.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class KnowledgeBaseBenchmark{
+   //the number of different words that terms are made of
+   private static final int VOCABULARY = 1000;
+   //the number of non-null results, written after each measurement so the JIT cannot drop the calls as unused
+   private static volatile long sink;
+
+   private final List<String> backends;
+   private final int operations;
+   private final boolean parallel;
+
+   /**
+   * Constructs a benchmark.
+   *
+   * @param backends The names of the backends to compare.
+   * @param operations The number of measured calls of each operation.
+   * @param parallel Whether files are loaded with the parallel loader.
+   */
+   public KnowledgeBaseBenchmark(List<String> backends, int operations, boolean parallel){
+      this.backends = backends;
+      this.operations = operations;
+      this.parallel = parallel;
+   }
+
+   /**
+   * Runs the benchmark with the options given on the command line.
+   *
+   * @param args The command-line options described in the class comment.
+   * @throws IOException if a dataset cannot be written or loaded
+   */
+   public static void main(String[] args) throws IOException{
+      List<String> backends = Arrays.asList("array", "columnar", "bst", "skiplist");
+      List<String> orders = Arrays.asList("sorted", "random", "skewed");
+      int[] sizes = {10_000, 100_000, 1_000_000};
+      int operations = 20_000;
+      boolean parallel = false;
+
+      for (String arg: args){
+         if (arg.startsWith("--backends=")){
+            backends = Arrays.asList(arg.substring("--backends=".length()).split(","));
+         }
+         else if (arg.startsWith("--orders=")){
+            orders = Arrays.asList(arg.substring("--orders=".length()).split(","));
+         }
+         else if (arg.startsWith("--sizes=")){
+            String[] values = arg.substring("--sizes=".length()).split(",");
+            sizes = new int[values.length];
+            for (int i = 0; i < values.length; i++){
+               sizes[i] = Integer.parseInt(values[i].trim());
+            }
+         }
+         else if (arg.startsWith("--operations=")){
+            operations = Integer.parseInt(arg.substring("--operations=".length()));
+         }
+         else if (arg.equals("--parallel")){
+            parallel = true;
+         }
+         else{
+            System.out.println("Ignoring unknown option: " + arg);
+         }
+      }
+
+      KnowledgeBaseBenchmark benchmark = new KnowledgeBaseBenchmark(backends, operations, parallel);
+      System.out.printf("%-8s %-7s %9s %-12s %14s %10s %10s %10s %12s%n",
+         "backend", "order", "lines", "operation", "ops/second", "p50 (us)", "p99 (us)", "max (us)", "bytes/op");
+      for (int size: sizes){
+         for (String order: orders){
+            File dataset = writeDataset(size, order, new Random(size));
+            try{
+               for (String backend: backends){
+                  benchmark.run(backend, dataset, size, order);
+               }
+            }
+            finally{
+               dataset.delete();
+            }
+         }
+      }
+   }
+
+   /**
+   * Builds the term with the given number, made of up to three words from the vocabulary.
+   * Terms share words with each other, so partial matches return several statements.
+   *
+   * @param id The number of the term.
+   * @return The term.
+   */
+   public static String term(int id){
+      String term = "w" + (id % VOCABULARY);
+      id /= VOCABULARY;
+      while (id > 0){
+         term = term + " w" + (id % VOCABULARY);
+         id /= VOCABULARY;
+      }
+      return term;
+   }
+
+   /**
+   * Writes a synthetic GenericsKB file to a temporary file.
+   *
+   * @param lines The number of lines to write.
+   * @param order "sorted" for lines sorted by term, "random" for shuffled distinct terms,
+   *              or "skewed" for terms drawn so that a few popular terms appear on many lines.
+   * @param random The source of random numbers.
+   * @return The file that was written.
+   * @throws IOException if the file cannot be written
+   */
+   public static File writeDataset(int lines, String order, Random random) throws IOException{
+      String[] terms = new String[lines];
+      for (int i = 0; i < lines; i++){
+         if (order.equals("skewed")){
+            //roughly Zipf distributed: term k is drawn with a probability close to 1/k
+            terms[i] = term((int)Math.floor(Math.pow(lines + 1.0, random.nextDouble())) - 1);
+         }
+         else{
+            terms[i] = term(i);
+         }
+      }
+      if (order.equals("sorted")){
+         Arrays.sort(terms, String.CASE_INSENSITIVE_ORDER);
+      }
+      else if (order.equals("random")){
+         Collections.shuffle(Arrays.asList(terms), random);
+      }
+      else if (!order.equals("skewed")){
+         throw new IllegalArgumentException("Unknown order '" + order + "'. Use sorted, random or skewed.");
+      }
+
+      File file = File.createTempFile("generics-" + order + "-" + lines + "-", ".txt");
+      BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+      try{
+         for (int i = 0; i < lines; i++){
+            writer.write(terms[i]);
+            writer.write("\tThe " + terms[i] + " is statement number " + i + ".\t");
+            writer.write(String.format(Locale.ROOT, "%.4f", random.nextDouble()));
+            writer.newLine();
+         }
+      }
+      finally{
+         writer.close();
+      }
+      return file;
+   }
+
+   /**
+   * Loads a dataset into a new knowledge base and measures each operation on it.
+   *
+   * @param backend The name of the backend.
+   * @param dataset The file to load.
+   * @param lines The number of lines in the file.
+   * @param order The order of the lines in the file.
+   * @throws IOException if the file cannot be loaded
+   */
+   private void run(String backend, File dataset, int lines, String order) throws IOException{
+      long heapBefore = usedHeap();
+      KnowledgeBase knowledgeBase = KnowledgeBaseMenu.createKnowledgeBase(backend);
+      long allocatedBefore = allocatedBytes();
+      LoadResult load = knowledgeBase.load(dataset.getPath(), parallel);
+      long allocated = allocatedBytes() - allocatedBefore;
+      System.out.printf("%-8s %-7s %9d %-12s %14.0f %10s %10s %10.0f %12d%n", backend, order, lines, "load",
+         load.getLinesPerSecond(), "-", "-", load.getSeconds() * 1e6, allocated / Math.max(1, lines));
+      long retained = usedHeap() - heapBefore;
+      System.out.printf("%-8s %-7s %9d %-12s %14s %10s %10s %10s %12d%n", backend, order, lines, "heap",
+         "-", "-", "-", "-", retained / Math.max(1, knowledgeBase.size()));
+      if (knowledgeBase instanceof GenericsKbArrayApp){
+         System.out.printf("%-8s %-7s %9d %-12s %14s %10s %10s %10s %12d%n", backend, order, lines, "heap-core",
+            "-", "-", "-", "-", (retained - scanIndexHeap(dataset)) / Math.max(1, knowledgeBase.size()));
+      }
+
+      int terms = knowledgeBase.size();
+      Random random = new Random(42);
+      //the queried terms are mostly present, with one in ten missing
+      String[] queries = new String[operations];
+      for (int i = 0; i < operations; i++){
+         int id = random.nextInt(Math.max(1, lines));
+         queries[i] = (i % 10 == 9) ? "missing " + id : term(id);
+      }
+      String[] words = new String[operations];
+      for (int i = 0; i < operations; i++){
+         words[i] = "w" + random.nextInt(VOCABULARY);
+      }
+
+      measure(backend, order, lines, "lookup", i -> knowledgeBase.lookup(queries[i]));
+      measure(backend, order, lines, "partial", i -> knowledgeBase.partialMatches(words[i]));
+      measure(backend, order, lines, "term+sent", i -> knowledgeBase.lookupTermAndSentence(queries[i], "statement number"));
+      measure(backend, order, lines, "update", i -> knowledgeBase.addOrUpdate(queries[i], "An updated statement.", 0.5));
+      if (terms != knowledgeBase.size()){
+         System.out.printf("%-8s %-7s %9d (the updates added %d terms)%n", backend, order, lines, knowledgeBase.size() - terms);
+      }
+   }
+
+   /**
+   * An operation on the knowledge base, called with the number of the call.
+   */
+   private interface Operation{
+      Object call(int i);
+   }
+
+   /**
+   * Warms up an operation, then times each call and prints the throughput, latency and allocation.
+   *
+   * @param backend The name of the backend.
+   * @param order The order of the loaded lines.
+   * @param lines The number of loaded lines.
+   * @param name The name of the operation.
+   * @param operation The operation to measure.
+   */
+   private void measure(String backend, String order, int lines, String name, Operation operation){
+      long consumed = 0;
+      for (int i = 0; i < operations; i++){
+         consumed += (operation.call(i) == null) ? 0 : 1;
+      }
+
+      long[] latencies = new long[operations];
+      long allocatedBefore = allocatedBytes();
+      long start = System.nanoTime();
+      for (int i = 0; i < operations; i++){
+         long callStart = System.nanoTime();
+         consumed += (operation.call(i) == null) ? 0 : 1;
+         latencies[i] = System.nanoTime() - callStart;
+      }
+      long elapsed = System.nanoTime() - start;
+      long allocated = allocatedBytes() - allocatedBefore;
+
+      Arrays.sort(latencies);
+      System.out.printf("%-8s %-7s %9d %-12s %14.0f %10.2f %10.2f %10.2f %12d%n", backend, order, lines, name,
+         operations / (elapsed / 1e9), latencies[operations / 2] / 1e3, latencies[(int)(operations * 0.99)] / 1e3,
+         latencies[operations - 1] / 1e3, allocated / operations);
+      sink = consumed;
+   }
+
+   /**
+   * Measures the heap held by the sentence index, score index and BK-tree of {@link GenericsKbArrayApp}
+   * for a dataset. The entries of the dataset are read into Generics objects first, as the array backend
+   * stores them, and the heap is measured before and after the three indexes are built over them.
+   *
+   * @param dataset The file to read.
+   * @return The number of bytes held by the three indexes.
+   * @throws IOException if the file cannot be read
+   */
+   private static long scanIndexHeap(File dataset) throws IOException{
+      Map<String, Generics> entries = new LinkedHashMap<>();
+      //each entry with the lower-case form of each of its sentences, as the sentence index holds them
+      List<Generics> sentenceEntries = new ArrayList<>();
+      List<String> foldedSentences = new ArrayList<>();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(dataset), StandardCharsets.UTF_8));
+      try{
+         RecordParser parser = new RecordParser();
+         String line;
+         long lineNumber = 0;
+         while ((line = reader.readLine()) != null){
+            if (!parser.parse(line, ++lineNumber)){
+               continue;
+            }
+            String folded = SentenceIndex.fold(parser.getSentence());
+            Generics data = entries.get(parser.getTerm().toLowerCase(Locale.ROOT));
+            if (data == null){
+               data = new Generics(parser.getTerm(), parser.getSentence(), parser.getScore());
+               entries.put(parser.getTerm().toLowerCase(Locale.ROOT), data);
+               folded = data.getFoldedSentence(0);
+            }
+            else if (!data.update(parser.getSentence(), folded, parser.getScore())){
+               continue;
+            }
+            sentenceEntries.add(data);
+            foldedSentences.add(folded);
+         }
+      }
+      finally{
+         reader.close();
+      }
+
+      long before = usedHeap();
+      SentenceIndex<Generics> sentenceIndex = new SentenceIndex<>();
+      for (int i = 0; i < sentenceEntries.size(); i++){
+         sentenceIndex.addFolded(sentenceEntries.get(i), foldedSentences.get(i));
+      }
+      ScoreIndex<Generics> scoreIndex = new ScoreIndex<>();
+      BKTree<Generics> fuzzyIndex = new BKTree<>();
+      for (Generics data: entries.values()){
+         scoreIndex.add(data, data.getScore());
+         fuzzyIndex.add(data.getTerm(), data);
+      }
+      long indexes = usedHeap() - before;
+      //the indexes must stay reachable until the heap has been measured
+      Reference.reachabilityFence(sentenceIndex);
+      Reference.reachabilityFence(scoreIndex);
+      Reference.reachabilityFence(fuzzyIndex);
+      return indexes;
+   }
+
+   /**
+   * Collects the garbage and retrieves the number of bytes of the heap in use, which is then held by reachable objects.
+   *
+   * @return The number of bytes in use.
+   */
+   private static long usedHeap(){
+      Runtime runtime = Runtime.getRuntime();
+      //a second collection frees what the first one only finalized or promoted
+      System.gc();
+      System.gc();
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+
+   /**
+   * Retrieves the number of bytes allocated by the current thread, if the JVM reports it.
+   *
+   * @return The number of bytes allocated so far, or 0 if it is not available.
+   */
+   private static long allocatedBytes(){
+      java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if (threads instanceof com.sun.management.ThreadMXBean){
+         return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+      return 0;
+   }
+}
@@ -0,0 +1,199 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* A program that sends queries to a {@link KnowledgeBaseServer} from several connections at once
+* and reports the request rate and the latency percentiles seen by the clients, followed by the
+* report of the server itself.
+*
+* Each connection sends its queries in windows: a whole window is written before any response is
+* read, so up to a window of queries is pipelined at a time. The latency of a query runs from the
+* moment its window is flushed to the moment its response has been read.
+*
+* Options:
+* --host=localhost   the host of the server,
+* --port=7070        the port of the server,
+* --connections=8    the number of connections, each with its own thread,
+* --requests=100000  the number of queries sent by each connection,
+* --pipeline=16      the number of queries in each window (1 sends one query at a time),
+* --queries=FILE     a file of queries in the format of {@link BatchQueryRunner}, sent in turn. By default
+*                    each query is an exact lookup of a random term of {@link KnowledgeBaseBenchmark#term(int)}
+* --range=100000     from the terms numbered below this value.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class KnowledgeBaseLoadGenerator{
+   private final String host;
+   private final int port, requests, pipeline;
+   private final List<String> queries;
+   private final int range;
+   private final LatencyHistogram latencies = new LatencyHistogram();
+   private final AtomicLong errors = new AtomicLong();
+
+   /**
+   * Constructs a load generator.
+   *
+   * @param host The host of the server.
+   * @param port The port of the server.
+   * @param requests The number of queries sent by each connection.
+   * @param pipeline The number of queries in each window.
+   * @param queries The queries to send in turn, or null to look up random terms.
+   * @param range The number of different terms looked up when no queries are given.
+   */
+   public KnowledgeBaseLoadGenerator(String host, int port, int requests, int pipeline, List<String> queries, int range){
+      this.host = host;
+      this.port = port;
+      this.requests = requests;
+      this.pipeline = Math.max(1, pipeline);
+      this.queries = queries;
+      this.range = range;
+   }
+
+   /**
+   * Runs the load generator with the options given on the command line.
+   *
+   * @param args The command-line options described in the class comment.
+   * @throws IOException if the query file cannot be read or the server cannot be reached
+   * @throws InterruptedException if the program is interrupted while waiting for the connections
+   */
+   public static void main(String[] args) throws IOException, InterruptedException{
+      String host = "localhost", queryFile = null;
+      int port = 7070, connections = 8, requests = 100_000, pipeline = 16, range = 100_000;
+      for (String arg: args){
+         if (arg.startsWith("--host=")){
+            host = arg.substring("--host=".length());
+         }
+         else if (arg.startsWith("--port=")){
+            port = Integer.parseInt(arg.substring("--port=".length()));
+         }
+         else if (arg.startsWith("--connections=")){
+            connections = Integer.parseInt(arg.substring("--connections=".length()));
+         }
+         else if (arg.startsWith("--requests=")){
+            requests = Integer.parseInt(arg.substring("--requests=".length()));
+         }
+         else if (arg.startsWith("--pipeline=")){
+            pipeline = Integer.parseInt(arg.substring("--pipeline=".length()));
+         }
+         else if (arg.startsWith("--queries=")){
+            queryFile = arg.substring("--queries=".length());
+         }
+         else if (arg.startsWith("--range=")){
+            range = Integer.parseInt(arg.substring("--range=".length()));
+         }
+         else{
+            System.out.println("Ignoring unknown option: " + arg);
+         }
+      }
+
+      List<String> queries = null;
+      if (queryFile != null){
+         queries = new ArrayList<>();
+         for (String line: Files.readAllLines(Paths.get(queryFile), StandardCharsets.UTF_8)){
+            if (!line.trim().isEmpty() && !line.startsWith("#")){
+               queries.add(line);
+            }
+         }
+      }
+      new KnowledgeBaseLoadGenerator(host, port, requests, pipeline, queries, range).run(connections);
+   }
+
+   /**
+   * Sends the queries from every connection at once and prints the results.
+   *
+   * @param connections The number of connections.
+   * @throws IOException if the server cannot be reached for its report
+   * @throws InterruptedException if the program is interrupted while waiting for the connections
+   */
+   public void run(int connections) throws IOException, InterruptedException{
+      List<Thread> threads = new ArrayList<>();
+      long startTime = System.nanoTime();
+      for (int c = 0; c < connections; c++){
+         long seed = c;
+         Thread thread = new Thread(() -> {
+            try{
+               sendQueries(new Random(seed));
+            }
+            catch(IOException e){
+               System.out.println(Thread.currentThread().getName() + " failed: " + e.getMessage());
+               errors.incrementAndGet();
+            }
+         }, "connection-" + c);
+         threads.add(thread);
+         thread.start();
+      }
+      for (Thread thread: threads){
+         thread.join();
+      }
+      double seconds = (System.nanoTime() - startTime) / 1e9;
+      long count = latencies.getCount();
+      System.out.printf("%d requests on %d connections with a pipeline of %d in %.3f seconds (%.0f requests/second), %d failed connections.%n",
+         count, connections, pipeline, seconds, count / seconds, errors.get());
+      System.out.printf("Client latency: p50 %.2f us, p99 %.2f us, p99.9 %.2f us, max %.2f us.%n", latencies.getPercentile(0.5) / 1e3,
+         latencies.getPercentile(0.99) / 1e3, latencies.getPercentile(0.999) / 1e3, latencies.getPercentile(1.0) / 1e3);
+
+      Socket socket = new Socket(host, port);
+      try{
+         Writer output = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+         output.write("stats\nquit\n");
+         output.flush();
+         BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+         System.out.println("Server: " + input.readLine());
+      }
+      finally{
+         socket.close();
+      }
+   }
+
+   /**
+   * Sends the queries of one connection window by window, timing each one.
+   *
+   * @param random The source of the terms looked up, or of the first query sent.
+   * @throws IOException if the connection fails
+   */
+   private void sendQueries(Random random) throws IOException{
+      Socket socket = new Socket(host, port);
+      try{
+         socket.setTcpNoDelay(true);
+         BufferedWriter output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+         BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+         int next = (queries == null) ? 0 : random.nextInt(queries.size());
+         for (int sent = 0; sent < requests; sent += pipeline){
+            int window = Math.min(pipeline, requests - sent);
+            for (int i = 0; i < window; i++){
+               if (queries == null){
+                  output.write("lookup\t" + KnowledgeBaseBenchmark.term(random.nextInt(range)));
+               }
+               else{
+                  output.write(queries.get(next));
+                  next = (next + 1) % queries.size();
+               }
+               output.write('\n');
+            }
+            output.flush();
+            long flushed = System.nanoTime();
+            for (int i = 0; i < window; i++){
+               //a response ends with an empty line
+               String line;
+               while ((line = input.readLine()) != null && !line.isEmpty()){}
+               if (line == null){
+                  throw new EOFException("The server closed the connection.");
+               }
+               latencies.record(System.nanoTime() - flushed);
+            }
+         }
+         output.write("quit\n");
+         output.flush();
+      }
+      finally{
+         socket.close();
+      }
+   }
+}
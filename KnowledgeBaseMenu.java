@@ -0,0 +1,644 @@
+import java.util.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+* A class providing the console menu for a {@link KnowledgeBase}. The menu only reads the
+* user's input and prints the results, so the same menu is used for every backend.
+*
+* The programs are started through {@link GenericsKbArrayApp}, {@link GenericsKbColumnarApp}, {@link GenericsKbBSTApp}
+* or {@link GenericsKbSkipListApp}, and accept the following command-line options:
+* --backend=array|columnar|bst|skiplist chooses the data structure holding the knowledge base,
+* --parallel loads files with the parallel memory-mapped loader, and
+* --stats collects statistics about the operations from the start. The statistics are shown by
+* a menu option and published through JMX, where they can also be switched on or off, and
+* --cache=N caches up to N results of exact lookups and of partial matches, and
+* --snapshot=FILE loads a snapshot saved through the menu before the menu is shown.
+* --wal=FILE appends every update to a {@link WriteAheadLog} and replays it over each file or
+* snapshot that is loaded, and over the empty knowledge base at startup, and
+* --wal-sync=MS switches the log from group commit, where an update is only applied once it is on disk,
+* to periodic sync every MS milliseconds, which is faster but loses the updates of about the last
+* interval in a crash or power failure (default 0, group commit),
+* --load=FILE loads a GenericsKB file before the menu is shown, if no snapshot is given, and
+* --merge=FILE then applies an update file to it without replacing what was loaded, as menu option 10 does,
+* --batch=FILE answers a file of queries with a {@link BatchQueryRunner} instead of showing the menu,
+* writing the results to --output=FILE (or the console) with --threads=N worker threads, and
+* --serve=PORT serves the knowledge base over TCP with a {@link KnowledgeBaseServer} instead of
+* showing the menu, until the program is stopped.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class KnowledgeBaseMenu{
+   //the default time between syncs of the update log in milliseconds, 0 for group commit
+   private static final long DEFAULT_SYNC_INTERVAL = 0;
+
+   private KnowledgeBase knowledgeBase;
+   private boolean parallelLoad;
+   //the knowledge base logging the updates, or null if there is no update log
+   private LoggingKnowledgeBase updateLog;
+
+   /**
+   * Constructs a menu for a knowledge base.
+   *
+   * @param knowledgeBase The knowledge base the menu works on.
+   * @param parallelLoad Whether files are memory-mapped and parsed in parallel.
+   */
+   public KnowledgeBaseMenu(KnowledgeBase knowledgeBase, boolean parallelLoad){
+      this(knowledgeBase, parallelLoad, null);
+   }
+
+   /**
+   * Constructs a menu for a knowledge base whose updates are logged.
+   *
+   * @param knowledgeBase The knowledge base the menu works on.
+   * @param parallelLoad Whether files are memory-mapped and parsed in parallel.
+   * @param updateLog The knowledge base logging the updates, which may be wrapped by knowledgeBase, or null.
+   */
+   public KnowledgeBaseMenu(KnowledgeBase knowledgeBase, boolean parallelLoad, LoggingKnowledgeBase updateLog){
+      this.knowledgeBase = knowledgeBase;
+      this.parallelLoad = parallelLoad;
+      this.updateLog = updateLog;
+   }
+
+   /**
+   * Creates an empty knowledge base of the named type.
+   *
+   * @param backend The name of the backend: "array", "columnar", "bst" or "skiplist".
+   * @return The new knowledge base.
+   * @throws IllegalArgumentException if the name is not a known backend.
+   */
+   public static KnowledgeBase createKnowledgeBase(String backend){
+      switch(backend.toLowerCase(Locale.ROOT)){
+         case "array":
+            return new GenericsKbArrayApp();
+         case "columnar":
+            return new GenericsKbColumnarApp();
+         case "bst":
+            return new GenericsKbBSTApp();
+         case "skiplist":
+            return new GenericsKbSkipListApp();
+         default:
+            throw new IllegalArgumentException("Unknown backend '" + backend + "'. Use array, columnar, bst or skiplist.");
+      }
+   }
+
+   /**
+   * Reads the command-line options, creates the chosen knowledge base and displays the menu
+   * until the user quits, closing the scanner afterward.
+   *
+   * @param args The command-line arguments.
+   * @param defaultBackend The backend used when --backend is not given.
+   */
+   public static void run(String[] args, String defaultBackend){
+      String backend = defaultBackend;
+      boolean parallel = false, collectStats = false;
+      int cacheSize = 0;
+      String snapshot = null, logFile = null, loadFile = null, mergeFile = null, batchFile = null, outputFile = null;
+      int threads = Runtime.getRuntime().availableProcessors(), port = -1;
+      long syncInterval = DEFAULT_SYNC_INTERVAL;
+      for (String arg: args){
+         if (arg.equals("--parallel")){
+            parallel = true;
+         }
+         else if (arg.equals("--stats")){
+            collectStats = true;
+         }
+         else if (arg.startsWith("--cache=")){
+            try{
+               cacheSize = Integer.parseInt(arg.substring("--cache=".length()));
+            }
+            catch(NumberFormatException e){
+               System.out.println("Ignoring invalid cache size: " + arg);
+            }
+         }
+         else if (arg.startsWith("--snapshot=")){
+            snapshot = arg.substring("--snapshot=".length());
+         }
+         else if (arg.startsWith("--wal=")){
+            logFile = arg.substring("--wal=".length());
+         }
+         else if (arg.startsWith("--wal-sync=")){
+            try{
+               syncInterval = Long.parseLong(arg.substring("--wal-sync=".length()));
+            }
+            catch(NumberFormatException e){
+               System.out.println("Ignoring invalid sync interval: " + arg);
+            }
+         }
+         else if (arg.startsWith("--load=")){
+            loadFile = arg.substring("--load=".length());
+         }
+         else if (arg.startsWith("--merge=")){
+            mergeFile = arg.substring("--merge=".length());
+         }
+         else if (arg.startsWith("--batch=")){
+            batchFile = arg.substring("--batch=".length());
+         }
+         else if (arg.startsWith("--output=")){
+            outputFile = arg.substring("--output=".length());
+         }
+         else if (arg.startsWith("--serve=")){
+            try{
+               port = Integer.parseInt(arg.substring("--serve=".length()));
+            }
+            catch(NumberFormatException e){
+               System.out.println("Ignoring invalid port: " + arg);
+            }
+         }
+         else if (arg.startsWith("--threads=")){
+            try{
+               threads = Integer.parseInt(arg.substring("--threads=".length()));
+            }
+            catch(NumberFormatException e){
+               System.out.println("Ignoring invalid number of threads: " + arg);
+            }
+         }
+         else if (arg.startsWith("--backend=")){
+            backend = arg.substring("--backend=".length());
+         }
+         else{
+            System.out.println("Ignoring unknown option: " + arg);
+         }
+      }
+
+      KnowledgeBase knowledgeBase;
+      try{
+         knowledgeBase = createKnowledgeBase(backend);
+      }
+      catch(IllegalArgumentException e){
+         System.out.println(e.getMessage());
+         return;
+      }
+      LoggingKnowledgeBase updateLog = null;
+      if (logFile != null){
+         try{
+            updateLog = new LoggingKnowledgeBase(knowledgeBase, new WriteAheadLog(logFile, syncInterval));
+         }
+         catch(IOException e){
+            System.out.println("Update log '" + logFile + "' could not be opened: " + e.getMessage());
+            return;
+         }
+         knowledgeBase = updateLog;
+      }
+      if (cacheSize > 0){
+         knowledgeBase = new CachingKnowledgeBase(knowledgeBase, cacheSize);
+      }
+      knowledgeBase.getStats().setEnabled(collectStats);
+      knowledgeBase.getStats().register(backend);
+
+      KnowledgeBaseMenu menu = new KnowledgeBaseMenu(knowledgeBase, parallel, updateLog);
+      if (snapshot != null){
+         //the update log is replayed over the snapshot
+         menu.loadSnapshot(snapshot);
+      }
+      else if (loadFile != null){
+         //the update log is replayed over the file
+         menu.loadFile(loadFile);
+      }
+      else if (updateLog != null){
+         try{
+            updateLog.recover();
+         }
+         catch(IOException e){
+            System.out.println("Update log '" + logFile + "' could not be read: " + e.getMessage());
+         }
+      }
+      if (mergeFile != null){
+         menu.mergeFile(mergeFile);
+      }
+      if (port >= 0){
+         //the server's connections run at the same time, so only the skip list can be shared without a lock
+         if (!(backend.equalsIgnoreCase("skiplist") && cacheSize == 0)){
+            knowledgeBase = new ConcurrentKnowledgeBase(knowledgeBase, cacheSize == 0);
+         }
+         serve(knowledgeBase, port, updateLog);
+         return;
+      }
+      if (batchFile != null){
+         runBatch(knowledgeBase, batchFile, outputFile, threads);
+      }
+      else{
+         Scanner scanner = new Scanner(System.in);
+         menu.displayMenu(scanner);
+         scanner.close();
+      }
+      if (updateLog != null){
+         try{
+            updateLog.close();
+         }
+         catch(IOException e){
+            System.out.println("Update log '" + logFile + "' could not be closed: " + e.getMessage());
+         }
+      }
+   }
+
+   /**
+   * Prints how long a load took and describes the loaded knowledge base.
+   *
+   * @param result The result of the load.
+   * @param unit What was loaded, such as "lines" or "entries".
+   */
+   private void printLoadResult(LoadResult result, String unit){
+      System.out.printf("%nLoaded %d %s (%d terms) in %.3f seconds (%.0f %s/second).%n",
+         result.getLines(), unit, result.getSize(), result.getSeconds(), result.getLinesPerSecond(), unit);
+      System.out.println(knowledgeBase.describe());
+      System.out.println("Knowledge base loaded successfully.\n");
+   }
+
+   /**
+   * Serves a knowledge base until the program is stopped, then closes the server and the update log.
+   *
+   * @param knowledgeBase The knowledge base, which must be safe for use by several threads.
+   * @param port The port to listen on.
+   * @param updateLog The knowledge base logging the updates, or null.
+   */
+   private static void serve(KnowledgeBase knowledgeBase, int port, LoggingKnowledgeBase updateLog){
+      KnowledgeBaseServer server;
+      try{
+         server = new KnowledgeBaseServer(knowledgeBase, port);
+      }
+      catch(IOException e){
+         System.out.println("Port " + port + " could not be opened: " + e.getMessage());
+         return;
+      }
+      //the server runs until the program is interrupted
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+         try{
+            server.close();
+            if (updateLog != null){
+               updateLog.close();
+            }
+         }
+         catch(IOException e){
+            System.out.println("The server could not be closed: " + e.getMessage());
+         }
+      }));
+      try{
+         server.serve();
+      }
+      catch(IOException e){
+         System.out.println("The server stopped: " + e.getMessage());
+      }
+   }
+
+   /**
+   * Answers a file of queries, printing the reason if it fails.
+   *
+   * @param knowledgeBase The knowledge base the queries are run on.
+   * @param batchFile The name of the query file.
+   * @param outputFile The name of the file the results are written to, or null to print them.
+   * @param threads The number of worker threads.
+   */
+   private static void runBatch(KnowledgeBase knowledgeBase, String batchFile, String outputFile, int threads){
+      Writer output = null;
+      try{
+         output = (outputFile == null) ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+            : new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8);
+         new BatchQueryRunner(knowledgeBase, threads).run(batchFile, output);
+      }
+      catch(FileNotFoundException e){
+         System.out.println("File '" + e.getMessage() + "' not found.");
+      }
+      catch(IOException e){
+         System.out.println("The queries in '" + batchFile + "' could not be answered: " + e.getMessage());
+      }
+      catch(UncheckedIOException e){
+         System.out.println("An update in '" + batchFile + "' could not be logged: " + e.getCause().getMessage());
+      }
+      finally{
+         if (output != null && outputFile != null){
+            try{
+               output.close();
+            }
+            catch(IOException e){
+               System.out.println("File '" + outputFile + "' could not be closed: " + e.getMessage());
+            }
+         }
+      }
+   }
+
+   /**
+   * Loads a GenericsKB file, printing the result or the reason it failed.
+   *
+   * @param fileName The name of the file.
+   */
+   private void loadFile(String fileName){
+      try{
+         printLoadResult(knowledgeBase.load(fileName, parallelLoad), "lines");
+      }
+      catch(FileNotFoundException e){
+         //Handles the case where the file is not found
+         System.out.println("\nFile '" + fileName + "' not found.\n");
+      }
+      catch(IOException e){
+         //Handles the case where the file cannot be read
+         System.out.println("\nFile '" + fileName + "' could not be read: " + e.getMessage() + "\n");
+      }
+   }
+
+   /**
+   * Merges an update file into the knowledge base, printing how many terms were added and updated or the reason it failed.
+   *
+   * @param fileName The name of the update file.
+   */
+   private void mergeFile(String fileName){
+      try{
+         MergeResult result = knowledgeBase.merge(UpdateBatch.read(fileName, parallelLoad));
+         System.out.printf("%nMerged %d lines in %.3f seconds: %d terms added, %d updates to existing terms, %d terms in total.%n",
+            result.getLines(), result.getSeconds(), result.getAdded(), result.getUpdated(), result.getSize());
+         System.out.println(knowledgeBase.describe() + "\n");
+      }
+      catch(FileNotFoundException e){
+         System.out.println("\nFile '" + fileName + "' not found.\n");
+      }
+      catch(IOException e){
+         System.out.println("\nFile '" + fileName + "' could not be read: " + e.getMessage() + "\n");
+      }
+      catch(UncheckedIOException e){
+         System.out.println("\nThe updates in '" + fileName + "' could not be logged: " + e.getCause().getMessage() + "\n");
+      }
+   }
+
+   /**
+   * Replaces the knowledge base with a snapshot, printing the result or the reason it failed.
+   *
+   * @param fileName The name of the snapshot file.
+   */
+   private void loadSnapshot(String fileName){
+      try{
+         printLoadResult(knowledgeBase.loadSnapshot(fileName), "entries");
+      }
+      catch(FileNotFoundException e){
+         System.out.println("\nSnapshot '" + fileName + "' not found.\n");
+      }
+      catch(IOException e){
+         System.out.println("\nSnapshot '" + fileName + "' could not be read: " + e.getMessage() + "\n");
+      }
+   }
+
+   /**
+   * Prints a list of partial matches, if there are any.
+   *
+   * @param matches The partial matches to print.
+   */
+   private static void printPartialMatches(List<Statement> matches){
+      if (!matches.isEmpty()){
+         //prints out the partial matches if they are found
+         System.out.println("Partial matches are: ");
+         for (Statement result: matches){
+            System.out.println(result);
+         }
+         System.out.println();
+      }
+   }
+
+   /**
+   * Prints the statements of a term other than its best one, if it has any.
+   *
+   * @param statements The statements of the term, highest score first.
+   */
+   private static void printOtherStatements(List<Statement> statements){
+      if (statements.size() > 1){
+         System.out.println("Other statements: ");
+         for (Statement statement: statements.subList(1, statements.size())){
+            System.out.println(statement.getSentence() + " (Confidence score: " + statement.getScore() + ")");
+         }
+         System.out.println();
+      }
+   }
+
+   /**
+   * Prints the closest stored terms to a term that was not found, if there are any.
+   *
+   * @param suggestions The statements of the close terms, closest first.
+   */
+   private static void printSuggestions(List<Statement> suggestions){
+      if (!suggestions.isEmpty()){
+         System.out.println("Did you mean: ");
+         //only the closest few are worth reading
+         for (Statement suggestion: suggestions.subList(0, Math.min(5, suggestions.size()))){
+            System.out.println(suggestion);
+         }
+         System.out.println();
+      }
+   }
+
+   /**
+   * Displays a menu for the user to interact with the knowledge base.
+   * The user can choose actions like loading a knowledge base, adding a new statement,
+   * searching for items, and quitting the program.
+   *
+   * @param input The scanner object for user input.
+   **/
+   public void displayMenu(Scanner input){
+      int choice;
+      do{
+         System.out.println("Choose an action from the menu:");
+         System.out.println("1. Load a knowledge base from a file");
+         System.out.println("2. Add a new statement to the knowledge base");
+         System.out.println("3. Search for an item in the knowledge base by term");
+         System.out.println("4. Search for a item in the knowledge base by term and sentence");
+         System.out.println("5. Search for statements containing a phrase");
+         System.out.println("6. Show operation statistics");
+         System.out.println("7. Save a snapshot of the knowledge base");
+         System.out.println("8. Load a knowledge base from a snapshot");
+         System.out.println("9. Compact the update log into a snapshot");
+         System.out.println("10. Apply an update file to the knowledge base");
+         System.out.println("11. Quit");
+
+         System.out.print("Enter your choice: ");
+
+         if (input.hasNextInt()){
+
+            choice = input.nextInt();
+            input.nextLine();//consumes newLine charachter
+            System.out.println();
+
+            switch(choice){
+               case 1:
+                  System.out.print("Enter File name: ");
+                  String fileName = input.nextLine();
+                  loadFile(fileName);
+                  break;
+
+               case 2:
+                  //Add a new statement to the knowledge base
+                  System.out.print("Enter the term: ");
+                  String term = input.nextLine();
+                  System.out.print("Enter the statement: ");
+                  String statement = input.nextLine();
+                  System.out.print("Enter the confidence score: ");
+                  double score = input.nextDouble();
+                  UpdateResult update;
+                  try{
+                     update = knowledgeBase.addOrUpdate(term, statement, score);
+                  }
+                  catch(UncheckedIOException e){
+                     System.out.println("The update could not be logged, so it was not made: " + e.getCause().getMessage() + "\n");
+                     break;
+                  }
+                  switch(update.getStatus()){
+                     case ADDED:
+                        System.out.println("New node with the term " + term + " added to the knowledge base.\n");
+                        break;
+                     case UPDATED:
+                        System.out.println("Statement for term " + term + " has been updated.\n");
+                        break;
+                     default:
+                        if (knowledgeBase.size() == 0){
+                           System.out.println("No knowledge base loaded. Please load a knowledge base first.\n");
+                        }
+                        else{
+                           System.out.println("The term " + term + " is not found in the knowledge base\n");
+                        }
+                  }
+                  break;
+
+               case 3:
+                  //Search for an item in the knowledge base by term
+                  if (knowledgeBase.size() != 0){
+                     System.out.print("Enter the term to search: ");
+                     String searchTerm = input.nextLine();
+                     Statement found = knowledgeBase.lookup(searchTerm);
+                     if (found != null){
+                        // Print the statement and confidence score if the term is found.
+                        System.out.println("Statement found: " + found.getSentence() + " (Confidence score: " + found.getScore() + ").\n");
+                        //the best statement and a few more, as a term can have many
+                        printOtherStatements(knowledgeBase.lookupAll(searchTerm, 6));
+                     }
+                     else{
+                        System.out.println("No statement found for term: " + searchTerm + ".\n");
+                        printSuggestions(knowledgeBase.fuzzyLookup(searchTerm, BatchQueryRunner.FUZZY_DISTANCE));
+                     }
+                     //retrieves partial matches of the item
+                     printPartialMatches(knowledgeBase.partialMatches(searchTerm));
+                  }
+                  else{
+                     System.out.println("No knowledge base loaded. Please load a knowledge base first.\n");
+                  }
+                  break;
+
+               case 4:
+                  //Search for an item in the knowledge base by term and sentence
+                  if (knowledgeBase.size() != 0){
+                     System.out.print("Enter the term: ");
+                     String termForSearch = input.nextLine();
+                     System.out.print("Enter the statement to search for: ");
+                     String sentence = input.nextLine();
+                     Statement match = knowledgeBase.lookupTermAndSentence(termForSearch, sentence);
+                     if (match != null){
+                        System.out.println("The statement was found and has a confidence score of " + match.getScore() + ".\n");
+                     }
+                     else if (knowledgeBase.lookup(termForSearch) == null){
+                        System.out.println("The term was not found in the knowledge base.\n");
+                     }
+                     else{
+                        System.out.println("The sentence was not found in the knowledge base.\n");
+                     }
+                     printPartialMatches(knowledgeBase.partialMatches(termForSearch));
+                  }
+                  else{
+                     System.out.println("No knowledge base loaded. Please load a knowledge base first.\n");
+                  }
+                  break;
+
+               case 5:
+                  //Search for every statement whose sentence contains a phrase
+                  if (knowledgeBase.size() != 0){
+                     System.out.print("Enter the phrase to search for: ");
+                     String phrase = input.nextLine();
+                     List<Statement> results = knowledgeBase.searchStatements(phrase);
+                     if (results.isEmpty()){
+                        System.out.println("No statements found containing: " + phrase + ".\n");
+                     }
+                     else{
+                        System.out.println(results.size() + " statements found containing: " + phrase + ".");
+                        for (Statement result: results){
+                           System.out.println(result);
+                        }
+                        System.out.println();
+                     }
+                  }
+                  else{
+                     System.out.println("No knowledge base loaded. Please load a knowledge base first.\n");
+                  }
+                  break;
+
+               case 6:
+                  //Show the comparison counts and latency percentiles of each operation
+                  KnowledgeBaseStats stats = knowledgeBase.getStats();
+                  System.out.println(knowledgeBase.describe());
+                  if (!stats.isEnabled()){
+                     System.out.println("Statistics are disabled. Start the program with --stats or enable them through JMX.\n");
+                  }
+                  else{
+                     System.out.println(stats.getReport());
+                  }
+                  break;
+                  
+               case 7:
+                  //Save the knowledge base in the binary snapshot format
+                  System.out.print("Enter the snapshot file name: ");
+                  String snapshotName = input.nextLine();
+                  try{
+                     long startTime = System.nanoTime();
+                     knowledgeBase.saveSnapshot(snapshotName);
+                     System.out.printf("Saved %d terms to '%s' in %.3f seconds.%n%n", knowledgeBase.size(), snapshotName,
+                        (System.nanoTime() - startTime) / 1e9);
+                  }
+                  catch(IOException e){
+                     System.out.println("Snapshot '" + snapshotName + "' could not be saved: " + e.getMessage() + "\n");
+                  }
+                  break;
+
+               case 8:
+                  //Replace the knowledge base with a snapshot, without parsing the text file again
+                  System.out.print("Enter the snapshot file name: ");
+                  loadSnapshot(input.nextLine());
+                  break;
+
+               case 9:
+                  //Save every logged update in a snapshot, which becomes the base the log applies to
+                  if (updateLog == null){
+                     System.out.println("No update log in use. Start the program with --wal=FILE.\n");
+                     break;
+                  }
+                  System.out.print("Enter the snapshot file name: ");
+                  String compactName = input.nextLine();
+                  try{
+                     updateLog.compact(compactName);
+                     System.out.println("The update log was saved to '" + compactName + "' and emptied. Start the program with --snapshot="
+                        + compactName + " from now on.\n");
+                  }
+                  catch(IOException e){
+                     System.out.println("The update log could not be compacted: " + e.getMessage() + "\n");
+                  }
+                  break;
+
+               case 10:
+                  //Merge a file of updates into the knowledge base, keeping what is already stored
+                  System.out.print("Enter the update file name: ");
+                  mergeFile(input.nextLine());
+                  break;
+
+               case 11:
+                  //Exit program once the user chooses quit
+                  System.out.println("Exiting the program. Goodbye!");
+                  break;
+
+               default:
+                 System.out.println("Invalid choice. Please enter a number between 1 and 11.\n");
+                 break;
+            }
+         }
+         else{
+            System.out.println("Invalid choice. Please enter a number from 1 to 11.\n");
+            input.nextLine(); // Consume invalid input
+            choice = 0; // Set choice to an invalid value to continue the loop
+         }
+      }
+      while (choice!=11); //loop until the user quits the program
+   }
+}
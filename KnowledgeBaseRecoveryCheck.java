@@ -0,0 +1,211 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+/**
+* A program that checks that every backend recovers the updates and merges recorded in a {@link WriteAheadLog}.
+*
+* For each backend it loads a dataset through a {@link LoggingKnowledgeBase}, updates a term, merges a batch
+* that adds new terms and updates loaded ones, and closes the log. It then loads the same dataset into a new
+* knowledge base over the same log, as the program does at startup, and checks that every term touched
+* holds the same statements as before and that the new terms are found. Finally it merges another batch,
+* cuts the log off in the middle of that batch, as a crash while it was being logged would, and checks that
+* none of its statements is recovered. The program exits with status 1 if any check fails.
+*
+* Options:
+* --backends=array,columnar,bst,skiplist   the backends to check,
+* --terms=1000           the number of terms loaded from the dataset,
+* --merged=100           the number of new terms in each merged batch.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class KnowledgeBaseRecoveryCheck{
+   private final String backend;
+   private final File dataset;
+   private final int terms, merged;
+   private final List<String> failures = new ArrayList<>();
+
+   /**
+   * Constructs a recovery check of a backend.
+   *
+   * @param backend The name of the backend.
+   * @param dataset The dataset loaded as the base of the log.
+   * @param terms The number of terms in the dataset, numbered from 0.
+   * @param merged The number of new terms in each merged batch.
+   */
+   public KnowledgeBaseRecoveryCheck(String backend, File dataset, int terms, int merged){
+      this.backend = backend;
+      this.dataset = dataset;
+      this.terms = terms;
+      this.merged = merged;
+   }
+
+   /**
+   * Runs the recovery check with the options given on the command line.
+   *
+   * @param args The command-line options described in the class comment.
+   * @throws IOException if the dataset or the log cannot be written or read
+   */
+   public static void main(String[] args) throws IOException{
+      List<String> backends = Arrays.asList("array", "columnar", "bst", "skiplist");
+      int terms = 1000, merged = 100;
+      for (String arg: args){
+         if (arg.startsWith("--backends=")){
+            backends = Arrays.asList(arg.substring("--backends=".length()).split(","));
+         }
+         else if (arg.startsWith("--terms=")){
+            terms = Integer.parseInt(arg.substring("--terms=".length()));
+         }
+         else if (arg.startsWith("--merged=")){
+            merged = Integer.parseInt(arg.substring("--merged=".length()));
+         }
+         else{
+            System.out.println("Ignoring unknown option: " + arg);
+         }
+      }
+
+      File dataset = KnowledgeBaseBenchmark.writeDataset(terms, "random", new Random(terms));
+      boolean passed = true;
+      try{
+         for (String backend: backends){
+            passed &= new KnowledgeBaseRecoveryCheck(backend, dataset, terms, merged).run();
+         }
+      }
+      finally{
+         dataset.delete();
+      }
+      System.exit(passed ? 0 : 1);
+   }
+
+   /**
+   * Logs the updates and merges, recovers them into a new knowledge base and prints the results.
+   *
+   * @return true if every check passed.
+   * @throws IOException if the dataset or the log cannot be written or read
+   */
+   public boolean run() throws IOException{
+      File logFile = File.createTempFile("generics-recovery-", ".log");
+      try{
+         LoggingKnowledgeBase before = open(logFile);
+         before.load(dataset.getPath(), false);
+         before.addOrUpdate(KnowledgeBaseBenchmark.term(0), "An updated statement.", 0.99);
+         UpdateBatch batch = new UpdateBatch();
+         for (int i = 0; i < merged; i++){
+            batch.add(newTerm(i), "A merged statement " + i + ".", 0.5);
+         }
+         //merged statements for loaded terms, which update them like any update
+         batch.add(KnowledgeBaseBenchmark.term(1), "A merged update.", 0.98);
+         batch.add(KnowledgeBaseBenchmark.term(2), "Another merged update.", 0.97);
+         before.merge(batch);
+         Map<String, List<String>> expected = statements(before, batch);
+         int size = before.size();
+         before.close();
+         long logged = logFile.length();
+
+         LoggingKnowledgeBase after = open(logFile);
+         after.load(dataset.getPath(), false);
+         check(after.size() == size, "the recovered knowledge base holds " + after.size() + " terms instead of " + size);
+         check(after.lookup(newTerm(0)) != null, "the merged term '" + newTerm(0) + "' was not recovered");
+         checkStatements(after, expected, "after recovery");
+
+         //a batch cut off in the middle of its records was never merged, so none of its statements is recovered
+         UpdateBatch cutOff = new UpdateBatch();
+         for (int i = 0; i < merged; i++){
+            cutOff.add(newTerm(merged + i), "A merged statement that was cut off.", 0.5);
+         }
+         cutOff.add(KnowledgeBaseBenchmark.term(0), "A cut off update.", 1.0);
+         after.merge(cutOff);
+         after.close();
+         try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")){
+            file.setLength(logged + (file.length() - logged) / 2);
+         }
+
+         LoggingKnowledgeBase crashed = open(logFile);
+         crashed.load(dataset.getPath(), false);
+         check(crashed.size() == size, "after a cut off merge the knowledge base holds " + crashed.size() + " terms instead of " + size);
+         check(crashed.lookup(newTerm(merged)) == null, "a statement of the cut off merge was recovered");
+         checkStatements(crashed, expected, "after a cut off merge");
+         crashed.close();
+      }
+      finally{
+         logFile.delete();
+      }
+
+      System.out.println(backend + ": " + (failures.isEmpty() ? "PASSED" : "FAILED"));
+      for (String failure: failures){
+         System.out.println("   Failed: " + failure);
+      }
+      return failures.isEmpty();
+   }
+
+   /**
+   * Opens a new knowledge base of the checked backend over the log, with group commit.
+   *
+   * @param logFile The log file.
+   * @return The logging knowledge base.
+   * @throws IOException if the log cannot be opened
+   */
+   private LoggingKnowledgeBase open(File logFile) throws IOException{
+      return new LoggingKnowledgeBase(KnowledgeBaseMenu.createKnowledgeBase(backend), new WriteAheadLog(logFile.getPath(), 0));
+   }
+
+   /**
+   * Builds the term added by the merged statement with the given number, which is not in the dataset.
+   *
+   * @param i The number of the merged statement.
+   * @return The term.
+   */
+   private static String newTerm(int i){
+      return "merged " + i;
+   }
+
+   /**
+   * Collects the statements of the terms of a batch and of the updated term, each written as its sentence and score.
+   *
+   * @param knowledgeBase The knowledge base to look the terms up in.
+   * @param batch The merged batch.
+   * @return The statements of each term, highest score first.
+   */
+   private Map<String, List<String>> statements(KnowledgeBase knowledgeBase, UpdateBatch batch){
+      Map<String, List<String>> statements = new HashMap<>();
+      statements.put(KnowledgeBaseBenchmark.term(0), describe(knowledgeBase.lookupAll(KnowledgeBaseBenchmark.term(0), terms)));
+      for (int i = 0; i < batch.size(); i++){
+         statements.put(batch.getTerm(i), describe(knowledgeBase.lookupAll(batch.getTerm(i), terms)));
+      }
+      return statements;
+   }
+
+   private static List<String> describe(List<Statement> statements){
+      List<String> described = new ArrayList<>();
+      for (Statement statement: statements){
+         described.add(statement.getSentence() + " " + statement.getScore());
+      }
+      return described;
+   }
+
+   /**
+   * Checks that every term holds the statements it held before the log was reopened.
+   *
+   * @param knowledgeBase The recovered knowledge base.
+   * @param expected The statements of each term before the log was reopened.
+   * @param when When the check runs, for the failure message.
+   */
+   private void checkStatements(KnowledgeBase knowledgeBase, Map<String, List<String>> expected, String when){
+      long differing = 0;
+      for (Map.Entry<String, List<String>> entry: expected.entrySet()){
+         if (!describe(knowledgeBase.lookupAll(entry.getKey(), terms)).equals(entry.getValue())){
+            differing++;
+         }
+      }
+      check(differing == 0, differing + " terms differ from the logged knowledge base " + when);
+   }
+
+   private void check(boolean condition, String failure){
+      if (!condition){
+         failures.add(backend + ": " + failure);
+      }
+   }
+}
@@ -0,0 +1,205 @@
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* A class that serves a {@link KnowledgeBase} to other processes over TCP.
+*
+* Clients send one query per line, in the tab-separated format of {@link BatchQueryRunner}, and
+* each query is answered in the same words, followed by an empty line that marks the end of the
+* response. The line "stats" is answered with the request rate and latency percentiles of the
+* server, and "quit" closes the connection. Clients may pipeline queries, sending many before
+* reading any responses: the responses are written in order, and they are only flushed once every
+* query that has already arrived has been answered, so a pipeline costs few writes to the socket.
+*
+* Each connection is handled by its own thread: a virtual thread when the Java runtime has them
+* (Java 21 and later), otherwise a platform thread from a cached pool. The server prints the
+* request rate and latency percentiles at a fixed interval while it is busy.
+*
+* The knowledge base must be safe for use by several threads, like {@link GenericsKbSkipListApp}
+* or a {@link ConcurrentKnowledgeBase}.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class KnowledgeBaseServer implements Closeable{
+   //the time between the reports of the request rate, in seconds
+   private static final int REPORT_INTERVAL = 5;
+
+   private final BatchQueryRunner queries;
+   private final ServerSocket serverSocket;
+   private final ExecutorService connections;
+   private final boolean virtualThreads;
+   private final ScheduledExecutorService reporter;
+   private final LatencyHistogram latencies = new LatencyHistogram();
+   private final LongAdder requests = new LongAdder();
+   private final AtomicInteger openConnections = new AtomicInteger();
+   private final long startTime = System.nanoTime();
+   private long reportedRequests, lastReport = startTime;
+
+   /**
+   * Opens a server socket for a knowledge base. Connections are accepted once {@link #serve()} is called.
+   *
+   * @param knowledgeBase The knowledge base, which must be safe for use by several threads.
+   * @param port The port to listen on, or 0 for any free port.
+   * @throws IOException if the socket cannot be opened
+   */
+   public KnowledgeBaseServer(KnowledgeBase knowledgeBase, int port) throws IOException{
+      this.queries = new BatchQueryRunner(knowledgeBase, 1);
+      this.serverSocket = new ServerSocket(port);
+      ExecutorService executor;
+      boolean virtual;
+      try{
+         //virtual threads are only available from Java 21, so they are looked up by name
+         executor = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+         virtual = true;
+      }
+      catch(ReflectiveOperationException e){
+         executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "connection");
+            thread.setDaemon(true);
+            return thread;
+         });
+         virtual = false;
+      }
+      this.connections = executor;
+      this.virtualThreads = virtual;
+      this.reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+         Thread thread = new Thread(task, "server-report");
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+   /**
+   * Retrieves the port the server listens on.
+   *
+   * @return The port number.
+   */
+   public int getPort(){
+      return serverSocket.getLocalPort();
+   }
+
+   /**
+   * Accepts connections until the server is closed, handling each one on its own thread.
+   *
+   * @throws IOException if a connection cannot be accepted
+   */
+   public void serve() throws IOException{
+      System.out.println("Serving the knowledge base on port " + getPort() + " with "
+         + (virtualThreads ? "virtual threads." : "platform threads (virtual threads need Java 21)."));
+      reporter.scheduleAtFixedRate(this::printInterval, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.SECONDS);
+      while (!serverSocket.isClosed()){
+         Socket socket;
+         try{
+            socket = serverSocket.accept();
+         }
+         catch(SocketException e){
+            //the server socket was closed
+            break;
+         }
+         connections.execute(() -> handle(socket));
+      }
+   }
+
+   /**
+   * Answers the queries of one connection in order until the client closes it or sends "quit".
+   *
+   * @param socket The connection.
+   */
+   private void handle(Socket socket){
+      openConnections.incrementAndGet();
+      try{
+         socket.setTcpNoDelay(true);
+         BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+         BufferedWriter output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+         long lineNumber = 0;
+         String line;
+         while ((line = input.readLine()) != null && !line.equals("quit")){
+            long start = System.nanoTime();
+            lineNumber++;
+            String response;
+            if (line.equals("stats")){
+               response = getReport() + "\n";
+            }
+            else{
+               try{
+                  response = queries.execute(BatchQueryRunner.split(line), lineNumber);
+               }
+               catch(UncheckedIOException e){
+                  response = "The update could not be logged, so it was not made: " + e.getCause().getMessage() + "\n";
+               }
+            }
+            output.write(response);
+            output.write('\n');
+            latencies.record(System.nanoTime() - start);
+            requests.increment();
+            if (!input.ready()){
+               //every query that has arrived has been answered
+               output.flush();
+            }
+         }
+         output.flush();
+      }
+      catch(IOException e){
+         //the client went away, so there is nobody to report the error to
+      }
+      finally{
+         openConnections.decrementAndGet();
+         try{
+            socket.close();
+         }
+         catch(IOException e){
+            //the connection is closed anyway
+         }
+      }
+   }
+
+   /**
+   * Describes the requests answered since the server started.
+   *
+   * @return The number of requests, the request rate and the latency percentiles.
+   */
+   public String getReport(){
+      long count = requests.sum();
+      double seconds = (System.nanoTime() - startTime) / 1e9;
+      return String.format("%d requests in %.1f seconds (%.0f requests/second), %d connections open, "
+         + "latency p50 %.2f us, p99 %.2f us, p99.9 %.2f us.", count, seconds, count / seconds, openConnections.get(),
+         latencies.getPercentile(0.5) / 1e3, latencies.getPercentile(0.99) / 1e3, latencies.getPercentile(0.999) / 1e3);
+   }
+
+   /**
+   * Prints the request rate since the last report, if any requests were answered.
+   */
+   private synchronized void printInterval(){
+      long count = requests.sum(), now = System.nanoTime();
+      if (count != reportedRequests){
+         System.out.printf("%.0f requests/second in the last %d seconds. %s%n", (count - reportedRequests) / ((now - lastReport) / 1e9),
+            REPORT_INTERVAL, getReport());
+      }
+      reportedRequests = count;
+      lastReport = now;
+   }
+
+   /**
+   * Stops accepting connections and prints the final report.
+   *
+   * @throws IOException if the server socket cannot be closed
+   */
+   @Override
+   public void close() throws IOException{
+      reporter.shutdown();
+      serverSocket.close();
+      connections.shutdown();
+      System.out.println("Server stopped. " + getReport());
+   }
+}
@@ -0,0 +1,220 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+* Class that collects statistics about the operations of a {@link KnowledgeBase}: how often
+* each operation is called, how many keys it compares and how many entries it visits, and a
+* histogram of its latency. Statistics are only collected while they are enabled. When they
+* are disabled, measuring an operation costs one field read, because {@link #start()} does
+* not read the clock and {@link #record(Operation, long, long, long)} returns straight away.
+*
+* A query that may be thrown away and run again, such as an optimistic read of a
+* {@link ConcurrentKnowledgeBase}, runs between {@link #beginAttempt()} and {@link #endAttempt(boolean)}.
+* The operations it records are held for its thread and only counted if the attempt is kept, so a
+* query that is run twice is counted once, with the comparisons and latency of the run that was kept.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class KnowledgeBaseStats implements KnowledgeBaseStatsMBean{
+   //returned by start() when statistics are disabled
+   private static final long DISABLED = Long.MIN_VALUE;
+
+   /**
+   * The operations that are measured.
+   */
+   public enum Operation{
+      LOAD, LOOKUP, PARTIAL_MATCH, TERM_AND_SENTENCE, STATEMENT_SEARCH, ADD_OR_UPDATE, SCORE_QUERY, FUZZY_LOOKUP, MERGE
+   }
+
+   private volatile boolean enabled;
+   private final LongAdder[] calls, comparisons, visited;
+   private final LatencyHistogram[] latencies;
+   //the operations recorded by each thread during an attempt that may still be thrown away
+   private final ThreadLocal<Attempt> attempts = ThreadLocal.withInitial(Attempt::new);
+
+   /**
+   * The operations recorded by one thread since the start of its current attempt.
+   */
+   private static final class Attempt{
+      private boolean active;
+      private int count;
+      private int[] operations = new int[2];
+      //the latency, comparisons and visited entries of each operation, three values each
+      private long[] values = new long[6];
+
+      private void add(int operation, long latency, long keyComparisons, long entriesVisited){
+         if (count == operations.length){
+            operations = Arrays.copyOf(operations, count * 2);
+            values = Arrays.copyOf(values, count * 6);
+         }
+         operations[count] = operation;
+         values[3 * count] = latency;
+         values[3 * count + 1] = keyComparisons;
+         values[3 * count + 2] = entriesVisited;
+         count++;
+      }
+   }
+
+   /**
+   * Constructs a collector with statistics disabled.
+   */
+   public KnowledgeBaseStats(){
+      int operations = Operation.values().length;
+      calls = new LongAdder[operations];
+      comparisons = new LongAdder[operations];
+      visited = new LongAdder[operations];
+      latencies = new LatencyHistogram[operations];
+      for (int i = 0; i < operations; i++){
+         calls[i] = new LongAdder();
+         comparisons[i] = new LongAdder();
+         visited[i] = new LongAdder();
+         latencies[i] = new LatencyHistogram();
+      }
+   }
+
+   /**
+   * Marks the start of an operation.
+   *
+   * @return The start time to pass to record, or a marker meaning statistics are disabled.
+   */
+   public long start(){
+      return enabled ? System.nanoTime() : DISABLED;
+   }
+
+   /**
+   * Records a finished operation.
+   *
+   * @param operation The operation that finished.
+   * @param start The value returned by {@link #start()} when the operation began.
+   * @param keyComparisons The number of keys the operation compared.
+   * @param entriesVisited The number of entries or nodes the operation visited.
+   */
+   public void record(Operation operation, long start, long keyComparisons, long entriesVisited){
+      if (start == DISABLED){
+         return;
+      }
+      long latency = System.nanoTime() - start;
+      Attempt attempt = attempts.get();
+      if (attempt.active){
+         attempt.add(operation.ordinal(), latency, keyComparisons, entriesVisited);
+      }
+      else{
+         count(operation.ordinal(), latency, keyComparisons, entriesVisited);
+      }
+   }
+
+   private void count(int i, long latency, long keyComparisons, long entriesVisited){
+      latencies[i].record(latency);
+      calls[i].increment();
+      comparisons[i].add(keyComparisons);
+      visited[i].add(entriesVisited);
+   }
+
+   /**
+   * Starts an attempt of the current thread, whose operations are held until {@link #endAttempt(boolean)}.
+   */
+   public void beginAttempt(){
+      if (enabled){
+         Attempt attempt = attempts.get();
+         attempt.active = true;
+         attempt.count = 0;
+      }
+   }
+
+   /**
+   * Ends the attempt of the current thread, counting the operations it recorded if it is kept.
+   *
+   * @param kept Whether the result of the attempt was kept, or it is thrown away and the query run again.
+   */
+   public void endAttempt(boolean kept){
+      Attempt attempt = attempts.get();
+      if (!attempt.active){
+         return;
+      }
+      attempt.active = false;
+      if (kept){
+         for (int r = 0; r < attempt.count; r++){
+            count(attempt.operations[r], attempt.values[3 * r], attempt.values[3 * r + 1], attempt.values[3 * r + 2]);
+         }
+      }
+      attempt.count = 0;
+   }
+
+   /**
+   * Registers these statistics with the platform MBean server under the name
+   * GenericsKB:type=KnowledgeBaseStats,backend=name. A failure is reported and otherwise ignored.
+   *
+   * @param backend The name of the knowledge base backend.
+   */
+   public void register(String backend){
+      try{
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = new ObjectName("GenericsKB:type=KnowledgeBaseStats,backend=" + ObjectName.quote(backend));
+         if (server.isRegistered(name)){
+            server.unregisterMBean(name);
+         }
+         server.registerMBean(this, name);
+      }
+      catch(JMException e){
+         System.out.println("Statistics could not be registered with JMX: " + e.getMessage());
+      }
+   }
+
+   @Override
+   public boolean isEnabled(){
+      return enabled;
+   }
+
+   @Override
+   public void setEnabled(boolean enabled){
+      this.enabled = enabled;
+   }
+
+   @Override
+   public long getCalls(String operation){
+      return calls[Operation.valueOf(operation.toUpperCase(Locale.ROOT)).ordinal()].sum();
+   }
+
+   @Override
+   public double getLatencyMicros(String operation, double percentile){
+      int i = Operation.valueOf(operation.toUpperCase(Locale.ROOT)).ordinal();
+      return latencies[i].getPercentile(percentile / 100) / 1e3;
+   }
+
+   @Override
+   public String getReport(){
+      StringBuilder report = new StringBuilder();
+      report.append(String.format("%-18s %10s %14s %14s %11s %11s %11s%n",
+         "operation", "calls", "comparisons", "visited", "p50 (us)", "p99 (us)", "p99.9 (us)"));
+      for (Operation operation: Operation.values()){
+         int i = operation.ordinal();
+         long count = calls[i].sum();
+         if (count == 0){
+            continue;
+         }
+         //comparisons and visited entries are averaged per call
+         report.append(String.format("%-18s %10d %14.1f %14.1f %11.2f %11.2f %11.2f%n", operation, count,
+            comparisons[i].sum() / (double)count, visited[i].sum() / (double)count,
+            latencies[i].getPercentile(0.5) / 1e3, latencies[i].getPercentile(0.99) / 1e3,
+            latencies[i].getPercentile(0.999) / 1e3));
+      }
+      return report.toString();
+   }
+
+   @Override
+   public void reset(){
+      for (int i = 0; i < calls.length; i++){
+         calls[i].reset();
+         comparisons[i].reset();
+         visited[i].reset();
+         latencies[i].reset();
+      }
+   }
+}
@@ -0,0 +1,53 @@
+/**
+* Management interface of {@link KnowledgeBaseStats}, so the statistics of a running
+* knowledge base can be read and switched on or off through JMX, for example with JConsole.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public interface KnowledgeBaseStatsMBean{
+
+   /**
+   * Checks if operations are being measured.
+   *
+   * @return true if statistics are collected.
+   */
+   boolean isEnabled();
+
+   /**
+   * Starts or stops measuring operations.
+   *
+   * @param enabled true to collect statistics.
+   */
+   void setEnabled(boolean enabled);
+
+   /**
+   * Formats the statistics of every operation as a table.
+   *
+   * @return The statistics report.
+   */
+   String getReport();
+
+   /**
+   * Retrieves the number of times an operation was called while statistics were enabled.
+   *
+   * @param operation The name of the operation, such as LOOKUP.
+   * @return The number of calls.
+   */
+   long getCalls(String operation);
+
+   /**
+   * Retrieves a latency percentile of an operation.
+   *
+   * @param operation The name of the operation, such as LOOKUP.
+   * @param percentile The percentile, for example 99.9.
+   * @return The latency in microseconds.
+   */
+   double getLatencyMicros(String operation, double percentile);
+
+   /**
+   * Clears the statistics of every operation.
+   */
+   void reset();
+}
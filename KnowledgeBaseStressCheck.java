@@ -0,0 +1,272 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* A program that checks a knowledge base under load from several threads. The array, columnar and tree
+* backends are checked through a {@link ConcurrentKnowledgeBase}, and the skip list on its own.
+*
+* Writer threads update disjoint sets of terms many times. The n-th update of a term sets its
+* sentence to "Version n." and its confidence score to n, and on the tree and skip list backends
+* each writer also adds new terms. Meanwhile reader threads run exact lookups and partial matches,
+* and check that every statement they see is consistent: a sentence of "Version n." must come with a score
+* of n, otherwise the sentence of one update was read with the score of another (a torn read).
+* When the writers are done, every term must hold its last version and the knowledge base must
+* hold every added term, otherwise an update was lost, and the score index must hold every term once
+* at its current score. The program exits with status 1 if any check fails.
+*
+* Options:
+* --backends=array,columnar,bst,skiplist   the backends to check,
+* --terms=10000          the number of terms loaded before the threads start,
+* --readers=4            the number of reader threads,
+* --writers=4            the number of writer threads,
+* --updates=50000        the number of updates made by each writer.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class KnowledgeBaseStressCheck{
+   private final KnowledgeBase knowledgeBase;
+   private final String backend;
+   private final int terms, readers, writers, updates;
+   private final AtomicBoolean writing = new AtomicBoolean(true);
+   private final AtomicLong reads = new AtomicLong(), tornReads = new AtomicLong(), missingTerms = new AtomicLong();
+   private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+   /**
+   * Constructs a stress run on a loaded knowledge base.
+   *
+   * @param knowledgeBase The knowledge base to check.
+   * @param backend The name of the backend.
+   * @param terms The number of terms loaded, numbered from 0.
+   * @param readers The number of reader threads.
+   * @param writers The number of writer threads.
+   * @param updates The number of updates made by each writer.
+   */
+   public KnowledgeBaseStressCheck(KnowledgeBase knowledgeBase, String backend, int terms, int readers, int writers, int updates){
+      this.knowledgeBase = knowledgeBase;
+      this.backend = backend;
+      this.terms = terms;
+      this.readers = readers;
+      this.writers = writers;
+      this.updates = updates;
+   }
+
+   /**
+   * Runs the stress check with the options given on the command line.
+   *
+   * @param args The command-line options described in the class comment.
+   * @throws IOException if the dataset cannot be written or loaded
+   * @throws InterruptedException if the program is interrupted while waiting for the threads
+   */
+   public static void main(String[] args) throws IOException, InterruptedException{
+      List<String> backends = Arrays.asList("array", "columnar", "bst", "skiplist");
+      int terms = 10_000, readers = 4, writers = 4, updates = 50_000;
+      for (String arg: args){
+         if (arg.startsWith("--backends=")){
+            backends = Arrays.asList(arg.substring("--backends=".length()).split(","));
+         }
+         else if (arg.startsWith("--terms=")){
+            terms = Integer.parseInt(arg.substring("--terms=".length()));
+         }
+         else if (arg.startsWith("--readers=")){
+            readers = Integer.parseInt(arg.substring("--readers=".length()));
+         }
+         else if (arg.startsWith("--writers=")){
+            writers = Integer.parseInt(arg.substring("--writers=".length()));
+         }
+         else if (arg.startsWith("--updates=")){
+            updates = Integer.parseInt(arg.substring("--updates=".length()));
+         }
+         else{
+            System.out.println("Ignoring unknown option: " + arg);
+         }
+      }
+
+      File dataset = KnowledgeBaseBenchmark.writeDataset(terms, "random", new Random(terms));
+      boolean passed = true;
+      try{
+         for (String backend: backends){
+            KnowledgeBase knowledgeBase = KnowledgeBaseMenu.createKnowledgeBase(backend);
+            if (!(knowledgeBase instanceof GenericsKbSkipListApp)){
+               knowledgeBase = new ConcurrentKnowledgeBase(knowledgeBase, true);
+            }
+            knowledgeBase.load(dataset.getPath(), false);
+            passed &= new KnowledgeBaseStressCheck(knowledgeBase, backend, terms, readers, writers, updates).run();
+         }
+      }
+      finally{
+         dataset.delete();
+      }
+      System.exit(passed ? 0 : 1);
+   }
+
+   /**
+   * Runs the readers and writers, then checks the final state of the knowledge base and prints the results.
+   *
+   * @return true if every check passed.
+   * @throws InterruptedException if the program is interrupted while waiting for the threads
+   */
+   public boolean run() throws InterruptedException{
+      int sizeBefore = knowledgeBase.size();
+      //each writer owns the terms whose number leaves its own remainder when divided by the number of writers
+      int[] added = new int[writers];
+      CountDownLatch start = new CountDownLatch(1);
+      List<Thread> writerThreads = new ArrayList<>(), readerThreads = new ArrayList<>();
+      for (int w = 0; w < writers; w++){
+         int writer = w;
+         writerThreads.add(new Thread(() -> added[writer] = write(writer, start), "writer-" + w));
+      }
+      for (int r = 0; r < readers; r++){
+         long seed = r;
+         readerThreads.add(new Thread(() -> read(new Random(seed), start), "reader-" + r));
+      }
+      for (Thread thread: writerThreads){
+         thread.start();
+      }
+      for (Thread thread: readerThreads){
+         thread.start();
+      }
+
+      long startTime = System.nanoTime();
+      start.countDown();
+      for (Thread thread: writerThreads){
+         thread.join();
+      }
+      writing.set(false);
+      for (Thread thread: readerThreads){
+         thread.join();
+      }
+      double seconds = (System.nanoTime() - startTime) / 1e9;
+
+      //every term must hold the last version written to it
+      long lostUpdates = 0;
+      for (int id = 0; id < terms; id++){
+         int writer = id % writers, owned = (terms - writer + writers - 1) / writers;
+         int expected = updates / owned + ((id / writers < updates % owned) ? 1 : 0);
+         if (expected == 0){
+            continue;
+         }
+         Statement statement = knowledgeBase.lookup(KnowledgeBaseBenchmark.term(id));
+         if (statement == null || !statement.getSentence().equals("Version " + expected + ".") || statement.getScore() != expected){
+            lostUpdates++;
+         }
+      }
+      int expectedSize = sizeBefore;
+      for (int count: added){
+         expectedSize += count;
+      }
+      boolean sizeMatches = knowledgeBase.size() == expectedSize;
+
+      //the score index must hold every term once, at its current score, highest first
+      long misplacedScores = 0;
+      List<Statement> byScore = knowledgeBase.withScoreAtLeast(Double.NEGATIVE_INFINITY);
+      Set<String> indexed = new HashSet<>();
+      for (int i = 0; i < byScore.size(); i++){
+         Statement statement = byScore.get(i), current = knowledgeBase.lookup(statement.getTerm());
+         if (!indexed.add(statement.getTerm()) || current == null || current.getScore() != statement.getScore()
+               || (i > 0 && byScore.get(i - 1).getScore() < statement.getScore())){
+            misplacedScores++;
+         }
+      }
+      misplacedScores += Math.abs(knowledgeBase.size() - byScore.size());
+
+      boolean passed = lostUpdates == 0 && misplacedScores == 0 && tornReads.get() == 0 && missingTerms.get() == 0 && sizeMatches && failures.isEmpty();
+      System.out.printf("%s: %d readers and %d writers, %d reads (%.0f/second) and %d updates (%.0f/second).%n", backend, readers,
+         writers, reads.get(), reads.get() / seconds, (long)writers * updates, writers * updates / seconds);
+      System.out.printf("Torn reads: %d, missing terms: %d, lost updates: %d, misplaced scores: %d, size %d (expected %d).%n",
+         tornReads.get(), missingTerms.get(), lostUpdates, misplacedScores, knowledgeBase.size(), expectedSize);
+      System.out.println(knowledgeBase.describe());
+      for (String failure: failures){
+         System.out.println(failure);
+      }
+      System.out.println(passed ? "PASSED\n" : "FAILED\n");
+      return passed;
+   }
+
+   /**
+   * Updates the terms owned by one writer in turn, and on backends that add terms adds a new term every 16 updates.
+   *
+   * @param writer The number of the writer.
+   * @param start The latch that starts every thread at once.
+   * @return The number of terms the writer added.
+   */
+   private int write(int writer, CountDownLatch start){
+      awaitStart(start);
+      int owned = (terms - writer + writers - 1) / writers, added = 0;
+      for (int i = 0; i < updates; i++){
+         int id = writer + (i % owned) * writers, version = i / owned + 1;
+         knowledgeBase.addOrUpdate(KnowledgeBaseBenchmark.term(id), "Version " + version + ".", version);
+         if (i % 16 == 0 && !backend.equals("array") && !backend.equals("columnar")){
+            String term = "stress writer " + writer + " term " + i;
+            if (knowledgeBase.addOrUpdate(term, "Version 1.", 1).getStatus() == UpdateResult.Status.ADDED){
+               added++;
+            }
+         }
+      }
+      return added;
+   }
+
+   /**
+   * Runs lookups and partial matches until the writers are done, checking every statement returned.
+   *
+   * @param random The source of the terms to look up.
+   * @param start The latch that starts every thread at once.
+   */
+   private void read(Random random, CountDownLatch start){
+      awaitStart(start);
+      while (writing.get()){
+         int id = random.nextInt(terms);
+         String term = KnowledgeBaseBenchmark.term(id);
+         try{
+            Statement statement = knowledgeBase.lookup(term);
+            if (statement == null){
+               missingTerms.incrementAndGet();
+            }
+            else{
+               check(statement);
+            }
+            //the first word of the term is shared by many other terms
+            for (Statement match: knowledgeBase.partialMatches(term.split(" ")[0])){
+               check(match);
+            }
+         }
+         catch(RuntimeException e){
+            failures.add(Thread.currentThread().getName() + " failed on '" + term + "': " + e);
+         }
+         reads.addAndGet(2);
+      }
+   }
+
+   /**
+   * Checks that the sentence and score of a statement were written by the same update.
+   *
+   * @param statement The statement to check.
+   */
+   private void check(Statement statement){
+      String sentence = statement.getSentence();
+      if (sentence.startsWith("Version ")){
+         int version = Integer.parseInt(sentence.substring("Version ".length(), sentence.length() - 1));
+         if (statement.getScore() != version){
+            tornReads.incrementAndGet();
+         }
+      }
+      else if (statement.getScore() >= 1){
+         //the sentences loaded from the file all have a score below 1
+         tornReads.incrementAndGet();
+      }
+   }
+
+   private static void awaitStart(CountDownLatch start){
+      try{
+         start.await();
+      }
+      catch(InterruptedException e){
+         Thread.currentThread().interrupt();
+      }
+   }
+}
@@ -0,0 +1,252 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+* A program that checks that the tree backend handles large and deep trees without recursion.
+* It loads a dataset whose terms are already sorted, the input that makes an unbalanced tree
+* degenerate into a list, and checks that the tree has the smallest possible height, that
+* {@link GenericsKbBSTApp#forEachNode(java.util.function.Consumer)} and {@link GenericsKbBSTApp#nodeIterator()}
+* visit every term once in order, and that every term can be searched. It then adds new terms in
+* sorted order one at a time, checks that the tree stays balanced, and round-trips it through a snapshot.
+* Finally it links a chain of nodes as deep as the number of terms by hand, deeper than any call stack,
+* and checks that searching and traversing it does not overflow the stack.
+* The checks run on a thread with a small stack, so any recursion that grows with the tree fails.
+* The program exits with status 1 if any check fails.
+*
+* Options:
+* --terms=1000000        the number of sorted terms loaded,
+* --adds=100000          the number of sorted terms added one at a time after the load.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class KnowledgeBaseTreeCheck{
+   //the stack size of the thread running the checks, far too small for a recursion as deep as the terms
+   private static final long STACK_SIZE = 256 * 1024;
+   private final int terms, adds;
+   private final List<String> failures = new ArrayList<>();
+
+   /**
+   * Constructs a tree check.
+   *
+   * @param terms The number of sorted terms to load.
+   * @param adds The number of sorted terms to add after the load.
+   */
+   public KnowledgeBaseTreeCheck(int terms, int adds){
+      this.terms = terms;
+      this.adds = adds;
+   }
+
+   /**
+   * Runs the tree check with the options given on the command line.
+   *
+   * @param args The command-line options described in the class comment.
+   * @throws InterruptedException if the program is interrupted while waiting for the checks
+   */
+   public static void main(String[] args) throws InterruptedException{
+      int terms = 1_000_000, adds = 100_000;
+      for (String arg: args){
+         if (arg.startsWith("--terms=")){
+            terms = Integer.parseInt(arg.substring("--terms=".length()));
+         }
+         else if (arg.startsWith("--adds=")){
+            adds = Integer.parseInt(arg.substring("--adds=".length()));
+         }
+         else{
+            System.out.println("Ignoring unknown option: " + arg);
+         }
+      }
+
+      KnowledgeBaseTreeCheck check = new KnowledgeBaseTreeCheck(terms, adds);
+      boolean[] passed = new boolean[1];
+      Thread thread = new Thread(null, () -> {
+         try{
+            passed[0] = check.run();
+         }
+         catch(IOException e){
+            System.out.println("Error: " + e.getMessage());
+         }
+         catch(StackOverflowError e){
+            System.out.println("Error: the stack overflowed.");
+         }
+      }, "tree-check", STACK_SIZE);
+      thread.start();
+      thread.join();
+      System.out.println(passed[0] ? "PASSED" : "FAILED");
+      System.exit(passed[0] ? 0 : 1);
+   }
+
+   /**
+   * Runs every check and prints the results.
+   *
+   * @return true if every check passed.
+   * @throws IOException if the dataset or the snapshot cannot be written or read
+   */
+   public boolean run() throws IOException{
+      File dataset = KnowledgeBaseBenchmark.writeDataset(terms, "sorted", new Random(terms));
+      GenericsKbBSTApp tree = new GenericsKbBSTApp();
+      try{
+         LoadResult result = tree.load(dataset.getPath(), false);
+         System.out.printf("Loaded %d sorted terms in %.2f seconds, height %d.%n", result.getSize(), result.getSeconds(), tree.getTreeHeight());
+      }
+      finally{
+         dataset.delete();
+      }
+      check(tree.size() == terms, "the tree holds " + tree.size() + " terms instead of " + terms);
+      //a tree built from sorted terms is complete, so its height is the number of bits of its size
+      int minimalHeight = 32 - Integer.numberOfLeadingZeros(terms);
+      check(tree.getTreeHeight() == minimalHeight, "the height is " + tree.getTreeHeight() + " instead of " + minimalHeight);
+      checkOrder(tree, terms);
+      checkSearches(tree);
+
+      //adding sorted terms one at a time rotates the same side of the tree over and over
+      long startTime = System.nanoTime();
+      for (int i = 0; i < adds; i++){
+         tree.addOrUpdate(String.format("zz added %07d", i), "An added statement.", 0.5);
+      }
+      int total = terms + adds;
+      System.out.printf("Added %d sorted terms in %.2f seconds, height %d.%n", adds, (System.nanoTime() - startTime) / 1e9, tree.getTreeHeight());
+      //the height of an AVL tree is less than 1.44 times the height of a complete tree of the same size
+      int maximalHeight = (int)(1.44 * (32 - Integer.numberOfLeadingZeros(total)));
+      check(tree.size() == total, "the tree holds " + tree.size() + " terms instead of " + total);
+      check(tree.getTreeHeight() <= maximalHeight, "the height is " + tree.getTreeHeight() + ", more than " + maximalHeight);
+      checkOrder(tree, total);
+      checkSearches(tree);
+
+      File snapshot = File.createTempFile("generics-tree-", ".snapshot");
+      try{
+         tree.saveSnapshot(snapshot.getPath());
+         GenericsKbBSTApp copy = new GenericsKbBSTApp();
+         copy.loadSnapshot(snapshot.getPath());
+         check(copy.getTreeHeight() == tree.getTreeHeight(), "the snapshot has height " + copy.getTreeHeight());
+         Iterator<Node> original = tree.nodeIterator(), loaded = copy.nodeIterator();
+         long mismatches = 0;
+         while (original.hasNext() && loaded.hasNext()){
+            Node a = original.next(), b = loaded.next();
+            if (!a.getTerm().equals(b.getTerm()) || !a.getSentence().equals(b.getSentence()) || a.getScore() != b.getScore()){
+               mismatches++;
+            }
+         }
+         check(mismatches == 0 && !original.hasNext() && !loaded.hasNext(), "the snapshot differs from the tree in " + mismatches + " nodes");
+      }
+      finally{
+         snapshot.delete();
+      }
+
+      checkSimilarSearches(tree);
+      checkChain(terms);
+
+      for (String failure: failures){
+         System.out.println("Failed: " + failure);
+      }
+      return failures.isEmpty();
+   }
+
+   /**
+   * Checks that both traversals visit the expected number of nodes, each term once and in increasing order.
+   *
+   * @param tree The tree to traverse.
+   * @param expected The number of terms in the tree.
+   */
+   private void checkOrder(GenericsKbBSTApp tree, int expected){
+      long[] visited = new long[2];
+      Node[] previous = new Node[1];
+      tree.forEachNode(node -> {
+         if (previous[0] != null && previous[0].getTerm().compareToIgnoreCase(node.getTerm()) >= 0){
+            visited[1]++;
+         }
+         previous[0] = node;
+         visited[0]++;
+      });
+      check(visited[0] == expected && visited[1] == 0, "forEachNode visited " + visited[0] + " nodes, " + visited[1] + " out of order");
+
+      long count = 0, outOfOrder = 0;
+      Node last = null;
+      for (Iterator<Node> nodes = tree.nodeIterator(); nodes.hasNext();){
+         Node node = nodes.next();
+         if (last != null && last.getTerm().compareToIgnoreCase(node.getTerm()) >= 0){
+            outOfOrder++;
+         }
+         last = node;
+         count++;
+      }
+      check(count == expected && outOfOrder == 0, "nodeIterator visited " + count + " nodes, " + outOfOrder + " out of order");
+   }
+
+   /**
+   * Checks that every term of the tree is found by a search from the root and by a lookup.
+   *
+   * @param tree The tree to search.
+   */
+   private void checkSearches(GenericsKbBSTApp tree){
+      long missing = 0;
+      for (Iterator<Node> nodes = tree.nodeIterator(); nodes.hasNext();){
+         Node node = nodes.next();
+         if (GenericsKbBSTApp.search(tree.getRoot(), node.getTerm().toUpperCase()) != node || tree.lookup(node.getTerm()) == null){
+            missing++;
+         }
+      }
+      check(missing == 0, missing + " terms were not found");
+      check(GenericsKbBSTApp.search(tree.getRoot(), "not a term") == null, "a term that was never added was found");
+   }
+
+   /**
+   * Checks that the partial matches of a subtree, found by traversing it, are the matches of the
+   * whole tree, found in the token index, whose terms lie within the subtree.
+   *
+   * @param tree The tree to search.
+   */
+   private void checkSimilarSearches(GenericsKbBSTApp tree){
+      Node subtree = tree.getRoot().getLeftNode();
+      String first = subtree.getTerm(), last = subtree.getTerm();
+      for (Node node = subtree; node != null; node = node.getLeftNode()){
+         first = node.getTerm();
+      }
+      for (Node node = subtree; node != null; node = node.getRightNode()){
+         last = node.getTerm();
+      }
+      String word = "w1";
+      List<Node> traversed = tree.similarSearches(subtree, word), expected = new ArrayList<>();
+      for (Node match: tree.similarSearches(tree.getRoot(), word)){
+         if (match.getTerm().compareToIgnoreCase(first) >= 0 && match.getTerm().compareToIgnoreCase(last) <= 0){
+            expected.add(match);
+         }
+      }
+      check(new HashSet<>(traversed).equals(new HashSet<>(expected)) && traversed.size() == expected.size(),
+         "the subtree has " + traversed.size() + " partial matches instead of " + expected.size());
+   }
+
+   /**
+   * Links a chain of nodes, each the right child of the one before, and checks that searching
+   * and traversing it works although the chain is far deeper than the stack of the thread.
+   *
+   * @param length The number of nodes in the chain.
+   */
+   private void checkChain(int length){
+      Node[] chain = new Node[length];
+      for (int i = length - 1; i >= 0; i--){
+         chain[i] = new Node(String.format("chain %07d", i), "A chained statement.", 0.5);
+         if (i < length - 1){
+            chain[i].setRightNode(chain[i + 1]);
+         }
+         chain[i].setHeight(length - i);
+      }
+      Node head = chain[0];
+      String lastTerm = chain[length - 1].getTerm();
+      check(GenericsKbBSTApp.search(head, lastTerm) == chain[length - 1], "the last node of the chain was not found");
+      long[] visited = new long[1];
+      GenericsKbBSTApp.forEachInOrder(head, node -> visited[0]++);
+      check(visited[0] == length, "the traversal of the chain visited " + visited[0] + " nodes instead of " + length);
+      List<Node> matches = new GenericsKbBSTApp().similarSearches(head, "chain");
+      check(matches.size() == length, "the chain has " + matches.size() + " partial matches instead of " + length);
+      System.out.printf("Searched and traversed a chain of %d nodes.%n", length);
+   }
+
+   private void check(boolean condition, String failure){
+      if (!condition){
+         failures.add(failure);
+      }
+   }
+}
@@ -0,0 +1,103 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+* Class representing a histogram of latencies in nanoseconds. Each power of two is split into
+* 16 buckets, so a percentile is reported within about 6% of the true value while the
+* histogram stays a fixed array of counters. Values can be recorded from several threads.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class LatencyHistogram{
+   //the number of buckets each power of two is split into, as a power of two
+   private static final int SUB_BUCKET_BITS = 4;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+   private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+   /**
+   * Records a latency.
+   *
+   * @param nanos The latency in nanoseconds, negative values are counted as 0.
+   */
+   public void record(long nanos){
+      counts.incrementAndGet(bucket(Math.max(0, nanos)));
+   }
+
+   /**
+   * Retrieves the number of latencies recorded.
+   *
+   * @return The number of latencies.
+   */
+   public long getCount(){
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++){
+         total += counts.get(i);
+      }
+      return total;
+   }
+
+   /**
+   * Retrieves the latency below which the given fraction of the recorded latencies fall.
+   *
+   * @param fraction The fraction of latencies, for example 0.99 for the 99th percentile.
+   * @return The upper bound of the bucket holding the percentile in nanoseconds, or 0 if nothing was recorded.
+   */
+   public long getPercentile(double fraction){
+      long total = getCount();
+      if (total == 0){
+         return 0;
+      }
+      long rank = (long)Math.ceil(fraction * total);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++){
+         seen += counts.get(i);
+         if (seen >= Math.max(1, rank)){
+            return upperBound(i);
+         }
+      }
+      return upperBound(BUCKETS - 1);
+   }
+
+   /**
+   * Removes every recorded latency.
+   */
+   public void reset(){
+      for (int i = 0; i < BUCKETS; i++){
+         counts.set(i, 0);
+      }
+   }
+
+   /**
+   * Finds the bucket that a value is counted in.
+   *
+   * @param value The value, which must not be negative.
+   * @return The index of the bucket.
+   */
+   private static int bucket(long value){
+      if (value < SUB_BUCKETS){
+         return (int)value;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+   }
+
+   /**
+   * Finds the largest value counted in a bucket.
+   *
+   * @param bucket The index of the bucket.
+   * @return The largest value of the bucket.
+   */
+   private static long upperBound(int bucket){
+      if (bucket < SUB_BUCKETS){
+         return bucket;
+      }
+      int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+      long subBucket = bucket % SUB_BUCKETS;
+      long lower = (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+      return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+   }
+}
@@ -0,0 +1,60 @@
+/**
+* Class representing the outcome of loading a file into a {@link KnowledgeBase}.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public final class LoadResult{
+   private final long lines, nanos;
+   private final int size;
+
+   /**
+   * Constructs a load result.
+   *
+   * @param lines The number of lines read from the file.
+   * @param size The number of terms in the knowledge base after the load.
+   * @param nanos The time the load took, in nanoseconds.
+   */
+   public LoadResult(long lines, int size, long nanos){
+      this.lines = lines;
+      this.size = size;
+      this.nanos = nanos;
+   }
+
+   /**
+   * Retrieves the number of lines read from the file.
+   *
+   * @return The number of lines read.
+   */
+   public long getLines(){
+      return lines;
+   }
+
+   /**
+   * Retrieves the number of terms in the knowledge base after the load.
+   *
+   * @return The number of terms.
+   */
+   public int getSize(){
+      return size;
+   }
+
+   /**
+   * Retrieves the time the load took.
+   *
+   * @return The time in seconds.
+   */
+   public double getSeconds(){
+      return nanos / 1e9;
+   }
+
+   /**
+   * Retrieves the load throughput.
+   *
+   * @return The number of lines loaded per second.
+   */
+   public double getLinesPerSecond(){
+      return (nanos > 0) ? lines / getSeconds() : lines;
+   }
+}
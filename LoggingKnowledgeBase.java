@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+* A class that records every update of another {@link KnowledgeBase} in a {@link WriteAheadLog},
+* so that updates made through the menu survive the program stopping.
+*
+* An update is appended to the log before it is applied, and so is every statement of a merged
+* batch, as a merge record that is replayed with {@link KnowledgeBase#merge(UpdateBatch)}, so the terms a
+* merge added are added again on the backends whose updates never add terms. Whenever a file or snapshot is loaded
+* as the base of the knowledge base, the log is replayed over it, which is how updates are
+* recovered at startup. {@link #compact(String)} folds the log into a snapshot and empties it,
+* after which that snapshot is the base the log applies to.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class LoggingKnowledgeBase implements KnowledgeBase{
+   private final KnowledgeBase knowledgeBase;
+   private final WriteAheadLog log;
+
+   /**
+   * Constructs a knowledge base that logs the updates of another.
+   *
+   * @param knowledgeBase The knowledge base the updates are applied to.
+   * @param log The log the updates are appended to.
+   */
+   public LoggingKnowledgeBase(KnowledgeBase knowledgeBase, WriteAheadLog log){
+      this.knowledgeBase = knowledgeBase;
+      this.log = log;
+   }
+
+   /**
+   * Applies the updates in the log to the knowledge base, without logging them again.
+   *
+   * @return The number of updates replayed.
+   * @throws IOException if the log cannot be read
+   */
+   public long recover() throws IOException{
+      long replayed = log.replay((term, sentence, score) -> knowledgeBase.addOrUpdate(term, sentence, score), knowledgeBase::merge);
+      if (replayed > 0){
+         System.out.println("Replayed " + replayed + " updates from the update log.");
+      }
+      return replayed;
+   }
+
+   /**
+   * Saves the knowledge base, including every logged update, to a snapshot and empties the log.
+   * From then on the snapshot must be loaded as the base before the log is replayed.
+   *
+   * @param file The name of the snapshot file.
+   * @throws IOException if the snapshot cannot be written or the log cannot be emptied
+   */
+   public void compact(String file) throws IOException{
+      log.sync();
+      knowledgeBase.saveSnapshot(file);
+      //the log is only emptied once the snapshot holding its updates is safely on disk
+      log.truncate();
+   }
+
+   /**
+   * Syncs the remaining updates and closes the log.
+   *
+   * @throws IOException if the log cannot be synced or closed
+   */
+   public void close() throws IOException{
+      log.close();
+   }
+
+   @Override
+   public LoadResult load(String file, boolean parallel) throws IOException{
+      LoadResult result = knowledgeBase.load(file, parallel);
+      recover();
+      return result;
+   }
+
+   @Override
+   public void saveSnapshot(String file) throws IOException{
+      knowledgeBase.saveSnapshot(file);
+   }
+
+   @Override
+   public LoadResult loadSnapshot(String file) throws IOException{
+      LoadResult result = knowledgeBase.loadSnapshot(file);
+      recover();
+      return result;
+   }
+
+   /**
+   * Logs every statement of the batch as a merge record and then merges it into the knowledge base.
+   *
+   * @param batch The statements to apply.
+   * @return The number of terms added and of statements that updated a term.
+   * @throws UncheckedIOException if the statements cannot be logged
+   */
+   @Override
+   public MergeResult merge(UpdateBatch batch){
+      try{
+         log.appendMerge(batch);
+      }
+      catch(IOException e){
+         throw new UncheckedIOException(e);
+      }
+      return knowledgeBase.merge(batch);
+   }
+
+   @Override
+   public Statement lookup(String term){
+      return knowledgeBase.lookup(term);
+   }
+
+   @Override
+   public List<Statement> lookupAll(String term, int limit){
+      return knowledgeBase.lookupAll(term, limit);
+   }
+
+   @Override
+   public List<Statement> partialMatches(String term){
+      return knowledgeBase.partialMatches(term);
+   }
+
+   @Override
+   public Statement lookupTermAndSentence(String term, String sentence){
+      return knowledgeBase.lookupTermAndSentence(term, sentence);
+   }
+
+   @Override
+   public List<Statement> searchStatements(String phrase){
+      return knowledgeBase.searchStatements(phrase);
+   }
+
+   @Override
+   public List<Statement> fuzzyLookup(String term, int maxDistance){
+      return knowledgeBase.fuzzyLookup(term, maxDistance);
+   }
+
+   @Override
+   public List<Statement> topByScore(int k){
+      return knowledgeBase.topByScore(k);
+   }
+
+   @Override
+   public List<Statement> withScoreAtLeast(double threshold){
+      return knowledgeBase.withScoreAtLeast(threshold);
+   }
+
+   @Override
+   public Iterator<Statement> range(String from, String to){
+      return knowledgeBase.range(from, to);
+   }
+
+   @Override
+   public Iterator<Statement> prefix(String prefix, String from){
+      return knowledgeBase.prefix(prefix, from);
+   }
+
+   /**
+   * Appends an update to the log and then applies it to the knowledge base.
+   *
+   * @param term The term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   * @return What happened and the statement stored for the term afterwards.
+   * @throws UncheckedIOException if the update cannot be logged, in which case it is not applied
+   */
+   @Override
+   public UpdateResult addOrUpdate(String term, String sentence, double score){
+      try{
+         log.append(term, sentence, score);
+      }
+      catch(IOException e){
+         throw new UncheckedIOException(e);
+      }
+      return knowledgeBase.addOrUpdate(term, sentence, score);
+   }
+
+   @Override
+   public int size(){
+      return knowledgeBase.size();
+   }
+
+   @Override
+   public KnowledgeBaseStats getStats(){
+      return knowledgeBase.getStats();
+   }
+
+   /**
+   * Describes the knowledge base and its update log.
+   *
+   * @return A short description of the knowledge base and the log.
+   */
+   @Override
+   public String describe(){
+      return knowledgeBase.describe() + "\nUpdate log: " + log + ".";
+   }
+}
@@ -0,0 +1,74 @@
+/**
+* Class representing the outcome of merging an {@link UpdateBatch} into a {@link KnowledgeBase}.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public final class MergeResult{
+   private final long lines, nanos;
+   private final int added, updated, size;
+
+   /**
+   * Constructs a merge result.
+   *
+   * @param lines The number of lines read from the update file.
+   * @param added The number of terms that were not stored before the merge.
+   * @param updated The number of statements applied to a term that was already stored.
+   * @param size The number of terms in the knowledge base after the merge.
+   * @param nanos The time the merge took, in nanoseconds.
+   */
+   public MergeResult(long lines, int added, int updated, int size, long nanos){
+      this.lines = lines;
+      this.added = added;
+      this.updated = updated;
+      this.size = size;
+      this.nanos = nanos;
+   }
+
+   /**
+   * Retrieves the number of lines read from the update file.
+   *
+   * @return The number of lines read.
+   */
+   public long getLines(){
+      return lines;
+   }
+
+   /**
+   * Retrieves the number of terms added by the merge.
+   *
+   * @return The number of new terms.
+   */
+   public int getAdded(){
+      return added;
+   }
+
+   /**
+   * Retrieves the number of statements that updated a term, either one stored before the merge
+   * or one added by an earlier statement of the same batch.
+   *
+   * @return The number of updates.
+   */
+   public int getUpdated(){
+      return updated;
+   }
+
+   /**
+   * Retrieves the number of terms in the knowledge base after the merge.
+   *
+   * @return The number of terms.
+   */
+   public int getSize(){
+      return size;
+   }
+
+   /**
+   * Retrieves the time the merge took.
+   *
+   * @return The time in seconds.
+   */
+   public double getSeconds(){
+      return nanos / 1e9;
+   }
+}
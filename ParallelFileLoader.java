@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+* Class that loads a GenericsKB file by memory-mapping it and parsing it in parallel.
+* The file is split into chunks that start and end on line boundaries, and each chunk
+* is parsed by its own task on a fork-join pool. The parsed statements are then handed
+* to a {@link Sink} one chunk at a time, in the order they appear in the file, so a later
+* line for a term still updates an earlier one exactly as it does when the file is read
+* line by line.
+*
+* Used by the {@link GenericsKbArrayApp} and {@link GenericsKbBSTApp} classes when they are
+* started with the --parallel option.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class ParallelFileLoader{
+   //the size a chunk is aimed at, the actual chunk is extended to the end of its last line
+   private static final long CHUNK_SIZE = 16L * 1024 * 1024;
+   //the number of bytes read at a time while looking for the end of a line
+   private static final int SCAN_SIZE = 8192;
+
+   /**
+   * Receives the statements of a file in the order they appear in the file.
+   */
+   public interface Sink{
+      /**
+      * Adds a statement read from the file to the knowledge base.
+      *
+      * @param term The term of the statement.
+      * @param sentence The sentence of the statement.
+      * @param score The confidence score of the statement.
+      */
+      void accept(String term, String sentence, double score);
+   }
+
+   /**
+   * Loads a file in parallel and passes each well-formed statement to the sink.
+   * Malformed lines are reported with their line number and skipped.
+   *
+   * @param file The name of the file to load.
+   * @param sink The knowledge base that receives the statements.
+   * @return The number of lines read from the file.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read
+   */
+   public static long load(String file, Sink sink) throws IOException{
+      FileChannel channel = null;
+      try{
+         channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+      }
+      catch(NoSuchFileException e){
+         throw new FileNotFoundException(file);
+      }
+
+      try{
+         long size = channel.size();
+         ForkJoinPool pool = ForkJoinPool.commonPool();
+
+         //splits the file into chunks that end on a line boundary
+         List<ForkJoinTask<ChunkResult>> tasks = new ArrayList<>();
+         long start = 0;
+         while (start < size){
+            long end = (size - start <= CHUNK_SIZE) ? size : alignToLine(channel, start + CHUNK_SIZE, size);
+            if (end - start > Integer.MAX_VALUE){
+               throw new IOException("A line near byte " + start + " is too long to be mapped.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            tasks.add(pool.submit(new ChunkParser(buffer)));
+            start = end;
+         }
+
+         //merges the chunks in file order, so later lines update earlier ones
+         RecordParser parser = new RecordParser();
+         long lines = 0;
+         for (int i = 0; i < tasks.size(); i++){
+            ChunkResult chunk = tasks.get(i).join();
+            tasks.set(i, null); //releases the chunk once it has been merged
+            for (int j = 0; j < chunk.count; j++){
+               sink.accept(chunk.terms[j], chunk.sentences[j], chunk.scores[j]);
+            }
+            for (int j = 0; j < chunk.malformedLines.size(); j++){
+               //parses the line again to report it with its line number in the whole file
+               parser.parse(chunk.malformedText.get(j), lines + chunk.malformedLines.get(j));
+               System.out.println("Skipping malformed line. " + parser.getError());
+            }
+            lines += chunk.lines;
+         }
+         return lines;
+      }
+      finally{
+         channel.close();
+      }
+   }
+
+   /**
+   * Finds the position just after the end of the line containing a position in the file.
+   *
+   * @param channel The file being loaded.
+   * @param position The position to start looking from.
+   * @param size The size of the file.
+   * @return The position of the first byte of the next line, or the size of the file.
+   * @throws IOException if the file cannot be read
+   */
+   private static long alignToLine(FileChannel channel, long position, long size) throws IOException{
+      ByteBuffer window = ByteBuffer.allocate(SCAN_SIZE);
+      while (position < size){
+         window.clear();
+         int read = channel.read(window, position);
+         if (read <= 0){
+            break;
+         }
+         for (int i = 0; i < read; i++){
+            if (window.get(i) == '\n'){
+               return position + i + 1;
+            }
+         }
+         position += read;
+      }
+      return size;
+   }
+
+   /**
+   * The statements parsed from one chunk of the file.
+   */
+   private static class ChunkResult{
+      private String[] terms = new String[1024];
+      private String[] sentences = new String[1024];
+      private double[] scores = new double[1024];
+      private int count;
+      private long lines;
+      //the chunk-relative numbers and the text of the lines that could not be parsed
+      private List<Long> malformedLines = new ArrayList<>();
+      private List<String> malformedText = new ArrayList<>();
+
+      /**
+      * Appends a parsed statement, doubling the arrays when they are full.
+      */
+      private void add(String term, String sentence, double score){
+         if (count == terms.length){
+            terms = Arrays.copyOf(terms, count * 2);
+            sentences = Arrays.copyOf(sentences, count * 2);
+            scores = Arrays.copyOf(scores, count * 2);
+         }
+         terms[count] = term;
+         sentences[count] = sentence;
+         scores[count++] = score;
+      }
+   }
+
+   /**
+   * Task that decodes and parses the lines of one memory-mapped chunk.
+   */
+   private static class ChunkParser extends RecursiveTask<ChunkResult>{
+      private static final long serialVersionUID = 1L;
+      private final MappedByteBuffer buffer;
+
+      private ChunkParser(MappedByteBuffer buffer){
+         this.buffer = buffer;
+      }
+
+      @Override
+      protected ChunkResult compute(){
+         ChunkResult result = new ChunkResult();
+         RecordParser parser = new RecordParser();
+         byte[] line = new byte[256];
+         int limit = buffer.limit();
+         int start = 0;
+
+         while (start < limit){
+            //finds the end of the current line
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n'){
+               end++;
+            }
+            int length = end - start;
+            if (length > line.length){
+               line = new byte[Math.max(length, line.length * 2)];
+            }
+            buffer.get(start, line, 0, length);
+            String text = new String(line, 0, length, StandardCharsets.UTF_8);
+
+            result.lines++;
+            if (parser.parse(text, result.lines)){
+               result.add(parser.getTerm(), parser.getSentence(), parser.getScore());
+            }
+            else{
+               result.malformedLines.add(result.lines);
+               result.malformedText.add(text);
+            }
+            start = end + 1;
+         }
+         return result;
+      }
+   }
+}
@@ -0,0 +1,111 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+* Class representing a bounded cache of query results with least-recently-used eviction.
+* It counts hits and misses so the hit ratio can be reported. Instances of this class are
+* used by {@link CachingKnowledgeBase}. Their methods are synchronized, because even reading
+* the cache changes the order of its entries.
+*
+* @param <K> The type of the query.
+* @param <V> The type of the result.
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class QueryCache<K, V>{
+   private final int capacity;
+   private final LinkedHashMap<K, V> entries;
+   private long hits, misses;
+
+   /**
+   * Constructs an empty cache.
+   *
+   * @param capacity The largest number of results the cache holds.
+   */
+   public QueryCache(int capacity){
+      this.capacity = capacity;
+      //access order moves an entry to the end whenever it is read, so the eldest entry is the least recently used
+      this.entries = new LinkedHashMap<K, V>(16, 0.75f, true){
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<K, V> eldest){
+            return size() > QueryCache.this.capacity;
+         }
+      };
+   }
+
+   /**
+   * Retrieves a cached result and counts a hit or a miss.
+   *
+   * @param query The query.
+   * @return The cached result, or null if it is not cached.
+   */
+   public synchronized V get(K query){
+      V result = entries.get(query);
+      if (result == null){
+         misses++;
+      }
+      else{
+         hits++;
+      }
+      return result;
+   }
+
+   /**
+   * Caches the result of a query, evicting the least recently used result if the cache is full.
+   *
+   * @param query The query.
+   * @param result The result, which must not be null.
+   */
+   public synchronized void put(K query, V result){
+      entries.put(query, result);
+   }
+
+   /**
+   * Removes the cached result of a query.
+   *
+   * @param query The query whose result has changed.
+   */
+   public synchronized void invalidate(K query){
+      entries.remove(query);
+   }
+
+   /**
+   * Removes every cached result.
+   */
+   public synchronized void clear(){
+      entries.clear();
+   }
+
+   /**
+   * Retrieves the number of cached results.
+   *
+   * @return The number of results.
+   */
+   public synchronized int size(){
+      return entries.size();
+   }
+
+   /**
+   * Retrieves the fraction of lookups that were answered from the cache.
+   *
+   * @return The hit ratio, or 0 if there have been no lookups.
+   */
+   public synchronized double getHitRatio(){
+      long total = hits + misses;
+      return (total == 0) ? 0 : hits / (double)total;
+   }
+
+   /**
+   * Describes the size and hit ratio of the cache.
+   *
+   * @return The number of results, hits and misses, and the hit ratio.
+   */
+   @Override
+   public synchronized String toString(){
+      return String.format("%d/%d entries, %d hits, %d misses (hit ratio %.1f%%)", entries.size(), capacity,
+         hits, misses, getHitRatio() * 100);
+   }
+}
@@ -0,0 +1,204 @@
+/**
+* Class that parses the lines of a GenericsKB file, where each line contains a term,
+* a sentence and a confidence score separated by tabs. It is shared by the
+* {@link GenericsKbArrayApp} and {@link GenericsKbBSTApp} classes.
+*
+* The line is split by scanning for the tab characters, and the confidence score is
+* read straight from the characters of the line, so the only Strings created for a
+* well-formed line are the term and the sentence. A parser keeps the fields of the
+* last line it parsed, so one parser can be reused for every line of a file, but it
+* must not be shared between threads.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class RecordParser{
+   //exact powers of ten, used to scale the digits of a confidence score
+   private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+   };
+   //the largest mantissa that can be stored in a double without rounding
+   private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+   private String term, sentence, error;
+   private double confidenceScore;
+
+   /**
+   * Parses a line containing a term, sentence and confidence score separated by tabs.
+   * Leading and trailing whitespace is ignored, as are any fields after the score.
+   *
+   * @param line The line to parse.
+   * @param lineNumber The number of the line in its file, used in the error message.
+   * @return true if the line was parsed, or false if it is malformed (see {@link #getError()}).
+   **/
+   public boolean parse(String line, long lineNumber){
+      term = sentence = error = null;
+      confidenceScore = 0;
+
+      //skips the leading and trailing whitespace of the line
+      int start = 0, end = line.length();
+      while (start < end && line.charAt(start) <= ' '){
+         start++;
+      }
+      while (end > start && line.charAt(end - 1) <= ' '){
+         end--;
+      }
+      if (start == end){
+         return fail(lineNumber, "the line is empty");
+      }
+
+      //finds the tabs that separate the fields
+      int firstTab = line.indexOf('\t', start);
+      if (firstTab == -1 || firstTab >= end){
+         return fail(lineNumber, "missing sentence and confidence score");
+      }
+      int secondTab = line.indexOf('\t', firstTab + 1);
+      if (secondTab == -1 || secondTab >= end){
+         return fail(lineNumber, "missing confidence score");
+      }
+      int scoreEnd = line.indexOf('\t', secondTab + 1);
+      if (scoreEnd == -1 || scoreEnd > end){
+         scoreEnd = end;
+      }
+      if (firstTab == start){
+         return fail(lineNumber, "missing term");
+      }
+
+      if (!parseScore(line, secondTab + 1, scoreEnd)){
+         return fail(lineNumber, "invalid confidence score '" + line.substring(secondTab + 1, scoreEnd) + "'");
+      }
+      term = line.substring(start, firstTab);
+      sentence = line.substring(firstTab + 1, secondTab);
+      return true;
+   }
+
+   /**
+   * Reads a decimal number such as 0.9876, -1, or 1.5e-3 from part of a line into the confidence score.
+   * Numbers with more digits than a double holds exactly are handed to {@link Double#parseDouble(String)}.
+   *
+   * @param line The line containing the number.
+   * @param from The index of the first character of the number.
+   * @param to The index after the last character of the number.
+   * @return true if the characters form a valid number.
+   **/
+   private boolean parseScore(String line, int from, int to){
+      int i = from;
+      boolean negative = false;
+      if (i < to && (line.charAt(i) == '-' || line.charAt(i) == '+')){
+         negative = line.charAt(i) == '-';
+         i++;
+      }
+
+      long mantissa = 0;
+      int exponent = 0, digits = 0;
+      boolean exact = true, seenPoint = false;
+      for (; i < to; i++){
+         char c = line.charAt(i);
+         if (c >= '0' && c <= '9'){
+            digits++;
+            if (mantissa < MAX_EXACT_MANTISSA / 10){
+               mantissa = mantissa * 10 + (c - '0');
+               if (seenPoint){
+                  exponent--;
+               }
+            }
+            else{
+               //the digit does not fit, so the number is rounded by the JDK instead
+               exact = false;
+            }
+         }
+         else if (c == '.' && !seenPoint){
+            seenPoint = true;
+         }
+         else{
+            break;
+         }
+      }
+      if (digits == 0){
+         return false;
+      }
+
+      //reads the optional exponent
+      if (i < to && (line.charAt(i) == 'e' || line.charAt(i) == 'E')){
+         i++;
+         boolean negativeExponent = false;
+         if (i < to && (line.charAt(i) == '-' || line.charAt(i) == '+')){
+            negativeExponent = line.charAt(i) == '-';
+            i++;
+         }
+         int exponentDigits = 0, value = 0;
+         for (; i < to && line.charAt(i) >= '0' && line.charAt(i) <= '9'; i++){
+            exponentDigits++;
+            if (value < 10000){
+               value = value * 10 + (line.charAt(i) - '0');
+            }
+         }
+         if (exponentDigits == 0){
+            return false;
+         }
+         exponent += negativeExponent ? -value : value;
+      }
+      if (i != to){
+         return false;
+      }
+
+      if (!exact || exponent < -22 || exponent > 22){
+         confidenceScore = Double.parseDouble(line.substring(from, to));
+         return true;
+      }
+      //both the mantissa and the power of ten are exact, so a single operation rounds correctly
+      double value = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+      confidenceScore = negative ? -value : value;
+      return true;
+   }
+
+   /**
+   * Records the reason a line could not be parsed.
+   *
+   * @param lineNumber The number of the malformed line.
+   * @param reason Why the line is malformed.
+   * @return false, so that it can be returned by the parse method.
+   **/
+   private boolean fail(long lineNumber, String reason){
+      error = "Line " + lineNumber + ": " + reason + ".";
+      return false;
+   }
+
+   /**
+   * Retrieves the term of the last line parsed.
+   *
+   * @return The term, or null if the line was malformed.
+   */
+   public String getTerm(){
+      return term;
+   }
+
+   /**
+   * Retrieves the sentence of the last line parsed.
+   *
+   * @return The sentence, or null if the line was malformed.
+   */
+   public String getSentence(){
+      return sentence;
+   }
+
+   /**
+   * Retrieves the confidence score of the last line parsed.
+   *
+   * @return The confidence score.
+   */
+   public double getScore(){
+      return confidenceScore;
+   }
+
+   /**
+   * Retrieves the reason the last line could not be parsed, including its line number.
+   *
+   * @return The error message, or null if the line was parsed.
+   */
+   public String getError(){
+      return error;
+   }
+}
@@ -0,0 +1,110 @@
+import java.util.*;
+
+/**
+* Class representing a secondary index on the confidence scores of the entries of a knowledge
+* base. The entries are kept in a balanced tree ordered by score, highest first, so the k entries
+* with the highest scores, or every entry with a score of at least a threshold, are found in
+* O(log n + k) time instead of by visiting every entry.
+* Instances of this class are used in the {@link GenericsKbArrayApp} and
+* {@link GenericsKbBSTApp} classes.
+*
+* An entry whose score changes must be passed to {@link #update(Object, double)}, which moves it
+* to its new place in the tree.
+*
+* @param <E> The type of entry stored in the knowledge base.
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class ScoreIndex<E>{
+   private final TreeSet<Key<E>> keys;
+   private final Map<E, Key<E>> current;
+   private int nextId;
+
+   /**
+   * The place of an entry in the tree: its score, and the order it was added in to break ties.
+   */
+   private static final class Key<E>{
+      private final double score;
+      private final int id;
+      private final E entry;
+
+      private Key(double score, int id, E entry){
+         this.score = score;
+         this.id = id;
+         this.entry = entry;
+      }
+   }
+
+   /**
+   * Constructs an empty score index.
+   */
+   public ScoreIndex(){
+      //the highest score comes first, and entries with the same score are kept in the order they were added
+      keys = new TreeSet<>((a, b) -> (a.score != b.score) ? Double.compare(b.score, a.score) : Integer.compare(a.id, b.id));
+      current = new IdentityHashMap<>();
+   }
+
+   /**
+   * Indexes an entry that is not in the index yet.
+   *
+   * @param entry The entry to index.
+   * @param score The confidence score of the entry.
+   */
+   public void add(E entry, double score){
+      Key<E> key = new Key<>(score, nextId++, entry);
+      keys.add(key);
+      current.put(entry, key);
+   }
+
+   /**
+   * Moves an entry to the place of its new score, if the score has changed.
+   *
+   * @param entry The entry whose score may have changed.
+   * @param score The current confidence score of the entry.
+   */
+   public void update(E entry, double score){
+      Key<E> old = current.get(entry);
+      if (old == null){
+         add(entry, score);
+      }
+      else if (old.score != score){
+         keys.remove(old);
+         Key<E> key = new Key<>(score, old.id, entry);
+         keys.add(key);
+         current.put(entry, key);
+      }
+   }
+
+   /**
+   * Retrieves the entries with the highest scores.
+   *
+   * @param k The largest number of entries to return.
+   * @return Up to k entries, highest score first.
+   */
+   public List<E> top(int k){
+      List<E> results = new ArrayList<>(Math.max(0, Math.min(k, keys.size())));
+      Iterator<Key<E>> iterator = keys.iterator();
+      while (results.size() < k && iterator.hasNext()){
+         results.add(iterator.next().entry);
+      }
+      return results;
+   }
+
+   /**
+   * Retrieves every entry whose score is at least a threshold.
+   *
+   * @param threshold The lowest score returned.
+   * @return The entries, highest score first, or an empty list if there are none.
+   */
+   public List<E> atLeast(double threshold){
+      List<E> results = new ArrayList<>();
+      for (Key<E> key: keys){
+         if (key.score < threshold){
+            break; //every later entry has a lower score
+         }
+         results.add(key.entry);
+      }
+      return results;
+   }
+}
@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+* Class representing the statements of a term other than its best one, kept in parallel arrays
+* of sentences, their lower-case forms and primitive confidence scores ordered by score, highest first.
+* Among statements of equal score, one that was the best statement of its term comes first, and the
+* others are in the order they were added. Each extra statement costs two references and a
+* double, plus the spare room of the arrays, rather than an object of its own. The lower-case
+* form is the string held by the {@link SentenceIndex}, so sentence matches never lower-case a sentence again.
+* Instances of this class are used by the {@link Generics} and {@link Node} classes, which keep
+* their best statement in their own fields and only create a list once a term has a second statement.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class ScoredSentences{
+   private String[] sentences, foldedSentences;
+   private double[] scores;
+   private int size;
+
+   /**
+   * Constructs an empty list of statements.
+   */
+   public ScoredSentences(){
+      sentences = new String[2];
+      foldedSentences = new String[2];
+      scores = new double[2];
+   }
+
+   /**
+   * Adds a statement in the place of its score, after any statements with the same score.
+   *
+   * @param sentence The sentence of the statement.
+   * @param folded The lower-case sentence.
+   * @param score The confidence score of the statement.
+   */
+   public void add(String sentence, String folded, double score){
+      //finds the first statement with a lower score by binary search
+      int low = 0, high = size;
+      while (low < high){
+         int middle = (low + high) >>> 1;
+         if (scores[middle] >= score){
+            low = middle + 1;
+         }
+         else{
+            high = middle;
+         }
+      }
+      insert(low, sentence, folded, score);
+   }
+
+   /**
+   * Inserts a statement at a position, moving the later statements back by one.
+   *
+   * @param position The position of the new statement.
+   * @param sentence The sentence of the statement.
+   * @param folded The lower-case sentence.
+   * @param score The confidence score of the statement.
+   */
+   private void insert(int position, String sentence, String folded, double score){
+      if (size == sentences.length){
+         //grows by half, so a term with many statements wastes little room
+         int length = size + Math.max(2, size >> 1);
+         sentences = Arrays.copyOf(sentences, length);
+         foldedSentences = Arrays.copyOf(foldedSentences, length);
+         scores = Arrays.copyOf(scores, length);
+      }
+      System.arraycopy(sentences, position, sentences, position + 1, size - position);
+      System.arraycopy(foldedSentences, position, foldedSentences, position + 1, size - position);
+      System.arraycopy(scores, position, scores, position + 1, size - position);
+      sentences[position] = sentence;
+      foldedSentences[position] = folded;
+      scores[position] = score;
+      size++;
+   }
+
+   /**
+   * Adds a statement in front of all the others, such as the best statement of a term when a new one takes its place.
+   * Its score must not be lower than any score in the list.
+   *
+   * @param sentence The sentence of the statement.
+   * @param folded The lower-case sentence.
+   * @param score The confidence score of the statement.
+   */
+   public void addFirst(String sentence, String folded, double score){
+      insert(0, sentence, folded, score);
+   }
+
+   /**
+   * Removes the statement with a sentence, if there is one.
+   *
+   * @param sentence The sentence to remove.
+   * @return true if a statement was removed, or false if no statement has the sentence.
+   */
+   public boolean remove(String sentence){
+      int i = indexOf(sentence);
+      if (i < 0){
+         return false;
+      }
+      System.arraycopy(sentences, i + 1, sentences, i, size - i - 1);
+      System.arraycopy(foldedSentences, i + 1, foldedSentences, i, size - i - 1);
+      System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+      sentences[--size] = null;
+      foldedSentences[size] = null;
+      return true;
+   }
+
+   /**
+   * Retrieves the confidence score of the statement with a sentence.
+   *
+   * @param sentence The sentence to look for.
+   * @return The confidence score, or NaN if no statement has the sentence.
+   */
+   public double getScore(String sentence){
+      int i = indexOf(sentence);
+      return (i < 0) ? Double.NaN : scores[i];
+   }
+
+   /**
+   * Finds the position of the statement with a sentence.
+   *
+   * @param sentence The sentence to look for.
+   * @return The position, or -1 if no statement has the sentence.
+   */
+   private int indexOf(String sentence){
+      for (int i = 0; i < size; i++){
+         if (sentences[i].equals(sentence)){
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   /**
+   * Retrieves the sentence of a statement.
+   *
+   * @param rank The position of the statement, 0 for the highest score.
+   * @return The sentence.
+   */
+   public String getSentence(int rank){
+      return sentences[rank];
+   }
+
+   /**
+   * Retrieves the lower-case sentence of a statement.
+   *
+   * @param rank The position of the statement, 0 for the highest score.
+   * @return The lower-case sentence.
+   */
+   public String getFoldedSentence(int rank){
+      return foldedSentences[rank];
+   }
+
+   /**
+   * Retrieves the confidence score of a statement.
+   *
+   * @param rank The position of the statement, 0 for the highest score.
+   * @return The confidence score.
+   */
+   public double getScore(int rank){
+      return scores[rank];
+   }
+
+   /**
+   * Retrieves the number of statements in the list.
+   *
+   * @return The number of statements.
+   */
+   public int size(){
+      return size;
+   }
+}
@@ -0,0 +1,250 @@
+import java.util.*;
+
+/**
+* Class representing a trigram index over the sentences of a knowledge base. Every
+* sentence is stored once in lower case, and each run of three characters in it points
+* back to the sentences containing it, so the statements containing a phrase are found by
+* checking only the sentences listed under the rarest trigram of the phrase.
+* Instances of this class are used in the {@link GenericsKbArrayApp} and
+* {@link GenericsKbBSTApp} classes.
+*
+* An entry holding several statements adds the sentence of each one, and a search returns the
+* entries with at least one matching sentence. Entries that keep the lower-case sentence for their own
+* matches add it with {@link #addFolded(Object, String)}, so the entry and the index share one string. Sentences are never removed, because the
+* statements of a term are only ever added to.
+*
+* The postings are found through an open-addressing hash table of trigram keys, each the three
+* characters packed into 48 bits. The key is multiplied by an odd constant and the top bits of the
+* product give its position, so trigrams that differ in any character are spread over the table,
+* and no Long object is created for a key.
+*
+* @param <E> The type of entry stored in the knowledge base.
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class SentenceIndex<E>{
+   //the length of the hash table of an empty index, a power of two
+   private static final int INITIAL_TABLE_LENGTH = 1024;
+   private List<E> entries;
+   private List<String> foldedSentences;
+   //open-addressing hash table of the trigrams, with the posting of each key at the same position, or null where it is empty
+   private long[] keys;
+   private Posting[] postings;
+   private int trigrams;
+
+   /**
+   * Constructs an empty sentence index.
+   */
+   public SentenceIndex(){
+      entries = new ArrayList<>();
+      foldedSentences = new ArrayList<>();
+      keys = new long[INITIAL_TABLE_LENGTH];
+      postings = new Posting[INITIAL_TABLE_LENGTH];
+   }
+
+   /**
+   * Indexes a sentence of an entry. Each sentence of an entry should be added once, when its statement is first stored.
+   *
+   * @param entry The entry holding the sentence.
+   * @param sentence The sentence to index.
+   */
+   public void add(E entry, String sentence){
+      addFolded(entry, fold(sentence));
+   }
+
+   /**
+   * Indexes a sentence of an entry that has already been converted with {@link #fold(String)}.
+   *
+   * @param entry The entry holding the sentence.
+   * @param folded The lower-case sentence to index, which the index keeps.
+   */
+   public void addFolded(E entry, String folded){
+      int id = entries.size();
+      entries.add(entry);
+      foldedSentences.add(folded);
+      addTrigrams(id, folded);
+   }
+
+   /**
+   * Finds every entry with a sentence containing a phrase, ignoring case.
+   * Phrases shorter than three characters have no trigram, so every sentence is checked.
+   *
+   * @param phrase The phrase to search for.
+   * @return A list of the matching entries in the order their first matching sentence was added, or an empty list if there are none.
+   */
+   public List<E> search(String phrase){
+      String folded = fold(phrase);
+      List<E> results = new ArrayList<>();
+      //an entry with several matching sentences is only listed once
+      Set<E> listed = Collections.newSetFromMap(new IdentityHashMap<>());
+      if (folded.length() < 3){
+         for (int id = 0; id < foldedSentences.size(); id++){
+            if (foldedSentences.get(id).contains(folded) && listed.add(entries.get(id))){
+               results.add(entries.get(id));
+            }
+         }
+         return results;
+      }
+
+      //finds the rarest trigram of the phrase, every match is listed under it
+      Posting candidates = null;
+      for (int i = 0; i + 3 <= folded.length(); i++){
+         Posting posting = find(trigram(folded, i));
+         if (posting == null){
+            return results; //no sentence contains this part of the phrase
+         }
+         if (candidates == null || posting.size < candidates.size){
+            candidates = posting;
+         }
+      }
+
+      //checks the candidates against their sentence
+      int[] matches = new int[Math.min(candidates.size, 16)];
+      int count = 0;
+      for (int i = 0; i < candidates.size; i++){
+         int id = candidates.ids[i];
+         if (foldedSentences.get(id).contains(folded)){
+            if (count == matches.length){
+               matches = Arrays.copyOf(matches, count * 2);
+            }
+            matches[count++] = id;
+         }
+      }
+      //the postings are in the order the sentences were added, so the matches are too
+      for (int i = 0; i < count; i++){
+         if (listed.add(entries.get(matches[i]))){
+            results.add(entries.get(matches[i]));
+         }
+      }
+      return results;
+   }
+
+   /**
+   * Lists a sentence under each of its distinct trigrams.
+   *
+   * @param id The id of the sentence.
+   * @param folded The lower-case sentence.
+   */
+   private void addTrigrams(int id, String folded){
+      for (int i = 0; i + 3 <= folded.length(); i++){
+         Posting posting = findOrAdd(trigram(folded, i));
+         //a trigram that occurs more than once in the sentence is only listed once
+         if (posting.size == 0 || posting.ids[posting.size - 1] != id){
+            posting.add(id);
+         }
+      }
+   }
+
+   /**
+   * Finds the posting of a trigram in the hash table.
+   *
+   * @param key The key of the trigram.
+   * @return The posting, or null if no sentence contains the trigram.
+   */
+   private Posting find(long key){
+      int mask = keys.length - 1;
+      for (int i = position(key, keys.length); postings[i] != null; i = (i + 1) & mask){
+         if (keys[i] == key){
+            return postings[i];
+         }
+      }
+      return null;
+   }
+
+   /**
+   * Finds the posting of a trigram in the hash table, adding an empty one if there is none.
+   * The table is doubled in size when it becomes more than three quarters full.
+   *
+   * @param key The key of the trigram.
+   * @return The posting of the trigram.
+   */
+   private Posting findOrAdd(long key){
+      int mask = keys.length - 1, i = position(key, keys.length);
+      while (postings[i] != null){
+         if (keys[i] == key){
+            return postings[i];
+         }
+         i = (i + 1) & mask;
+      }
+      Posting posting = new Posting();
+      keys[i] = key;
+      postings[i] = posting;
+      if (++trigrams > keys.length / 4 * 3){
+         rehash(keys.length * 2);
+      }
+      return posting;
+   }
+
+   /**
+   * Moves every trigram to a new hash table.
+   *
+   * @param length The length of the new table, a power of two.
+   */
+   private void rehash(int length){
+      long[] oldKeys = keys;
+      Posting[] oldPostings = postings;
+      keys = new long[length];
+      postings = new Posting[length];
+      int mask = length - 1;
+      for (int j = 0; j < oldKeys.length; j++){
+         if (oldPostings[j] != null){
+            int i = position(oldKeys[j], length);
+            while (postings[i] != null){
+               i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            postings[i] = oldPostings[j];
+         }
+      }
+   }
+
+   /**
+   * Calculates the position in the hash table where the search for a trigram starts.
+   * The key is multiplied by an odd constant and the top bits of the product are used,
+   * so every character of the trigram changes the position.
+   *
+   * @param key The key of the trigram.
+   * @param length The length of the table, a power of two.
+   * @return The position in the table.
+   */
+   private static int position(long key, int length){
+      return (int)((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(length)));
+   }
+
+   /**
+   * Packs the three characters starting at a position into a single key, each in its own 16 bits.
+   *
+   * @param text The text containing the trigram.
+   * @param start The position of the first character.
+   * @return The key of the trigram.
+   */
+   private static long trigram(String text, int start){
+      return ((long)text.charAt(start) << 32) | ((long)text.charAt(start + 1) << 16) | text.charAt(start + 2);
+   }
+
+   /**
+   * Converts text to the case-folded form stored in the index.
+   *
+   * @param text The text to convert.
+   * @return The lower-cased text.
+   */
+   public static String fold(String text){
+      return text.toLowerCase(Locale.ROOT);
+   }
+
+   /**
+   * A growable list of the ids of the sentences containing a trigram.
+   */
+   private static class Posting{
+      private int[] ids = new int[4];
+      private int size;
+
+      private void add(int id){
+         if (size == ids.length){
+            ids = Arrays.copyOf(ids, size * 2);
+         }
+         ids[size++] = id;
+      }
+   }
+}
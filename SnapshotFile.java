@@ -0,0 +1,341 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/**
+* Class that reads and writes binary snapshots of a knowledge base, so that a program can
+* start without parsing the text file again.
+*
+* A snapshot starts with a header: the magic number "GKBS", the format version, the layout
+* of the entries (the order of an array, the pre-order of a tree, or sorted by term) and the number of
+* entries. Each entry then holds its term and sentence as a length-prefixed UTF-8 string,
+* its confidence score as a double, and a shape value that the knowledge base uses to
+* rebuild its structure, such as the height and children of a tree node. From version 2 the
+* entry goes on with the number of other statements of its term, each a sentence and a score,
+* in the order of their scores. Snapshots of version 1 are still read, as entries with one statement.
+*
+* A snapshot is written to a temporary file that replaces the old snapshot once it is
+* complete, and it is read through a memory map of the file.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class SnapshotFile{
+   /** Layout of a snapshot whose entries are in the order of an array. */
+   public static final byte ARRAY_LAYOUT = 1;
+   /** Layout of a snapshot whose entries are the pre-order traversal of a tree. */
+   public static final byte TREE_LAYOUT = 2;
+   /** Layout of a snapshot whose entries are sorted by their lower-cased term. */
+   public static final byte SORTED_LAYOUT = 3;
+
+   private static final int MAGIC = 0x474B4253; //"GKBS"
+   private static final int VERSION = 2;
+   //the largest part of the file that is mapped at once
+   private static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+   /**
+   * Writes the entries of a knowledge base to a snapshot file.
+   */
+   public static class Writer implements Closeable{
+      private final Path target, temporary;
+      private final FileOutputStream file;
+      private final DataOutputStream output;
+      private final int count;
+      private int written, pendingOthers;
+      private boolean finished;
+
+      /**
+      * Starts a snapshot.
+      *
+      * @param fileName The name of the snapshot file.
+      * @param layout The layout of the entries, {@link #ARRAY_LAYOUT} or {@link #TREE_LAYOUT}.
+      * @param count The number of entries that will be written.
+      * @throws IOException if the file cannot be created
+      */
+      public Writer(String fileName, byte layout, int count) throws IOException{
+         this.target = Paths.get(fileName).toAbsolutePath();
+         this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+         this.count = count;
+         this.file = new FileOutputStream(temporary.toFile());
+         this.output = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+         output.writeInt(MAGIC);
+         output.writeInt(VERSION);
+         output.writeByte(layout);
+         output.writeInt(count);
+      }
+
+      /**
+      * Writes the next entry, whose term has a single statement.
+      *
+      * @param term The term of the entry.
+      * @param sentence The sentence of the entry.
+      * @param score The confidence score of the entry.
+      * @param shape The value the knowledge base needs to rebuild its structure, or 0.
+      * @throws IOException if the entry cannot be written
+      */
+      public void write(String term, String sentence, double score, int shape) throws IOException{
+         write(term, sentence, score, shape, 0);
+      }
+
+      /**
+      * Writes the next entry, which must be followed by its other statements, written with {@link #writeOther(String, double)}.
+      *
+      * @param term The term of the entry.
+      * @param sentence The sentence of the best statement of the entry.
+      * @param score The confidence score of the best statement of the entry.
+      * @param shape The value the knowledge base needs to rebuild its structure, or 0.
+      * @param others The number of other statements of the entry.
+      * @throws IOException if the entry cannot be written, or the statements of the last entry are missing
+      */
+      public void write(String term, String sentence, double score, int shape, int others) throws IOException{
+         if (pendingOthers != 0){
+            throw new IOException("The last entry is missing " + pendingOthers + " statements.");
+         }
+         writeString(term);
+         writeString(sentence);
+         output.writeDouble(score);
+         output.writeInt(shape);
+         output.writeInt(others);
+         pendingOthers = others;
+         written++;
+      }
+
+      /**
+      * Writes one of the other statements of the entry written last, in the order of their scores.
+      *
+      * @param sentence The sentence of the statement.
+      * @param score The confidence score of the statement.
+      * @throws IOException if the statement cannot be written, or the entry has no more statements
+      */
+      public void writeOther(String sentence, double score) throws IOException{
+         if (pendingOthers == 0){
+            throw new IOException("The last entry has no more statements.");
+         }
+         writeString(sentence);
+         output.writeDouble(score);
+         pendingOthers--;
+      }
+
+      private void writeString(String text) throws IOException{
+         byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+         output.writeInt(bytes.length);
+         output.write(bytes);
+      }
+
+      /**
+      * Completes the snapshot: the file is flushed to disk and replaces any older snapshot.
+      *
+      * @throws IOException if the snapshot cannot be completed, or if the wrong number of entries was written
+      */
+      public void finish() throws IOException{
+         if (written != count || pendingOthers != 0){
+            throw new IOException("The snapshot has " + written + " entries instead of " + count + ", or its last entry is incomplete.");
+         }
+         output.flush();
+         file.getFD().sync();
+         output.close();
+         finished = true;
+         Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+
+      /**
+      * Closes the file, deleting it if the snapshot was not finished.
+      *
+      * @throws IOException if the file cannot be closed
+      */
+      @Override
+      public void close() throws IOException{
+         if (!finished){
+            output.close();
+            Files.deleteIfExists(temporary);
+         }
+      }
+   }
+
+   /**
+   * Reads the entries of a snapshot file through a memory map.
+   */
+   public static class Reader implements Closeable{
+      private final FileChannel channel;
+      private final long size;
+      private final byte layout;
+      private final int version, count;
+      private MappedByteBuffer window;
+      private long windowStart;
+      private byte[] scratch = new byte[256];
+      private int read;
+
+      private String term;
+      private int shape;
+      //the statements of the entry read last, best first
+      private String[] sentences = new String[1];
+      private double[] scores = new double[1];
+      private int statements;
+
+      /**
+      * Opens a snapshot and reads its header.
+      *
+      * @param fileName The name of the snapshot file.
+      * @throws FileNotFoundException if the file is not found
+      * @throws IOException if the file cannot be read or is not a snapshot
+      */
+      public Reader(String fileName) throws IOException{
+         try{
+            channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+         }
+         catch(NoSuchFileException e){
+            throw new FileNotFoundException(fileName);
+         }
+         size = channel.size();
+         try{
+            if (buffer(13).getInt() != MAGIC){
+               throw new IOException("'" + fileName + "' is not a knowledge base snapshot.");
+            }
+            version = window.getInt();
+            if (version < 1 || version > VERSION){
+               throw new IOException("Unsupported snapshot version " + version + ".");
+            }
+            layout = window.get();
+            count = window.getInt();
+         }
+         catch(IOException | RuntimeException e){
+            channel.close();
+            throw e;
+         }
+      }
+
+      /**
+      * Makes sure the mapped window holds the next bytes of the file, mapping the next part if needed.
+      *
+      * @param bytes The number of bytes about to be read.
+      * @return The window, positioned at the next byte.
+      * @throws IOException if the file ends early
+      */
+      private ByteBuffer buffer(int bytes) throws IOException{
+         if (window == null || window.remaining() < bytes){
+            long position = (window == null) ? 0 : windowStart + window.position();
+            if (position + bytes > size){
+               throw new EOFException("The snapshot ends in the middle of an entry.");
+            }
+            long length = Math.min(size - position, Math.max(bytes, WINDOW_SIZE));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            windowStart = position;
+         }
+         return window;
+      }
+
+      private String readString() throws IOException{
+         int length = buffer(4).getInt();
+         if (length < 0){
+            throw new IOException("The snapshot is corrupt.");
+         }
+         if (length > scratch.length){
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+         }
+         buffer(length).get(scratch, 0, length);
+         return new String(scratch, 0, length, StandardCharsets.UTF_8);
+      }
+
+      /**
+      * Retrieves the layout of the entries.
+      *
+      * @return {@link #ARRAY_LAYOUT} or {@link #TREE_LAYOUT}.
+      */
+      public byte getLayout(){
+         return layout;
+      }
+
+      /**
+      * Retrieves the number of entries in the snapshot.
+      *
+      * @return The number of entries.
+      */
+      public int getCount(){
+         return count;
+      }
+
+      /**
+      * Reads the next entry.
+      *
+      * @return true if an entry was read, or false if every entry has been read.
+      * @throws IOException if the entry cannot be read
+      */
+      public boolean next() throws IOException{
+         if (read == count){
+            return false;
+         }
+         term = readString();
+         sentences[0] = readString();
+         ByteBuffer buffer = buffer(12);
+         scores[0] = buffer.getDouble();
+         shape = buffer.getInt();
+         int others = (version == 1) ? 0 : buffer(4).getInt();
+         if (others < 0){
+            throw new IOException("The snapshot is corrupt.");
+         }
+         statements = others + 1;
+         if (statements > sentences.length){
+            //the best statement has already been read into the first slot
+            sentences = Arrays.copyOf(sentences, Math.max(statements, sentences.length * 2));
+            scores = Arrays.copyOf(scores, sentences.length);
+         }
+         for (int i = 1; i < statements; i++){
+            sentences[i] = readString();
+            scores[i] = buffer(8).getDouble();
+         }
+         read++;
+         return true;
+      }
+
+      /** @return The term of the entry read last. */
+      public String getTerm(){
+         return term;
+      }
+
+      /** @return The sentence of the best statement of the entry read last. */
+      public String getSentence(){
+         return sentences[0];
+      }
+
+      /** @return The confidence score of the best statement of the entry read last. */
+      public double getScore(){
+         return scores[0];
+      }
+
+      /** @return The number of statements of the entry read last, at least 1. */
+      public int getStatementCount(){
+         return statements;
+      }
+
+      /**
+      * @param rank The position of a statement of the entry read last, 0 for the best one.
+      * @return The sentence of the statement.
+      */
+      public String getSentence(int rank){
+         return sentences[rank];
+      }
+
+      /**
+      * @param rank The position of a statement of the entry read last, 0 for the best one.
+      * @return The confidence score of the statement.
+      */
+      public double getScore(int rank){
+         return scores[rank];
+      }
+
+      /** @return The shape value of the entry read last. */
+      public int getShape(){
+         return shape;
+      }
+
+      @Override
+      public void close() throws IOException{
+         channel.close();
+      }
+   }
+}
@@ -0,0 +1,63 @@
+/**
+* Class representing a statement returned by a {@link KnowledgeBase}: a term, its sentence
+* and its confidence score. A Statement is a copy of the stored entry at the time of the
+* query, so it does not change when the knowledge base is updated afterwards.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public final class Statement{
+   private final String term, sentence;
+   private final double confidenceScore;
+
+   /**
+   * Constructs a statement.
+   *
+   * @param term The term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   */
+   public Statement(String term, String sentence, double score){
+      this.term = term;
+      this.sentence = sentence;
+      this.confidenceScore = score;
+   }
+
+   /**
+   * Retrieves the term of this statement.
+   *
+   * @return The term of this statement.
+   */
+   public String getTerm(){
+      return term;
+   }
+
+   /**
+   * Retrieves the sentence of this statement.
+   *
+   * @return The sentence of this statement.
+   */
+   public String getSentence(){
+      return sentence;
+   }
+
+   /**
+   * Retrieves the confidence score of this statement.
+   *
+   * @return The confidence score of this statement.
+   */
+   public double getScore(){
+      return confidenceScore;
+   }
+
+   /**
+   * Returns the statement in the format used by the menus.
+   *
+   * @return The term, sentence and confidence score of this statement.
+   */
+   @Override
+   public String toString(){
+      return "Term: " + term + ". Statement: " + sentence + " (Confidence score: " + confidenceScore + ").";
+   }
+}
@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+* Class representing one page of the statements returned by an ordered query of a
+* {@link KnowledgeBase}, such as {@link KnowledgeBase#prefix(String, String)}.
+*
+* Pages are addressed by a cursor rather than an offset: the cursor of the next page is the term
+* that follows the last statement of this page, so the next page is read by starting the same
+* query from that term, which costs a search of the tree rather than skipping the earlier pages.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public final class TermPage{
+   private final List<Statement> statements;
+   private final String nextCursor;
+
+   private TermPage(List<Statement> statements, String nextCursor){
+      this.statements = statements;
+      this.nextCursor = nextCursor;
+   }
+
+   /**
+   * Reads up to a page of statements from the results of an ordered query.
+   * One more statement is read, if there is one, to find the cursor of the next page.
+   *
+   * @param results The results of the query, starting at the cursor of this page.
+   * @param limit The largest number of statements on the page.
+   * @return The page.
+   */
+   public static TermPage read(Iterator<Statement> results, int limit){
+      List<Statement> statements = new ArrayList<>(Math.min(Math.max(limit, 0), 1024));
+      while (statements.size() < limit && results.hasNext()){
+         statements.add(results.next());
+      }
+      String nextCursor = results.hasNext() ? results.next().getTerm() : null;
+      return new TermPage(Collections.unmodifiableList(statements), nextCursor);
+   }
+
+   /**
+   * Retrieves the statements on this page, in the order of their terms.
+   *
+   * @return The statements.
+   */
+   public List<Statement> getStatements(){
+      return statements;
+   }
+
+   /**
+   * Retrieves the cursor of the next page.
+   *
+   * @return The term the next page starts from, or null if this is the last page.
+   */
+   public String getNextCursor(){
+      return nextCursor;
+   }
+}
@@ -0,0 +1,73 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* Class representing an inverted index from the words of the terms in a knowledge base
+* to the entries holding those terms. It lets partial matches to a term be found in time
+* proportional to the number of matches, instead of tokenizing every stored term.
+* The words are kept in a {@link ConcurrentHashMap}, so a lookup always ends, even when it
+* overlaps a writer during an optimistic read of a {@link ConcurrentKnowledgeBase}.
+* Instances of this class are used in the {@link GenericsKbArrayApp} and
+* {@link GenericsKbBSTApp} classes.
+*
+* @param <E> The type of entry stored in the knowledge base.
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class TokenIndex<E>{
+   private Map<String, List<E>> postings;
+
+   /**
+   * Constructs an empty token index.
+   */
+   public TokenIndex(){
+      postings = new ConcurrentHashMap<>();
+   }
+
+   /**
+   * Indexes an entry under each of the space-separated words of its term.
+   * An entry should be added once, when its term is first stored.
+   *
+   * @param term The term of the entry.
+   * @param entry The entry to index.
+   */
+   public void add(String term, E entry){
+      StringTokenizer tokens = new StringTokenizer(term, " ");
+      while (tokens.hasMoreTokens()){
+         List<E> entries = postings.computeIfAbsent(fold(tokens.nextToken()), key -> new ArrayList<>(2));
+         // a term that repeats a word, such as "apple apple", is only listed once for that word
+         if (entries.isEmpty() || entries.get(entries.size() - 1) != entry){
+            entries.add(entry);
+         }
+      }
+   }
+
+   /**
+   * Retrieves the entries whose term contains a word equal to the given word, ignoring case.
+   *
+   * @param token The word to look up.
+   * @return A new list of the matching entries in the order they were added, or an empty list if there are none.
+   */
+   public List<E> lookup(String token){
+      List<E> entries = postings.get(fold(token));
+      return (entries == null) ? new ArrayList<>() : new ArrayList<>(entries);
+   }
+
+   /**
+   * Removes every entry from the index.
+   */
+   public void clear(){
+      postings.clear();
+   }
+
+   /**
+   * Converts a word to the case-folded form used as a key in the index.
+   *
+   * @param token The word to convert.
+   * @return The lower-cased word.
+   */
+   private static String fold(String token){
+      return token.toLowerCase(Locale.ROOT);
+   }
+}
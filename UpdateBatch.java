@@ -0,0 +1,169 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+* Class representing the statements of an update file, read into memory so that they can be
+* merged into a knowledge base with {@link KnowledgeBase#merge(UpdateBatch)}. The statements are
+* kept in parallel arrays in the order of the file, and can be sorted by term for knowledge bases
+* that merge them in a single pass over their terms in order.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class UpdateBatch{
+   private String[] terms, sentences;
+   private double[] scores;
+   private int size;
+   private long lines;
+   //whether the terms are in order, ignoring case, which GenericsKB files usually already are
+   private boolean sorted = true;
+
+   /**
+   * Constructs an empty batch.
+   */
+   public UpdateBatch(){
+      terms = new String[16];
+      sentences = new String[16];
+      scores = new double[16];
+   }
+
+   /**
+   * Reads the statements of an update file, which has the same format as a GenericsKB file.
+   * Malformed lines are reported with their line number and skipped.
+   *
+   * @param file The name of the file to read.
+   * @param parallel Whether to memory-map the file and parse it in parallel.
+   * @return The statements of the file, in the order of the file.
+   * @throws FileNotFoundException if the file is not found
+   * @throws IOException if the file cannot be read
+   */
+   public static UpdateBatch read(String file, boolean parallel) throws IOException{
+      UpdateBatch batch = new UpdateBatch();
+      if (parallel){
+         batch.lines = ParallelFileLoader.load(file, batch::add);
+         return batch;
+      }
+      BufferedReader fileData = null;
+      try{
+         fileData = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+         RecordParser parser = new RecordParser();
+         String dataLine;
+         while ((dataLine = fileData.readLine()) != null){
+            batch.lines++;
+            if (parser.parse(dataLine, batch.lines)){
+               batch.add(parser.getTerm(), parser.getSentence(), parser.getScore());
+            }
+            else{
+               System.out.println("Skipping malformed line. " + parser.getError());
+            }
+         }
+         return batch;
+      }
+      finally{
+         if (fileData!=null){
+            fileData.close();
+         }
+      }
+   }
+
+   /**
+   * Adds a statement to the end of the batch.
+   *
+   * @param term The term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   */
+   public void add(String term, String sentence, double score){
+      if (size == terms.length){
+         terms = Arrays.copyOf(terms, size * 2);
+         sentences = Arrays.copyOf(sentences, size * 2);
+         scores = Arrays.copyOf(scores, size * 2);
+      }
+      if (size > 0 && term.compareToIgnoreCase(terms[size - 1]) < 0){
+         sorted = false;
+      }
+      terms[size] = term;
+      sentences[size] = sentence;
+      scores[size] = score;
+      size++;
+   }
+
+   /**
+   * Sorts the statements by term, ignoring case, in the order {@link GenericsKbBSTApp} keeps its terms.
+   * The sort is stable, so the statements of one term stay in the order of the file and are applied
+   * in the same order as if the file were read line by line. A batch that is already in order is not changed.
+   */
+   public void sortByTerm(){
+      if (sorted){
+         return;
+      }
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++){
+         order[i] = i;
+      }
+      //the object sort is a merge sort, so it keeps equal terms in the order of the file
+      Arrays.sort(order, Comparator.comparing(i -> terms[i], String.CASE_INSENSITIVE_ORDER));
+      String[] sortedTerms = new String[size], sortedSentences = new String[size];
+      double[] sortedScores = new double[size];
+      for (int i = 0; i < size; i++){
+         sortedTerms[i] = terms[order[i]];
+         sortedSentences[i] = sentences[order[i]];
+         sortedScores[i] = scores[order[i]];
+      }
+      terms = sortedTerms;
+      sentences = sortedSentences;
+      scores = sortedScores;
+      sorted = true;
+   }
+
+   /**
+   * Retrieves the term of a statement.
+   *
+   * @param i The position of the statement.
+   * @return The term.
+   */
+   public String getTerm(int i){
+      return terms[i];
+   }
+
+   /**
+   * Retrieves the sentence of a statement.
+   *
+   * @param i The position of the statement.
+   * @return The sentence.
+   */
+   public String getSentence(int i){
+      return sentences[i];
+   }
+
+   /**
+   * Retrieves the confidence score of a statement.
+   *
+   * @param i The position of the statement.
+   * @return The confidence score.
+   */
+   public double getScore(int i){
+      return scores[i];
+   }
+
+   /**
+   * Retrieves the number of statements in the batch.
+   *
+   * @return The number of statements.
+   */
+   public int size(){
+      return size;
+   }
+
+   /**
+   * Retrieves the number of lines read from the file, including malformed ones.
+   *
+   * @return The number of lines read.
+   */
+   public long getLines(){
+      return lines;
+   }
+}
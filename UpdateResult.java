@@ -0,0 +1,52 @@
+/**
+* Class representing the outcome of {@link KnowledgeBase#addOrUpdate(String, String, double)}.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public final class UpdateResult{
+   /**
+   * What happened to the knowledge base.
+   */
+   public enum Status{
+      /** A new entry was created for the term. */
+      ADDED,
+      /** The existing entry for the term was updated. */
+      UPDATED,
+      /** The term is not stored and the knowledge base does not add new terms. */
+      NOT_FOUND
+   }
+
+   private final Status status;
+   private final Statement statement;
+
+   /**
+   * Constructs an update result.
+   *
+   * @param status What happened to the knowledge base.
+   * @param statement The entry for the term after the update, or null if the term was not found.
+   */
+   public UpdateResult(Status status, Statement statement){
+      this.status = status;
+      this.statement = statement;
+   }
+
+   /**
+   * Retrieves what happened to the knowledge base.
+   *
+   * @return The status of the update.
+   */
+   public Status getStatus(){
+      return status;
+   }
+
+   /**
+   * Retrieves the entry for the term after the update.
+   *
+   * @return The updated statement, or null if the term was not found.
+   */
+   public Statement getStatement(){
+      return statement;
+   }
+}
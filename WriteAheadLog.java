@@ -0,0 +1,435 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+* Class representing an append-only log of the updates made to a knowledge base.
+*
+* Each record holds the length and CRC-32 checksum of its contents, followed by the term and
+* sentence as length-prefixed UTF-8 strings and the confidence score as a double.
+*
+* A record is either an update, applied with {@link KnowledgeBase#addOrUpdate(String, String, double)},
+* or one statement of a batch applied with {@link KnowledgeBase#merge(UpdateBatch)}, which unlike an
+* update can add terms to every backend. The contents of a merge record start with a negative marker
+* where an update record starts with the length of its term, and the last record of a batch has a marker
+* of its own. The records of a batch are appended together, and a batch is only replayed once its
+* last record has been read, so a merge that was cut off by a crash is never half applied. The log syncs
+* its records in one of two modes:
+*
+* Group commit, with a sync interval of 0: {@link #append(String, String, double)} only returns once
+* its record has been forced to disk. The first appender to find its record unsynced flushes every
+* buffered record and forces the file while holding no lock, and the threads that append meanwhile
+* wait for that sync, or for the next one, which covers their records together. An update that has been
+* acknowledged is never lost, and many threads appending at once share one fsync rather than one each.
+*
+* Periodic sync, with a sync interval above 0: appends return as soon as the record is buffered, and
+* a background thread syncs the file once per interval if anything was appended. This is faster for
+* a single thread, but acknowledged updates are not durable yet: a crash or power failure loses the
+* records appended in the last interval or so before it.
+*
+* When the log is replayed, a record that was only partly written by a crash, or whose checksum
+* does not match, ends the log, and the file is truncated before it.
+*
+* Used by {@link LoggingKnowledgeBase}.
+*
+* @author Nikita Martin
+* @version 1.0
+* @since 24/02/2024
+*/
+public class WriteAheadLog implements Closeable{
+   //the length and checksum written before the contents of each record
+   private static final int HEADER_SIZE = 8;
+   //the markers starting the contents of a statement of a merged batch, and of the last statement of the batch
+   private static final int MERGE_RECORD = -1, LAST_MERGE_RECORD = -2;
+
+   private final String fileName;
+   private final FileOutputStream file;
+   private final DataOutputStream output;
+   //the background thread of the periodic sync mode, or null in the group commit mode
+   private final ScheduledExecutorService syncer;
+   private final CRC32 checksum = new CRC32();
+   private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+   private final DataOutputStream recordOutput = new DataOutputStream(record);
+   private final ReentrantLock lock = new ReentrantLock();
+   //signalled whenever a sync ends
+   private final Condition syncEnded = lock.newCondition();
+   //the number of records appended, and how many of them are known to be on disk
+   private long records, syncedRecords;
+   private long syncs;
+   //whether a thread is forcing the file to disk
+   private boolean syncing;
+   //the reason the background thread could not sync the file, reported by the next append
+   private IOException syncFailure;
+
+   /**
+   * Opens a log for appending, creating the file if it does not exist.
+   *
+   * @param fileName The name of the log file.
+   * @param syncIntervalMillis The time between syncs of the file in the periodic sync mode, or 0 for group commit.
+   * @throws IOException if the file cannot be opened
+   */
+   public WriteAheadLog(String fileName, long syncIntervalMillis) throws IOException{
+      this.fileName = fileName;
+      this.file = new FileOutputStream(fileName, true);
+      this.output = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+      if (syncIntervalMillis > 0){
+         syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "wal-sync");
+            thread.setDaemon(true);
+            return thread;
+         });
+         syncer.scheduleWithFixedDelay(this::syncInBackground, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+      }
+      else{
+         syncer = null;
+      }
+   }
+
+   /**
+   * Appends an update to the log. With group commit the record is on disk when this method returns;
+   * with periodic sync it is on disk once the next sync has run.
+   *
+   * @param term The term of the update.
+   * @param sentence The sentence of the update.
+   * @param score The confidence score of the update.
+   * @throws IOException if the record cannot be written or synced, or an earlier sync failed
+   */
+   public void append(String term, String sentence, double score) throws IOException{
+      long appended;
+      lock.lock();
+      try{
+         checkSyncFailure();
+         writeRecord(0, term, sentence, score);
+         appended = records;
+      }
+      finally{
+         lock.unlock();
+      }
+      if (syncer == null){
+         syncThrough(appended);
+      }
+   }
+
+   /**
+   * Appends the statements of a batch that is about to be merged, one record each, with no other record between them.
+   * With group commit the whole batch is on disk, after a single sync, when this method returns.
+   *
+   * @param batch The statements of the batch.
+   * @throws IOException if the records cannot be written or synced, or an earlier sync failed
+   */
+   public void appendMerge(UpdateBatch batch) throws IOException{
+      if (batch.size() == 0){
+         return;
+      }
+      long appended;
+      lock.lock();
+      try{
+         checkSyncFailure();
+         for (int i = 0; i < batch.size(); i++){
+            writeRecord((i == batch.size() - 1) ? LAST_MERGE_RECORD : MERGE_RECORD, batch.getTerm(i), batch.getSentence(i), batch.getScore(i));
+         }
+         appended = records;
+      }
+      finally{
+         lock.unlock();
+      }
+      if (syncer == null){
+         syncThrough(appended);
+      }
+   }
+
+   /**
+   * Throws the failure of the last background sync, if there was one. The caller must hold the lock.
+   *
+   * @throws IOException the failure of the background sync
+   */
+   private void checkSyncFailure() throws IOException{
+      if (syncFailure != null){
+         IOException failure = syncFailure;
+         syncFailure = null;
+         throw failure;
+      }
+   }
+
+   /**
+   * Writes a record to the buffer of the file. The caller must hold the lock.
+   *
+   * @param marker MERGE_RECORD or LAST_MERGE_RECORD for a statement of a merged batch, or 0 for an update, which has no marker.
+   * @param term The term of the statement.
+   * @param sentence The sentence of the statement.
+   * @param score The confidence score of the statement.
+   * @throws IOException if the record cannot be written
+   */
+   private void writeRecord(int marker, String term, String sentence, double score) throws IOException{
+      record.reset();
+      if (marker != 0){
+         recordOutput.writeInt(marker);
+      }
+      writeString(recordOutput, term);
+      writeString(recordOutput, sentence);
+      recordOutput.writeDouble(score);
+      checksum.reset();
+      checksum.update(record.toByteArray(), 0, record.size());
+      output.writeInt(record.size());
+      output.writeInt((int)checksum.getValue());
+      record.writeTo(output);
+      records++;
+   }
+
+   private static void writeString(DataOutputStream out, String text) throws IOException{
+      byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   /**
+   * Writes the buffered records to the file and forces them to disk.
+   *
+   * @throws IOException if the file cannot be synced
+   */
+   public void sync() throws IOException{
+      long appended;
+      lock.lock();
+      try{
+         appended = records;
+      }
+      finally{
+         lock.unlock();
+      }
+      syncThrough(appended);
+   }
+
+   /**
+   * Waits until the first records of the log are on disk, forcing the file to disk if no other thread is doing so.
+   * The lock is not held while the file is forced, so other threads can append the records of the next group meanwhile.
+   *
+   * @param record The number of records that must be on disk.
+   * @throws IOException if the file cannot be synced, or the thread is interrupted while waiting
+   */
+   private void syncThrough(long record) throws IOException{
+      lock.lock();
+      try{
+         while (syncedRecords < record){
+            if (syncing){
+               //another thread is syncing, and its sync or the next one covers this record
+               syncEnded.awaitUninterruptibly();
+               continue;
+            }
+            syncing = true;
+            long target = records;
+            boolean synced = false;
+            try{
+               output.flush();
+               lock.unlock();
+               try{
+                  file.getFD().sync();
+                  synced = true;
+               }
+               finally{
+                  lock.lock();
+               }
+            }
+            finally{
+               syncing = false;
+               if (synced){
+                  syncedRecords = Math.max(syncedRecords, target);
+                  syncs++;
+               }
+               syncEnded.signalAll();
+            }
+         }
+      }
+      finally{
+         lock.unlock();
+      }
+   }
+
+   /**
+   * Syncs the file from the background thread, keeping a failure to report to the next append.
+   */
+   private void syncInBackground(){
+      try{
+         sync();
+      }
+      catch(IOException e){
+         lock.lock();
+         try{
+            syncFailure = e;
+         }
+         finally{
+            lock.unlock();
+         }
+      }
+   }
+
+   /**
+   * Passes every complete record of the log to its sink, in the order they were appended: each update to
+   * one sink, and each batch of merged statements, once its last record has been read, to the other.
+   * An incomplete or corrupt record at the end of the file, left by a crash, is reported and cut off,
+   * and so are the statements of a batch whose last record is missing.
+   *
+   * @param updates The knowledge base that receives the updates.
+   * @param merges The knowledge base that receives the merged batches.
+   * @return The number of records replayed.
+   * @throws IOException if the file cannot be read
+   */
+   public long replay(ParallelFileLoader.Sink updates, Consumer<UpdateBatch> merges) throws IOException{
+      lock.lock();
+      try{
+         return replayRecords(updates, merges);
+      }
+      finally{
+         lock.unlock();
+      }
+   }
+
+   private long replayRecords(ParallelFileLoader.Sink updates, Consumer<UpdateBatch> merges) throws IOException{
+      output.flush();
+      long replayed = 0, valid = 0;
+      //the statements of a merged batch whose last record has not been read yet
+      UpdateBatch batch = null;
+      FileChannel channel = file.getChannel();
+      long length = channel.size();
+      DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1 << 16));
+      try{
+         byte[] contents = new byte[256];
+         while (valid + HEADER_SIZE <= length){
+            int size = input.readInt();
+            int expected = input.readInt();
+            if (size < 0 || valid + HEADER_SIZE + size > length){
+               break;
+            }
+            if (size > contents.length){
+               contents = new byte[size];
+            }
+            input.readFully(contents, 0, size);
+            checksum.reset();
+            checksum.update(contents, 0, size);
+            if ((int)checksum.getValue() != expected){
+               break;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(contents, 0, size);
+            int marker = buffer.getInt(0);
+            if (marker < 0){
+               buffer.position(4);
+            }
+            else if (batch != null){
+               discardBatch(batch);
+               batch = null;
+            }
+            String term = readString(buffer);
+            String sentence = readString(buffer);
+            double score = buffer.getDouble();
+            if (marker < 0){
+               if (batch == null){
+                  batch = new UpdateBatch();
+               }
+               batch.add(term, sentence, score);
+               if (marker == LAST_MERGE_RECORD){
+                  merges.accept(batch);
+                  replayed += batch.size();
+                  batch = null;
+               }
+            }
+            else{
+               updates.accept(term, sentence, score);
+               replayed++;
+            }
+            valid += HEADER_SIZE + size;
+         }
+      }
+      finally{
+         input.close();
+      }
+      if (batch != null){
+         discardBatch(batch);
+      }
+      if (valid < length){
+         //the rest of the file was being written when the program stopped
+         System.out.println("Discarding " + (length - valid) + " bytes of incomplete records at the end of '" + fileName + "'.");
+         channel.truncate(valid);
+         file.getFD().sync();
+      }
+      return replayed;
+   }
+
+   /**
+   * Reports the statements of a merged batch whose last record is missing. The program stopped while the
+   * batch was being logged, before it was merged, so none of its statements is replayed.
+   *
+   * @param batch The statements read from the log.
+   */
+   private void discardBatch(UpdateBatch batch){
+      System.out.println("Discarding " + batch.size() + " statements of a merge that was not completely logged in '" + fileName + "'.");
+   }
+
+   private static String readString(ByteBuffer buffer){
+      int length = buffer.getInt();
+      String text = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+      return text;
+   }
+
+   /**
+   * Empties the log, once the updates in it have been saved in a snapshot.
+   *
+   * @throws IOException if the file cannot be truncated
+   */
+   public void truncate() throws IOException{
+      lock.lock();
+      try{
+         output.flush();
+         file.getChannel().truncate(0);
+         file.getFD().sync();
+         syncedRecords = records;
+      }
+      finally{
+         lock.unlock();
+      }
+   }
+
+   /**
+   * Retrieves the number of records appended and the number of syncs since the log was opened.
+   *
+   * @return A short description of the log.
+   */
+   @Override
+   public String toString(){
+      lock.lock();
+      try{
+         return String.format("'%s', %d records appended with %d syncs (%s)", fileName, records, syncs,
+            (syncer == null) ? "group commit" : "periodic sync");
+      }
+      finally{
+         lock.unlock();
+      }
+   }
+
+   /**
+   * Stops the background thread, syncs the remaining records and closes the file.
+   *
+   * @throws IOException if the file cannot be synced or closed
+   */
+   @Override
+   public void close() throws IOException{
+      if (syncer != null){
+         syncer.shutdown();
+      }
+      sync();
+      lock.lock();
+      try{
+         output.close();
+      }
+      finally{
+         lock.unlock();
+      }
+   }
+}